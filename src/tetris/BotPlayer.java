@@ -0,0 +1,137 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package tetris;
+
+import tetris.ai.BitBoard;
+import tetris.ai.Evaluator;
+import tetris.ai.LookaheadSearch;
+import tetris.ai.Placement;
+import tetris.ai.ReachabilitySearch;
+import tetris.model.PieceShapes;
+import tetris.model.TetrisPiece;
+
+/**
+ * Thread that plays the game, for attract mode, load generation and balance testing.
+ * 
+ * When a new piece appears it searches for the best placement, looking ahead to the next piece,
+ * then steps toward it one input per move delay along the shortest input path, the same inputs a player would give.
+ * The search is done on a copy of the board outside the game lock, so the game keeps running while it thinks.
+ * Like the DropThread it can't be restarted, a new one is used each time play resumes.
+ */
+public class BotPlayer extends Thread {
+	
+	private TetrisMIDlet game;		// the game being played
+	private boolean running;		// is the thread running
+	private int moveDelay;			// the time between inputs (ms)
+	
+	private BitBoard board = new BitBoard();	// copy of the game board to search on
+	private LookaheadSearch search;				// chooses the placements
+	private int searchBudget;					// time allowed for each search (ms)
+	private ReachabilitySearch reachability = new ReachabilitySearch();	// finds the inputs to get to the target
+	private Placement target = new Placement();	// where the current piece is headed
+	private int targetPieceCount = -1;			// the game's piece count when the target was chosen
+	
+	/**
+	 * Make a new bot thread.
+	 * 
+	 * @param game the game midlet
+	 * @param moveDelay the time between inputs (ms)
+	 * @param searchThreads the number of threads to search with
+	 * @param searchBudget the time allowed for each search (ms)
+	 */
+	public BotPlayer(TetrisMIDlet game, int moveDelay, int searchThreads, int searchBudget) {
+		this.game = game;
+		this.moveDelay = moveDelay;
+		this.search = new LookaheadSearch(new Evaluator(), searchThreads);
+		this.searchBudget = searchBudget;
+		this.running = true;
+	}
+	
+	/**
+	 * Stop the thread.
+	 */
+	public void stopThread() {
+		this.running = false;
+	}
+	
+	/**
+	 * The bot running loop, one input per move delay.
+	 */
+	public void run() {
+		while(this.running) {
+			int pieceCount = -1;
+			int pieceType = 0;
+			int rotation = 0;
+			int pivotX = 0;
+			int pivotY = 0;
+			int nextPieceType = 0;
+			
+			// hold the game lock so the board doesn't change while we copy it
+			synchronized(this.game) {
+				if(this.running && TetrisConstants.RUNNING_STATE == this.game.getGameState()
+						&& this.game.getPieceCount() != this.targetPieceCount) {
+					pieceCount = this.game.getPieceCount();
+					TetrisPiece piece = this.game.getActivePiece();
+					pieceType = piece.getPieceType();
+					rotation = PieceShapes.getRotation(piece);
+					pivotX = piece.getBlockX(TetrisConstants.PIVOT_INDEX);
+					pivotY = piece.getBlockY(TetrisConstants.PIVOT_INDEX);
+					nextPieceType = this.game.getNextPieceType();
+					this.board.copyFrom(this.game.getBoard());
+				}
+			}
+			
+			if(pieceCount >= 0) {
+				// new piece, decide where it goes out of the placements it can reach from where it is
+				this.search.findBest(this.board, pieceType, rotation, pivotX, pivotY, nextPieceType, this.searchBudget, this.target);
+				this.targetPieceCount = pieceCount;
+			}
+			
+			synchronized(this.game) {
+				// if the piece locked while we were searching, the next time round searches for the new one
+				if(this.running && TetrisConstants.RUNNING_STATE == this.game.getGameState()
+						&& this.game.getPieceCount() == this.targetPieceCount) {
+					this.step();
+				}
+			}
+			
+			try {
+				Thread.sleep(this.moveDelay);
+			} catch(InterruptedException ie) {
+				// just drop out of running
+			}
+		}
+		
+		this.search.stopThreads();
+	}
+	
+	/**
+	 * Give one input toward the target placement.
+	 */
+	private void step() {
+		TetrisPiece piece = this.game.getActivePiece();
+		
+		int action = TetrisConstants.ACTION_DROP;	// if there's nowhere good to go, just drop it
+		
+		if(this.target.isValid()) {
+			// the path from where the piece is now, gravity may have moved it since the last input
+			this.board.copyFrom(this.game.getBoard());
+			this.reachability.search(this.board, piece.getPieceType(), PieceShapes.getRotation(piece),
+									 piece.getBlockX(TetrisConstants.PIVOT_INDEX), piece.getBlockY(TetrisConstants.PIVOT_INDEX));
+			
+			int index = this.reachability.findPlacement(this.target.getRotation(), this.target.getX(), this.target.getY());
+			if(index >= 0) {
+				action = this.reachability.getFirstAction(index);
+			}
+		}
+		
+		int pieceCount = this.game.getPieceCount();
+		if(!this.game.performAction(action) && this.game.getPieceCount() == pieceCount) {
+			// blocked on the way, settle for dropping where it is
+			this.game.performAction(TetrisConstants.ACTION_DROP);
+		}
+	}
+}
@@ -5,6 +5,8 @@
 
 package tetris;
 
+import tetris.perf.PerfStats;
+
 /**
  *
  * @author gm
@@ -56,11 +58,17 @@ public class DropThread extends Thread {
 				this.game.tick();
 			}
 			
+			int tickSpeed = this.game.getTickSpeed();
+			long wakeTime = System.currentTimeMillis() + tickSpeed;	// when we expect to wake up
+			
 			try {
-				Thread.sleep(this.game.getTickSpeed());	// sleep between tick
+				Thread.sleep(tickSpeed);	// sleep between tick
 			} catch(InterruptedException ie) {
 			    // who's interrupting us? just drop out of running
 			}
+			
+			// record how late we woke up compared to the tick speed
+			this.game.getPerfStats().record(PerfStats.GRAVITY_JITTER, System.currentTimeMillis() - wakeTime);
 		}
 	}
 }
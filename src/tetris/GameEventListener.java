@@ -0,0 +1,81 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package tetris;
+
+/**
+ * Receives structured events from the game engine as it runs.
+ * 
+ * Implementations are called synchronously on whichever thread is driving the engine, the drop thread or
+ * the UI thread in the midlet, or the caller's own thread when the engine is run headless.  No lock is
+ * guaranteed to be held, the midlet sends some events inside its lock and some (the tick, a game starting)
+ * outside it, and a headless engine has no lock at all.  A listener that keeps state across threads
+ * guards it itself.  They're on the game's path, so they must be quick.
+ * This is the hook for tracing and analysis tools, on Java SE it can be bridged to JFR events
+ * or any other event recorder.  With no listener set, each event costs the game a single null check.
+ * 
+ * Duration events (ticks, line clears) are only sent if they took at least the threshold set on the game.
+ */
+public interface GameEventListener {
+	
+	/**
+	 * A new game was started, its first piece follows.
+	 * 
+	 * @param level the level the game starts at
+	 */
+	public void gameStarted(int level);
+	
+	/**
+	 * A new piece was put on the board.
+	 * 
+	 * @param pieceType the type of the new active piece
+	 * @param nextPieceType the type of the upcoming piece
+	 */
+	public void pieceSpawned(int pieceType, int nextPieceType);
+	
+	/**
+	 * The active piece couldn't drop any further and was locked into the board.
+	 * 
+	 * @param pieceType the type of the locked piece
+	 * @param pivotX the x coordinate the piece's pivot block was locked at
+	 * @param pivotY the y coordinate the piece's pivot block was locked at
+	 */
+	public void pieceLocked(int pieceType, int pivotX, int pivotY);
+	
+	/**
+	 * Completed rows were cleared from the board.
+	 * 
+	 * @param numRows the number of rows cleared, 1-4
+	 * @param duration how long clearing took (ms)
+	 */
+	public void linesCleared(int numRows, long duration);
+	
+	/**
+	 * The level went up.
+	 * 
+	 * @param oldLevel the previous level
+	 * @param newLevel the new level
+	 * @param tickSpeed the new tick speed (ms)
+	 * @param score the score the new level was reached with
+	 */
+	public void levelUp(int oldLevel, int newLevel, int tickSpeed, int score);
+	
+	/**
+	 * There was no room for a new piece, the game is over.
+	 * 
+	 * @param score the final score
+	 * @param lineCount the final line count
+	 * @param level the final level
+	 * @param stackHeight the height of the stack the game topped out with, in rows
+	 */
+	public void gameOver(int score, int lineCount, int level, int stackHeight);
+	
+	/**
+	 * The drop thread ticked the game.
+	 * 
+	 * @param duration how long the tick took (ms)
+	 */
+	public void tick(long duration);
+}
@@ -0,0 +1,198 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package tetris;
+
+import tetris.model.Leaderboard;
+import tetris.store.ScoreStore;
+
+/**
+ * Background thread that does all of the hi score I/O,
+ * so that neither starting up nor exiting has to wait on rms, which can be very slow on some devices.
+ * 
+ * The scores are kept in a Leaderboard, stored as a single record in a ScoreStore.
+ * The leaderboard is loaded once requested (after the first frame is up), and written through whenever
+ * a game ends with a score that makes it.  Writes are coalesced, if several games end before the thread
+ * gets to them, the leaderboard is written once with all of them.
+ * If the stored scores can't be read, nothing is written over them, the scores are kept and the load is
+ * tried again with the next request (or on exit), and written once it succeeds.
+ */
+public class HiScoreWriter extends Thread {
+	
+	private TetrisMIDlet game;		// the game to report the loaded hi score to
+	
+	private boolean running;		// is the thread running
+	private boolean loadRequested;	// whether the hi score should be loaded
+	private boolean loaded;			// whether the hi score has been loaded
+	private boolean writePending;	// whether the leaderboard has changed since it was last written
+	private boolean writeDeferred;	// whether a write is waiting on the stored scores being loaded, only used by the thread
+	
+	private Leaderboard leaderboard = new Leaderboard();	// the scores, before loading just the ones added this session
+	private Leaderboard loadBuffer = new Leaderboard();		// the stored scores are read into this, then the current ones merged in
+	private byte[] writeBuffer = new byte[Leaderboard.RECORD_SIZE];	// copy of the record taken to write outside the lock
+	
+	private ScoreStore scoreStore;	// where the leaderboard is stored
+	
+	/**
+	 * Make a new writer thread.
+	 * @param game the game midlet
+	 * @param scoreStore where the leaderboard is stored
+	 */
+	public HiScoreWriter(TetrisMIDlet game, ScoreStore scoreStore) {
+		this.game = game;
+		this.scoreStore = scoreStore;
+		this.running = true;
+	}
+	
+	/**
+	 * Ask for the hi score to be loaded in the background.
+	 * The game is told of the result with hiScoreLoaded.
+	 */
+	public synchronized void requestLoad() {
+		this.loadRequested = true;
+		this.notify();
+	}
+	
+	/**
+	 * Add a finished game to the leaderboard, and if it makes it, ask for the leaderboard to be written in the background.
+	 * Returns immediately, if a write is already waiting this just joins it.
+	 * 
+	 * @param score the final score
+	 * @param lines the number of lines cleared
+	 * @param level the level reached
+	 * @param startLevel the level the game was started at
+	 * @param duration how long the game was played (seconds)
+	 * @param timestamp when the game ended (ms since the epoch)
+	 */
+	public synchronized void requestAdd(int score, int lines, int level, int startLevel, int duration, long timestamp) {
+		if(this.leaderboard.insert(score, lines, level, startLevel, duration, timestamp) >= 0) {
+			this.writePending = true;
+			this.notify();
+		}
+	}
+	
+	/**
+	 * @return the leaderboard, before loading has finished this only has the games from this session
+	 */
+	public Leaderboard getLeaderboard() {
+		return this.leaderboard;
+	}
+	
+	/**
+	 * Stop the thread.  Anything still pending is written before the thread exits,
+	 * but the caller doesn't wait for it.
+	 */
+	public synchronized void stopThread() {
+		this.running = false;
+		this.notify();
+	}
+	
+	/**
+	 * The writer loop, waits for requests and services them.
+	 */
+	public void run() {
+		while(true) {
+			boolean load;
+			boolean write;
+			boolean exit;
+			
+			synchronized(this) {
+				while(this.running && !this.loadRequested && !this.writePending) {
+					try {
+						this.wait();
+					} catch(InterruptedException ie) {
+						// just check again
+					}
+				}
+				
+				// take the current requests, anything that comes in while we do the I/O is picked up next time round
+				load = this.loadRequested;
+				write = this.writePending;
+				exit = !this.running;
+				
+				this.loadRequested = false;
+				this.writePending = false;
+			}
+			
+			write |= this.writeDeferred;
+			if(load || write) {
+				// need to know what's stored before writing, so we never overwrite stored scores
+				this.ensureLoaded();
+			}
+			
+			if(write && !this.loaded) {
+				// couldn't read what's stored, hold on to the write until we can
+				this.writeDeferred = true;
+			} else if(write) {
+				synchronized(this) {
+					System.arraycopy(this.leaderboard.getRecord(), 0, this.writeBuffer, 0, Leaderboard.RECORD_SIZE);
+				}
+				
+				this.writeLeaderboard();
+				this.writeDeferred = false;
+			}
+			
+			if(exit) {
+				this.closeStore();
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Read the leaderboard out of the store, if not already done.
+	 * Scores added before loading are merged in.  Reports the hi score to the game.
+	 * If the store can't be read it stays unloaded, to be tried again.
+	 */
+	private void ensureLoaded() {
+		if(this.loaded) {
+			return;
+		}
+		
+		int recordSize;
+		try {
+			// the leaderboard, or a hi score from an older version
+			recordSize = this.scoreStore.readScores(this.writeBuffer);
+		} catch(Exception e) {
+			// don't know what's stored, so it mustn't be written over
+			return;
+		}
+		
+		this.loaded = true;
+		
+		int hiScore;
+		synchronized(this) {
+			// stored scores first, then anything added since startup, and swap the buffers
+			this.loadBuffer.load(this.writeBuffer, recordSize);
+			this.loadBuffer.merge(this.leaderboard);
+			
+			Leaderboard loaded = this.loadBuffer;
+			this.loadBuffer = this.leaderboard;
+			this.leaderboard = loaded;
+			
+			hiScore = this.leaderboard.getHiScore();
+		}
+		
+		this.game.hiScoreLoaded(hiScore);
+	}
+	
+	/**
+	 * Try to write the copied leaderboard record to the store, in one go.
+	 */
+	private void writeLeaderboard() {
+		try {
+			this.scoreStore.writeScores(this.writeBuffer, Leaderboard.RECORD_SIZE);
+		} catch(Exception e) {
+			// oh well...
+		}
+	}
+	
+	/**
+	 * Close the store.
+	 */
+	private void closeStore() {
+		this.scoreStore.close();
+	}
+}
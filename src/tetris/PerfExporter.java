@@ -0,0 +1,100 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package tetris;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.microedition.io.Connector;
+import javax.microedition.io.file.FileConnection;
+
+import tetris.perf.PerfStats;
+import tetris.perf.Tracer;
+
+/**
+ * One-shot background thread that writes the performance stats and the game loop trace out to files,
+ * so they can be collected from the field.
+ * 
+ * The stats record and, if tracing is on, the Chrome trace JSON are written to files in the jad's store directory,
+ * replacing any earlier export.
+ * File I/O can block, and on some devices asks the user for permission first, so it's kept off the UI thread.
+ */
+public class PerfExporter extends Thread {
+	
+	private String storeUrl;	// file:/// url of the directory to write into
+	private byte[] perfRecord;	// the stats record, taken when the export was asked for
+	private Tracer tracer;		// the trace to export, null if tracing is off
+	
+	/**
+	 * Make a new exporter, the stats are taken now and written once the thread is started.
+	 * 
+	 * @param storeUrl file:/// url of the directory to write into
+	 * @param perfStats the stats to export
+	 * @param tracer the tracer, its trace is exported if it's enabled
+	 */
+	public PerfExporter(String storeUrl, PerfStats perfStats, Tracer tracer) {
+		this.storeUrl = storeUrl;
+		this.perfRecord = perfStats.toRecord();
+		this.tracer = tracer.isEnabled() ? tracer : null;
+	}
+	
+	/**
+	 * Write the export.
+	 */
+	public void run() {
+		this.writeFile(TetrisConstants.PERF_FILE);
+		
+		if(null != this.tracer) {
+			this.writeFile(TetrisConstants.TRACE_FILE);
+		}
+	}
+	
+	/**
+	 * Write one of the export files, each is written or not on its own.
+	 * 
+	 * @param fileName PERF_FILE for the stats record, TRACE_FILE for the trace
+	 */
+	private void writeFile(String fileName) {
+		try {
+			FileConnection file = openFile(this.storeUrl + fileName);
+			try {
+				OutputStream out = file.openOutputStream();
+				try {
+					if(TetrisConstants.TRACE_FILE.equals(fileName)) {
+						this.tracer.writeChromeTrace(out);
+					} else {
+						out.write(this.perfRecord);
+					}
+					out.flush();
+				} finally {
+					out.close();
+				}
+			} finally {
+				file.close();
+			}
+		} catch(Exception e) {
+			// oh well, not exported
+		}
+	}
+	
+	/**
+	 * Open a file to be written from the start, creating it or emptying it.
+	 * 
+	 * @param url the file:/// url of the file
+	 * @return the open file
+	 * @throws IOException if the file can't be opened
+	 */
+	private static FileConnection openFile(String url) throws IOException {
+		FileConnection file = (FileConnection)Connector.open(url, Connector.READ_WRITE);
+		if(file.exists()) {
+			file.truncate(0);
+		} else {
+			file.create();
+		}
+		
+		return file;
+	}
+}
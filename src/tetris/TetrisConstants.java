@@ -16,6 +16,7 @@ public class TetrisConstants {
 	public static final int RUNNING_STATE = 2;	// app started, game running
 	public static final int PAUSED_STATE  = 3;	// app paused during game
 	
+	// the standard board, BoardConfig has the size of the board actually being played
 	public static final int WIDTH  = 10;		// number of grid blocks horizontally
 	public static final int HEIGHT = 20;		// number of grid blocks vertically, + number of rows off the screen at the top
 	
@@ -40,11 +41,30 @@ public class TetrisConstants {
 	public static final int Z_PIECE				=  5;	// part of a Z piece
 	public static final int L_PIECE				=  6;	// part of an L piece
 	public static final int J_PIECE				=  7;	// part of a J piece
+	public static final int BLOCK_FILLED		=  8;	// block is filled, but the piece it came from isn't known (packed boards)
 	
 	public static final int ROTATION_TYPE_NONE   = 1;
 	public static final int ROTATION_TYPE_TOGGLE = 2;
 	public static final int ROTATION_TYPE_FREE   = 3;
 	
+	// player actions, from key presses or a bot
+	public static final int ACTION_LEFT   = 1;	// move the active piece left
+	public static final int ACTION_RIGHT  = 2;	// move the active piece right
+	public static final int ACTION_DOWN   = 3;	// move the active piece down a row
+	public static final int ACTION_ROTATE = 4;	// rotate the active piece left
+	public static final int ACTION_DROP   = 5;	// quick drop the active piece
+	public static final int ACTION_TICK   = 6;	// gravity moves the active piece down a row, recorded so replays are exact
+	
+	public static final int PREVIEW_PIECES = 3;		// upcoming pieces shown, and drawn ahead of time
+	
+	public static final int LAYOUT_CACHE_SIZE = 4;	// screen layouts kept, enough for both orientations, normal and full screen
+	
+	public static final int CLEAR_ANIMATION_TIME = 250;	// how long cleared rows are shown collapsing (ms), the game doesn't wait for it
+	
+	public static final int BOT_MOVE_DELAY = 150;		// time between bot inputs (ms)
+	public static final int BOT_SEARCH_THREADS = 2;		// threads the bot searches with
+	public static final int BOT_SEARCH_BUDGET = 100;	// time the bot has to choose a placement (ms)
+	
 	public static final int FOUR_BLOCKS = 4;	// number of blocks in a piece, just so we don't have 4's all over
 	public static final int PIVOT_INDEX = 1;	// index in a TetrisPiece's block array of the block a piece pivots around
 
@@ -72,6 +92,7 @@ public class TetrisConstants {
 	public static final int Z_PIECE_COLOR = COLOR_DARK_GREEN;
 	public static final int L_PIECE_COLOR = COLOR_BLUE;
 	public static final int J_PIECE_COLOR = COLOR_CYAN;
+	public static final int CLEAR_COLOR   = COLOR_DARK_GREY;	// cleared rows as they collapse
 	
 	public static final int MAX_LEVEL = 20;		// level doesn't increase after MAX_LEVEL
 	
@@ -81,6 +102,9 @@ public class TetrisConstants {
 	// use explicit numerator and denominator, so we can use integer math
 	public static final int SPEED_INCREASE_NUMERATOR	= 6;	// numerator of fraction to multiply tick speed by at new level
 	public static final int SPEED_INCREASE_DENOMINATOR	= 7;	// denominator of fraction to multiply tick speed by at new level
+	public static final int MIN_TICK_SPEED = 50;	// fastest tick speed (ms), past it gravity drops more than a row per tick
+	public static final int GRAVITY_SHIFT  = 8;		// gravity is in rows per tick, fixed point with this many fraction bits
+	public static final int GRAVITY_LEVELS = 40;	// levels in the gravity table, levels past it use the last entry
 	
 	// formula for scores is (ROW_SCORE * level) + ROW_SCORE
 	public static final int ONE_ROW_SCORE = 40;		// score for 1 line cleared
@@ -89,4 +113,18 @@ public class TetrisConstants {
 	public static final int FOUR_ROW_SCORE = 1200;	// score for 4 lines cleared (tetris)
 	
 	public static final String TETRIS_RECORD_STORE = "TetrisStore";		// name of record store to use (for hi score);
+	public static final int LEADERBOARD_SIZE = 10;			// number of scores kept on the leaderboard
+	
+	public static final String STATE_RECORD_STORE = "TetrisState";	// name of record store holding the suspended game snapshot
+	
+	public static final String STORE_URL_PROPERTY = "Tetris-Store-Url";	// jad property, a file:/// directory url to store in files instead of rms
+	public static final String SCORE_FILE = "scores.dat";				// file name of the leaderboard when storing in files
+	public static final String STATE_FILE = "state.dat";				// file name of the snapshot when storing in files
+	public static final String PERF_FILE = "perf.dat";					// file name the performance stats record is exported to
+	public static final String TRACE_FILE = "trace.json";				// file name the game loop trace is exported to
+	
+	public static final String TRACE_PROPERTY = "Tetris-Trace";		// jad property, set to true to record a trace of the game loop
+	
+	public static final String BOARD_WIDTH_PROPERTY = "Tetris-Board-Width";		// jad property, columns of a non standard board, with the height
+	public static final String BOARD_HEIGHT_PROPERTY = "Tetris-Board-Height";	// jad property, rows of a non standard board, with the width
 }
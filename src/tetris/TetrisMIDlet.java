@@ -2,12 +2,6 @@
 
 package tetris;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.util.Random;
-
 import javax.microedition.lcdui.Canvas;
 import javax.microedition.lcdui.Command;
 import javax.microedition.lcdui.CommandListener;
@@ -15,11 +9,20 @@ import javax.microedition.lcdui.Display;
 import javax.microedition.lcdui.Displayable;
 import javax.microedition.midlet.MIDlet;
 import javax.microedition.midlet.MIDletStateChangeException;
-import javax.microedition.rms.RecordEnumeration;
-import javax.microedition.rms.RecordStore;
 
+import tetris.model.BoardConfig;
+import tetris.model.GameEngine;
+import tetris.model.GameSnapshot;
+import tetris.model.Leaderboard;
 import tetris.model.TetrisBoard;
 import tetris.model.TetrisPiece;
+import tetris.perf.PerfStats;
+import tetris.perf.Tracer;
+import tetris.replay.ReplayRecorder;
+import tetris.store.FileStore;
+import tetris.store.RmsStore;
+import tetris.store.ScoreStore;
+import tetris.store.StateStore;
 import tetris.ui.TetrisCanvas;
 
 /**
@@ -29,31 +32,37 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 	
 	private TetrisCanvas gameCanvas;		// canvas on which the game is painted	
 	
-	private TetrisBoard board;				// holds the game state
-	private TetrisPiece activePiece;		// holds the state of the active piece
+	private GameEngine engine;				// the game rules, board and pieces
 	
-	private int score;						// the current game score
-	private int level;						// the current level
-	private int lineCount;					// the current number of lines cleared
-	private int nextPieceType;				// the next piece
-	private int tickSpeed;					// the speed in milliseconds between drops
+	private long playTime;					// time (ms) the current game has been played, not counting the current stretch
+	private long playStartTime;				// time the current stretch of unpaused play started
 
 	private int hiScore;					// the current hi score
-	private RecordStore tetrisStore;		// the RecordStore holding the hi score
-	private int hiScoreRecordId;			// the record id in the RecordStore of the hi score
-	
-	private boolean[] completedRows;		// array of booleans indicating the rows that have been cleared
-											// store as an instance variable so we reuse without reallocating
+	private HiScoreWriter hiScoreWriter;	// loads and saves the hi score in the background
 	
-	private Random rand;					// generates pseudo random numbers to choose the next piece
+	private GameSnapshot snapshot;			// encodes the game when the app is suspended, reused each time
+	private StateStore stateStore;			// where the snapshot is saved
+	private boolean snapshotStored;			// whether the state store may hold a valid snapshot
+	private String storeUrl;				// file:/// url of the directory from the jad to store files in, null to use rms
 	
 	private Command exitCommand;			// Command to exit the app
 	private Command pauseCommand;			// Command to pause the app
 	private Command resumeCommand;			// Command to resume the app after a pause
+	private Command exportCommand;			// Command to write the performance stats and trace to files, only with a store url
 	
 	private int gameState = TetrisConstants.UNINITIALIZED;	// mark as unitialized at first, can check in startApp to see if init necessary
 
 	private DropThread dropThread;			// the thread that drops the active piece one row per tick
+	private BotPlayer botPlayer;			// the thread playing the game when auto play is on, otherwise null
+	private boolean autoPlay;				// whether the bot plays the game
+	
+	private PerfStats perfStats;			// tick/paint timing counters and histograms
+	private Tracer tracer;					// records game loop spans for trace export, off unless set in the jad
+	
+	private ReplayRecorder replayRecorder;	// records the seed and every action of the current game
+	
+	private GameEventListener eventListener;	// receives engine events, null if nobody is listening
+	private int tickEventThreshold;			// minimum tick duration (ms) to send a tick event
 	
 	/**
 	 * Start the app.
@@ -63,6 +72,9 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 		if(TetrisConstants.UNINITIALIZED == this.gameState) {
 			// game is just starting up, need to initialize
 			this.init();
+			
+			// if the app was killed while suspended mid-game, pick up where it left off
+			this.restoreSnapshot();
 		} else if(TetrisConstants.RUNNING_STATE == this.gameState) {
 			// game is resuming from an external suspend
 			// this puts it in the internal pause state
@@ -84,6 +96,11 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 		if(TetrisConstants.RUNNING_STATE == this.gameState) {
 			this.pauseGame();
 		}
+		
+		// we might not be coming back, so save the game where it is
+		if(TetrisConstants.PAUSED_STATE == this.gameState) {
+			this.saveSnapshot();
+		}
 	}
 	
 	/**
@@ -91,9 +108,14 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 	 * @see MIDlet#destroyApp(boolean)
 	 */
 	protected void destroyApp(boolean unconditional) throws MIDletStateChangeException {
-		if(null != this.tetrisStore) {
-			// write out the hi score before exitting
-			this.writeAndCloseHiScore(this.hiScore);
+		if(null != this.hiScoreWriter) {
+			// the hi score is written as soon as it's set, this just lets the writer finish up and close the store
+			this.hiScoreWriter.stopThread();
+		}
+		
+		if(null != this.stateStore) {
+			// snapshots are always written through, so this is just releasing it
+			this.stateStore.close();
 		}
 	}
 	
@@ -101,24 +123,72 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 	 * Initalization on app startup.
 	 */
 	private void init() {
-		this.board = new TetrisBoard();
+		this.perfStats = new PerfStats();
+		this.tracer = new Tracer();
+		this.tracer.setEnabled("true".equals(this.getAppProperty(TetrisConstants.TRACE_PROPERTY)));
+		
+		BoardConfig boardConfig = this.readBoardConfig();
+		this.engine = new GameEngine(boardConfig);
+		this.engine.setInstrumentation(this.perfStats, this.tracer);
+		this.replayRecorder = new ReplayRecorder();
+		this.snapshot = new GameSnapshot(boardConfig);
 		this.gameCanvas = new TetrisCanvas(this);
 		
-		this.activePiece = new TetrisPiece();		
-		this.completedRows = new boolean[TetrisConstants.HEIGHT];
-		this.hiScore = this.openAndReadHiScore();	// get currently saved hi score from rms
-		this.nextPieceType = TetrisConstants.UNINITIALIZED;
-		
-		this.rand = new Random();
+		this.setupStores();
+		this.hiScoreWriter.start();		// hi score is loaded once the first frame is up
 		
 		// setup exit/pause/resume commands
 		this.setupCommands();
 		this.gameCanvas.addCommand(this.exitCommand);
+		if(null != this.storeUrl) {
+			// exports go in the same directory as the stored files
+			this.gameCanvas.addCommand(this.exportCommand);
+		}
 		
 		// put the app in a state to show the title screen
 		this.setGameState(TetrisConstants.TITLE_STATE);
 	}
 	
+	/**
+	 * Set up where scores and snapshots are stored.
+	 * Uses rms, unless the jad gives a directory url to store files in instead.
+	 */
+	private void setupStores() {
+		ScoreStore scoreStore;
+		
+		String storeUrl = this.getAppProperty(TetrisConstants.STORE_URL_PROPERTY);
+		this.storeUrl = storeUrl;
+		if(null != storeUrl) {
+			scoreStore = new FileStore(storeUrl + TetrisConstants.SCORE_FILE, Leaderboard.RECORD_SIZE, 1);
+			this.stateStore = new FileStore(storeUrl + TetrisConstants.STATE_FILE, this.snapshot.getSize(), 1);
+		} else {
+			scoreStore = new RmsStore(TetrisConstants.TETRIS_RECORD_STORE);
+			this.stateStore = new RmsStore(TetrisConstants.STATE_RECORD_STORE);
+		}
+		
+		this.hiScoreWriter = new HiScoreWriter(this, scoreStore);
+	}
+	
+	/**
+	 * Get the size of the board from the jad, the standard board unless both dimensions are given and make a valid board.
+	 * 
+	 * @return the board config to play on
+	 */
+	private BoardConfig readBoardConfig() {
+		String width = this.getAppProperty(TetrisConstants.BOARD_WIDTH_PROPERTY);
+		String height = this.getAppProperty(TetrisConstants.BOARD_HEIGHT_PROPERTY);
+		
+		if(null != width && null != height) {
+			try {
+				return new BoardConfig(Integer.parseInt(width.trim()), Integer.parseInt(height.trim()));
+			} catch(Exception e) {
+				// not a number, or out of range, just play on the standard board
+			}
+		}
+		
+		return BoardConfig.STANDARD;
+	}
+	
 	/**
 	 * Set up the game state so that a new game is started.
 	 * @param level the initial level at which to start the game
@@ -126,14 +196,19 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 	private void startNewGame(int level) {
 		this.gameCanvas.addCommand(this.pauseCommand);	// during running, pause command should be available
 		
-		this.score = 0;
-		this.lineCount = 0;
-		this.level = level;
-		this.nextPieceType = this.getRandomPieceType();
-		this.tickSpeed = this.getInitialTickSpeed(this.level);
+		this.playTime = 0;
+		this.playStartTime = System.currentTimeMillis();
 		
-		this.board.clearBoard();
-		this.tryAddNewPiece();
+		// seed the pieces ourselves so the recording can regenerate them
+		long seed = this.playStartTime;
+		this.engine.getRandom().setSeed(seed);
+		this.engine.newGame(level);
+		if(this.engine.getBoardConfig().isStandard()) {
+			this.replayRecorder.start(seed, level);
+		} else {
+			// recordings don't hold the board size and are replayed on the standard board, this game couldn't be
+			this.replayRecorder.clear();
+		}
 		
 		this.setGameState(TetrisConstants.RUNNING_STATE);
 		
@@ -147,12 +222,25 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 		// no commands needed, don't need to pause when not playing
 		this.gameCanvas.removeCommand(this.pauseCommand);
 		
-		this.hiScore = Math.max(this.hiScore, this.score);		// set hi score if current score is higher
-		this.nextPieceType = TetrisConstants.UNINITIALIZED;
+		long endTime = System.currentTimeMillis();
+		this.playTime += endTime - this.playStartTime;
+		
+		// write the game through to the leaderboard right away so it isn't lost if the app is killed
+		GameEngine engine = this.engine;
+		this.hiScore = Math.max(this.hiScore, engine.getScore());
+		this.hiScoreWriter.requestAdd(engine.getScore(), engine.getLineCount(), engine.getLevel(), engine.getStartLevel(),
+									  (int)(this.playTime / 1000), endTime);
+		
+		engine.endGame();
+		this.replayRecorder.stop();
 		this.setGameState(TetrisConstants.TITLE_STATE);							// show the title screen
 		
 		this.dropThread.stopThread();
 		this.dropThread = null;		// will have to replace it anyway, might as well gc as soon as possible
+		this.stopBotPlayer();
+		
+		// the game is over, don't want to restore it
+		this.clearSnapshot();
 	}
 	
 	/**
@@ -164,8 +252,10 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 		this.gameCanvas.addCommand(this.resumeCommand);
 		
 		// put in paused state and stop dropping
+		this.playTime += System.currentTimeMillis() - this.playStartTime;
 		this.setGameState(TetrisConstants.PAUSED_STATE);
 		this.dropThread.stopThread();
+		this.stopBotPlayer();
 	}
 	
 	/**
@@ -177,6 +267,7 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 		this.gameCanvas.addCommand(this.pauseCommand);
 	
 		// put in running state and resume dropping
+		this.playStartTime = System.currentTimeMillis();
 		this.setGameState(TetrisConstants.RUNNING_STATE);
 		this.runDropThread();
 	}
@@ -188,25 +279,51 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 	private void runDropThread() {
 		this.dropThread = new DropThread(this);
 		this.dropThread.start();
+		
+		if(this.autoPlay) {
+			this.runBotPlayer();
+		}
 	}
 	
 	/**
-	 * Set the initial tick speed according to the given level.
-	 * 
-	 * @param level the initial level
-	 * @return the initial tick speed
+	 * Run a new bot player thread, same as the drop thread a new one is needed each time.
 	 */
-	private int getInitialTickSpeed(int level) {
-		int initialTickSpeed = TetrisConstants.BASE_SPEED;
-		
-		// multiply by fraction for each level
-		for(int i = 0; i < level; i++) {
-			initialTickSpeed = (initialTickSpeed * TetrisConstants.SPEED_INCREASE_NUMERATOR) / TetrisConstants.SPEED_INCREASE_DENOMINATOR;
+	private void runBotPlayer() {
+		this.botPlayer = new BotPlayer(this, TetrisConstants.BOT_MOVE_DELAY,
+									   TetrisConstants.BOT_SEARCH_THREADS, TetrisConstants.BOT_SEARCH_BUDGET);
+		this.botPlayer.start();
+	}
+	
+	/**
+	 * Stop the bot player thread if it's running.
+	 */
+	private void stopBotPlayer() {
+		if(null != this.botPlayer) {
+			this.botPlayer.stopThread();
+			this.botPlayer = null;
+		}
+	}
+	
+	/**
+	 * Toggle whether the bot plays the game.  Takes over (or hands back) a running game right away.
+	 */
+	private void toggleAutoPlay() {
+		if(!this.engine.getBoardConfig().isStandard()) {
+			// the bot only knows how to play the standard board
+			return;
 		}
 		
-		return initialTickSpeed;
+		this.autoPlay = !this.autoPlay;
+		
+		if(TetrisConstants.RUNNING_STATE == this.gameState) {
+			if(this.autoPlay) {
+				this.runBotPlayer();
+			} else {
+				this.stopBotPlayer();
+			}
+		}
 	}
-
+	
 	/**
 	 * The MIDlet handles the key input.
 	 * This is called by the Canvas' listening keyPressed.
@@ -214,21 +331,33 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 	 * @param keyCode the keyCode from Canvas' keyPressed
 	 */
 	public void keyPressed(int keyCode) {
+		this.perfStats.markInput(System.currentTimeMillis());
+		
+		if(Canvas.KEY_POUND == keyCode) {
+			// # toggles the performance overlay in any state
+			this.gameCanvas.togglePerfOverlay();
+			return;
+		} else if(Canvas.KEY_STAR == keyCode) {
+			// * toggles the bot playing in any state
+			this.toggleAutoPlay();
+			return;
+		}
+		
 		if(TetrisConstants.RUNNING_STATE == this.gameState) {
 			// if the app is in a running state, then we want the game actions
 
 			keyCode = this.gameCanvas.getGameAction(keyCode);	
 		
 			if(Canvas.DOWN == keyCode) {
-				this.tryMoveDown();
+				this.performAction(TetrisConstants.ACTION_DOWN);
 			} else if(Canvas.UP == keyCode) {
-				this.tryRotateLeft();
+				this.performAction(TetrisConstants.ACTION_ROTATE);
 			} else if(Canvas.LEFT == keyCode) {
-				this.tryMoveLeft();
+				this.performAction(TetrisConstants.ACTION_LEFT);
 			} else if(Canvas.RIGHT == keyCode) {
-				this.tryMoveRight();
+				this.performAction(TetrisConstants.ACTION_RIGHT);
 			} else if(Canvas.FIRE == keyCode) {
-				this.quickDrop();
+				this.performAction(TetrisConstants.ACTION_DROP);
 			}
 		} else if(TetrisConstants.TITLE_STATE == this.gameState) {
 			// if we're at the title screen, get the level number from input
@@ -241,257 +370,62 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 	}
 	
 	/**
-	 * Quick drop the active piece as far as it will go
+	 * Perform a player action on the active piece.  Key presses and the bot both come through here.
+	 * 
+	 * @param action the action, one of the action constants
+	 * @return true if the action moved the piece, false if it was blocked
 	 */
-	private synchronized void quickDrop() {
-		int dropScore = 0;	// 1 point for each line dropped
-		while(this.tryMoveDown()) {
-			dropScore++;
+	public synchronized boolean performAction(int action) {
+		if(TetrisConstants.RUNNING_STATE != this.gameState) {
+			return false;
 		}
 		
-		this.score += dropScore;
+		int pieceCount = this.engine.getPieceCount();
+		boolean moved = this.engine.performAction(action);
+		this.replayRecorder.record(action);
 		
-		if(null != this.dropThread) {
+		if(TetrisConstants.ACTION_DROP == action && null != this.dropThread) {
 			// if the piece has been quick dropped, then the piece has been instantly dropped to the bottom.
 			// since the new piece is immediately added, it will drop a row at the end of the current tick.
 			// we specify to skip the next tick, the player gets the remainder of the current tick, plus
 			// the whole next tick before the piece drops a row.
 			this.dropThread.skipNextTick();
 		}
-	}
-	
-	/**
-	 * Set the active piece as a new piece and choose the next piece
-	 * 
-	 * @return the active piece, updated as a new piece
-	 */
-	private TetrisPiece newPiece() {
-		int pieceType = this.nextPieceType;
-		this.nextPieceType = this.getRandomPieceType();
-		
-		TetrisPiece activePiece = this.getActivePiece();
-		activePiece.setAsNewPiece(pieceType, TetrisConstants.START_X, TetrisConstants.START_Y);	
-		
-		return activePiece;
-	}
-	
-	/**
-	 * @return a pseudo random piece type
-	 */
-	private int getRandomPieceType() {
-		// MIDP 1.0 doesn't have Random.nextInt(int n)
-		// this is a bad substitute, but good enough for us...
-		return Math.abs(rand.nextInt() % TetrisConstants.NUM_PIECE_TYPES) + 1;
-	}
-	
-	/**
-	 * Clear the completed rows from the board.
-	 * Wipes the filled rows and drops the rows above them.
-	 * 
-	 * @param piece the piece in its final position
-	 * @return number of rows cleared
-	 */
-	private int clearCompletedRows(TetrisPiece piece) {
-		TetrisBoard board = this.getBoard();
-		
-		// check each row that the piece includes, see if completed
-		for(int i = 0; i < TetrisConstants.FOUR_BLOCKS; i++) {
-			int rowY = piece.getBlockY(i);
-			
-			// mark rows completed that are filled
-			if(board.checkRowCompleted(rowY)) {
-				this.markRowCompleted(rowY, true);
-			}
-		}
-		
-		int numClearedRows = 0;
-		for(int y = TetrisConstants.HEIGHT - 1; y >= 0; y--) { // iterate from bottom up
-			// each row should be dropped the current tally of completed rows
-			if(numClearedRows > 0) {
-				board.dropRow(y, numClearedRows);
-			}
-			
-			if(this.isRowCompleted(y)) {
-				numClearedRows++;
-				this.markRowCompleted(y, false);	// reset for next time
-			}
-		}
-		
-		// clear the top number of rows completed, these are new empty rows
-		for(int i = 0; i < numClearedRows; i++) {
-			board.clearRow(i);
-		}
-		
-		return numClearedRows;
-	}
-	
-	/**
-	 * Mark a row as completed, a setter accessor to the completedRows.
-	 * We use the instance completedRows to reuse the array without reallocating.
-	 * 
-	 * @param row the index of the row, lower indices at the top of the board
-	 * @param isCompleted true if the row is completed false otherwise
-	 */
-	private void markRowCompleted(int row, boolean isCompleted) {
-		this.completedRows[row] = isCompleted;
-	}
-	
-	/**
-	 * Check if a row is completed, a getter accessor to the completedRows.
-	 * @param row the index of the row, lower indices at the top of the board
-	 * @return true if the row is completed false otherwise.
-	 */
-	private boolean isRowCompleted(int row) {
-		return this.completedRows[row];
-	}
-	
-	/**
-	 * Update the game state to reflect the completed rows (adjust score, etc).
-	 * @param completedRows the number of completed rows
-	 */
-	private void updateRowState(int completedRows) {
-		this.lineCount += completedRows;	// increment the line count
-		
-		// formula for scores is (ROW_SCORE * level) + ROW_SCORE
-		if(1 == completedRows) {
-			this.score += (this.level * TetrisConstants.ONE_ROW_SCORE) + TetrisConstants.ONE_ROW_SCORE;
-		} else if(2 == completedRows) {
-			this.score += (this.level * TetrisConstants.TWO_ROW_SCORE) + TetrisConstants.TWO_ROW_SCORE;
-		} else if(3 == completedRows) {
-			this.score += (this.level * TetrisConstants.THREE_ROW_SCORE) + TetrisConstants.THREE_ROW_SCORE;
-		} else if(4 == completedRows) {
-			this.score += (this.level *TetrisConstants. FOUR_ROW_SCORE) + TetrisConstants.FOUR_ROW_SCORE;
-		}
-		
-		// integer division gets the level
-		int level = this.lineCount / TetrisConstants.LEVEL_UNIT;
-		if(level > this.level) {
-			this.level = level;
-		
-			// level increase, adjust tick speed
-			this.tickSpeed = (this.tickSpeed * TetrisConstants.SPEED_INCREASE_NUMERATOR) / TetrisConstants.SPEED_INCREASE_DENOMINATOR;
-		}
-	}
-	
-	/**
-	 * Try to add a new piece.  Check that there is room on the board.
-	 * If we can't add the piece, the game is over.
-	 * 
-	 * @return true if the piece was added, false if couldn't add and the game is over.
-	 */
-	private synchronized boolean tryAddNewPiece() {
-		TetrisPiece newPiece = this.newPiece();		// reset the active piece
-		TetrisBoard board = this.getBoard();
-		if(board.canAddNewPiece(newPiece)) {
-			board.addNewPiece(newPiece);
-		
-			// added successfully
-			return true;
-		}
 		
-		// no room to add, game over
-		this.endGame();
-		return false;
-	}
-	
-	/**
-	 * Try to move the current piece down one row.
-	 * If we can't drop the piece any more, we try to add a new one.
-	 * 
-	 * @return true if the piece was dropped, false otherwise
-	 */
-	private synchronized boolean tryMoveDown() {
-		TetrisPiece activePiece = this.getActivePiece();
-		TetrisBoard board = this.getBoard();
-		
-		if(board.canMoveDown(activePiece)) {
-			board.moveDown(activePiece);
+		if(moved || pieceCount != this.engine.getPieceCount()) {
 			this.gameCanvas.repaint();
-			
-			// piece moved down
-			return true;
 		}
 		
-		// couldn't move down
-		board.lockPiece(activePiece);
-		int numClearedRows = this.clearCompletedRows(activePiece);
-		this.updateRowState(numClearedRows);
-		this.tryAddNewPiece();
-		this.gameCanvas.repaint();
-		
-		return false;
-	}
-	
-	/**
-	 * Try to move the current piece left.
-	 * 
-	 * @return true if we could move the piece left, false if couldn't
-	 */
-	private synchronized boolean tryMoveLeft() {
-		if(this.getBoard().canMoveLeft(this.getActivePiece())) {
-			this.board.moveLeft(this.getActivePiece());
-			this.gameCanvas.repaint();
-			
-			// piece moved left
-			return true;
+		if(this.engine.isGameOver()) {
+			// no room for the new piece
+			this.endGame();
 		}
 		
-		// couldn't move left
-		return false;
+		return moved;
 	}
 	
 	/**
-	 * Try to move the current piece right.
+	 * Apply a tick of gravity to the active piece, locking it if it can't move further.
+	 * Ends the game if there's no room for the next piece.
 	 * 
-	 * @return true if we could move the piece right, false if couldn't
+	 * @return true if the piece moved down, false if it was locked or didn't fall this tick
 	 */
-	private synchronized boolean tryMoveRight() {
-		if(this.getBoard().canMoveRight(this.getActivePiece())) {
-			this.board.moveRight(this.getActivePiece());
-			this.gameCanvas.repaint();
-			
-			// piece moved right
-			return true;
+	private synchronized boolean applyGravity() {
+		if(TetrisConstants.RUNNING_STATE != this.gameState) {
+			// a tick that raced a pause or the end of the game
+			return false;
 		}
 		
-		// couldn't move right
-		return false;
-	}
-	
-	/**
-	 * Try to rotate the piece left (counter-clockwise)
-	 * 
-	 * @return true if we could rotate left, false if couldn't
-	 */
-	private synchronized boolean tryRotateLeft() {
-		if(this.getBoard().canRotateLeft(this.getActivePiece())) {
-			this.board.rotateLeft(this.getActivePiece());
-			this.gameCanvas.repaint();
-			
-			// rotated left
-			return true;
-		}
+		boolean moved = this.engine.tick();
+		this.replayRecorder.record(TetrisConstants.ACTION_TICK);
+		this.gameCanvas.repaint();
 		
-		// couldn't rotate
-		return false;
-	}
-	
-	/**
-	 * Try to rotate the piece right (clockwise)
-	 *
-	 * @return true if we could rotate right, false if couldn't
-	 */
-	private synchronized boolean tryRotateRight() {
-		if(this.getBoard().canRotateRight(this.getActivePiece())) {
-			this.board.rotateRight(this.getActivePiece());
-			this.gameCanvas.repaint();
-			
-			// rotated right
-			return true;
+		if(this.engine.isGameOver()) {
+			// no room for the new piece
+			this.endGame();
 		}
 		
-		// couldn't rotate
-		return false;
+		return moved;
 	}
 	
 	/**
@@ -513,6 +447,8 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 			this.pauseGame();
 		} else if(c == this.resumeCommand) {
 			this.resumeGame();
+		} else if(c == this.exportCommand) {
+			new PerfExporter(this.storeUrl, this.perfStats, this.tracer).start();
 		}
 	}
 	
@@ -524,37 +460,101 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 		this.exitCommand = new Command("exit", Command.EXIT, 1);
 		this.pauseCommand = new Command("pause", Command.ITEM, 1);
 		this.resumeCommand = new Command("resume", Command.ITEM, 1);
+		this.exportCommand = new Command("export stats", Command.SCREEN, 2);
 				
 		this.gameCanvas.setCommandListener(this);
 	}
 	
 	/**
 	 * Drop thread periodically calls this method.
-	 * We try to move down the active piece on each tick.
+	 * Gravity pulls the active piece down on each tick.
 	 */
 	public void tick() {
-		this.tryMoveDown();
+		this.tracer.begin(Tracer.TICK);
+		long startTime = System.currentTimeMillis();
+		this.applyGravity();
+		
+		long duration = System.currentTimeMillis() - startTime;
+		this.perfStats.record(PerfStats.TICK_TIME, duration);
+		this.tracer.end(Tracer.TICK);
+		
+		if(null != this.eventListener && duration >= this.tickEventThreshold) {
+			this.eventListener.tick(duration);
+		}
+	}
+	
+	/**
+	 * The canvas calls this once the first frame has been painted.
+	 * Deferred work that shouldn't hold up startup is kicked off here.
+	 */
+	public void firstFramePainted() {
+		this.hiScoreWriter.requestLoad();
+	}
+	
+	/**
+	 * The hi score writer calls this once it has read the saved hi score.
+	 * 
+	 * @param storedHiScore the hi score read from rms
+	 */
+	public void hiScoreLoaded(int storedHiScore) {
+		if(storedHiScore > this.hiScore) {
+			this.hiScore = storedHiScore;
+			
+			if(TetrisConstants.TITLE_STATE == this.gameState) {
+				// the title screen shows the hi score, repaint it
+				this.gameCanvas.reset();
+			}
+		}
+	}
+	
+	/**
+	 * Set the listener to receive engine events.
+	 * 
+	 * @param eventListener the listener, or null to stop sending events
+	 */
+	public void setEventListener(GameEventListener eventListener) {
+		this.eventListener = eventListener;
+		this.engine.setEventListener(eventListener);
+	}
+	
+	/**
+	 * Set the thresholds for duration events.  Ticks and row clears quicker than their threshold send no event.
+	 * Both thresholds start at 0, so every event is sent.
+	 * 
+	 * @param tickEventThreshold minimum tick duration (ms) to send a tick event
+	 * @param clearEventThreshold minimum row clear duration (ms) to send a lines cleared event
+	 */
+	public void setEventThresholds(int tickEventThreshold, int clearEventThreshold) {
+		this.tickEventThreshold = tickEventThreshold;
+		this.engine.setClearEventThreshold(clearEventThreshold);
 	}
 
+	/**
+	 * @return the size of the board
+	 */
+	public BoardConfig getBoardConfig() {
+		return this.engine.getBoardConfig();
+	}
+	
 	/**
 	 * @return the board state object
 	 */
 	public TetrisBoard getBoard() {
-		return this.board;
+		return this.engine.getBoard();
 	}
 	
 	/**
 	 * @return the active piece state object
 	 */
 	public TetrisPiece getActivePiece() {
-		return this.activePiece;
+		return this.engine.getActivePiece();
 	}
 	
 	/**
 	 * @return the current game score
 	 */
 	public int getScore() {
-		return this.score;
+		return this.engine.getScore();
 	}
 	
 	/**
@@ -564,32 +564,99 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 		return this.hiScore;
 	}
 	
+	/**
+	 * @return the top scores, including any games not yet loaded or written
+	 */
+	public Leaderboard getLeaderboard() {
+		return this.hiScoreWriter.getLeaderboard();
+	}
+	
+	/**
+	 * There's no recording of a game restored from a snapshot or not on the standard board, neither could be replayed.
+	 * 
+	 * @return the recording of the current game, or of the last one once it's over
+	 */
+	public ReplayRecorder getReplayRecorder() {
+		return this.replayRecorder;
+	}
+	
+	/**
+	 * @return the number of pieces added in the current game, changes whenever a new piece appears
+	 */
+	public int getPieceCount() {
+		return this.engine.getPieceCount();
+	}
+	
 	/**
 	 * @return the current line count
 	 */
 	public int getLineCount() {
-		return this.lineCount;
+		return this.engine.getLineCount();
 	}
 	
 	/**
 	 * @return the current level
 	 */
 	public int getLevel() {
-		return this.level;
+		return this.engine.getLevel();
 	}
 	
 	/**
 	 * @return the upcoming piece once the current piece is dropped
 	 */
 	public int getNextPieceType() {
-		return this.nextPieceType;
+		return this.engine.getNextPieceType();
+	}
+	
+	/**
+	 * @param i which of the upcoming pieces, 0 for the next, up to PREVIEW_PIECES - 1
+	 * @return the upcoming piece
+	 */
+	public int getNextPieceType(int i) {
+		return this.engine.getNextPieceType(i);
+	}
+	
+	/**
+	 * @return a count of the clears so far, it changes each time rows are cleared
+	 */
+	public int getClearSequence() {
+		return this.engine.getClearSequence();
+	}
+	
+	/**
+	 * @return the number of rows the last clear removed
+	 */
+	public int getClearedRowCount() {
+		return this.engine.getClearedRowCount();
+	}
+	
+	/**
+	 * @param i the index of the row, 0 to getClearedRowCount - 1
+	 * @return the y of the row, where it was on the board before it was cleared
+	 */
+	public int getClearedRow(int i) {
+		return this.engine.getClearedRow(i);
 	}
 	
 	/**
 	 * @return the current time between ticks (milliseconds)
 	 */
 	public int getTickSpeed() {
-		return this.tickSpeed;
+		return this.engine.getTickSpeed();
+	}
+	
+	/**
+	 * @return the performance counters and histograms
+	 */
+	public PerfStats getPerfStats() {
+		return this.perfStats;
+	}
+	
+	/**
+	 * @return the game loop tracer
+	 */
+	public Tracer getTracer() {
+		return this.tracer;
 	}
 	
 	/**
@@ -613,71 +680,82 @@ public class TetrisMIDlet extends MIDlet implements CommandListener {
 			this.gameCanvas.repaint();
 		}
 	}
-
+	
 	/**
-	 * Open the record store and try to read a hi score out of it.
-	 * 
-	 * @return the hi score persisted in rms
+	 * Save the game in progress to the state store, so it can be restored if the app is killed while suspended.
+	 * This is done synchronously while being suspended, the encoding is small and reuses its buffer.
 	 */
-	private int openAndReadHiScore() {
-		int hiScore = 0;
+	private void saveSnapshot() {
+		// play time is already up to date, since the game is paused
+		GameEngine engine = this.engine;
+		this.snapshot.encode(engine.getBoard(), engine.getActivePiece(), engine.getNextPieceTypes(),
+							 engine.getScore(), engine.getLevel(), engine.getLineCount(), engine.getStartLevel(),
+							 this.playTime, engine.getRandom().getState());
 		
 		try {
-			this.tetrisStore = RecordStore.openRecordStore(TetrisConstants.TETRIS_RECORD_STORE, true);
-			if(this.tetrisStore.getNumRecords() > 0) {
-				// should be only one record, the hi score
-				
-				RecordEnumeration recordEnum = this.tetrisStore.enumerateRecords(null, null, false);
-				this.hiScoreRecordId = recordEnum.nextRecordId();
-				byte[] hiScoreBytes = this.tetrisStore.getRecord(this.hiScoreRecordId);
-				
-				// wrap the bytes in a DataInputStream so we can readInt
-				ByteArrayInputStream byteIn = new ByteArrayInputStream(hiScoreBytes);
-				DataInputStream dataIn = new DataInputStream(byteIn);
-				
-				hiScore = dataIn.readInt();
-				
-				// don't think this is necessary
-				dataIn.close();
-				byteIn.close();
-			}
+			this.stateStore.writeState(this.snapshot.getBuffer(), this.snapshot.getSize());
+			this.snapshotStored = true;
 		} catch(Exception e) {
-			// nothing we can do, hiScore remains 0
+			// couldn't save, the game just won't be restored
 		}
-			
-		return hiScore;
 	}
 	
 	/**
-	 * Try to write the current hi score to the record store and close it.
-	 * 
-	 * @param score the current hi score
+	 * Try to restore a saved game from the state store, leaving it in the paused state.
+	 * The snapshot is cleared once restored, it's saved again on the next suspend.
 	 */
-	private void writeAndCloseHiScore(int score) {
+	private void restoreSnapshot() {
 		try {
-			// use DataOutputStream so we can writeInt
-			ByteArrayOutputStream byteOut = new ByteArrayOutputStream(4);	// a single int, should be 4 bytes
-			DataOutputStream dataOut = new DataOutputStream(byteOut);
-			dataOut.writeInt(this.hiScore);
-			
-			// get the bytes for the int
-			byte[] hiScoreBytes = byteOut.toByteArray();
-			
-			if(this.tetrisStore.getNumRecords() == 0) {
-				// no previously stored record, created a new one
-				this.tetrisStore.addRecord(hiScoreBytes, 0, hiScoreBytes.length);
-			} else {
-				// overwrite the existing hi score record
-				this.tetrisStore.setRecord(this.hiScoreRecordId, hiScoreBytes, 0, hiScoreBytes.length);
+			byte[] snapshotBytes = this.snapshot.getBuffer();
+			int length = this.stateStore.readState(snapshotBytes);
+			if(0 == length) {
+				// nothing saved
+				return;
 			}
 			
-			this.tetrisStore.closeRecordStore();
-			
-			dataOut.close();
-			byteOut.close();
+			this.snapshotStored = true;
 			
+			if(!this.snapshot.decode(snapshotBytes, length, this.engine.getBoard(), this.engine.getActivePiece())) {
+				// not a snapshot we understand
+				this.engine.getBoard().clearBoard();
+				this.clearSnapshot();
+				return;
+			}
+		} catch(Exception e) {
+			// couldn't restore it, don't leave it to fail again on every launch
+			this.engine.getBoard().clearBoard();
+			this.clearSnapshot();
+			return;
+		}
+		
+		GameSnapshot snapshot = this.snapshot;
+		this.engine.restore(snapshot.getNextPieceTypes(), snapshot.getScore(), snapshot.getLevel(), snapshot.getLineCount(),
+							snapshot.getStartLevel(), snapshot.getRandomState());
+		this.playTime = snapshot.getPlayTime();
+		
+		// the restored game's start wasn't recorded, it can't be replayed
+		this.replayRecorder.clear();
+		
+		this.clearSnapshot();
+		
+		// straight into the paused state, the player resumes when ready
+		this.gameCanvas.addCommand(this.resumeCommand);
+		this.setGameState(TetrisConstants.PAUSED_STATE);
+	}
+	
+	/**
+	 * Clear any saved snapshot so it won't be restored.
+	 */
+	private void clearSnapshot() {
+		if(!this.snapshotStored) {
+			return;
+		}
+		
+		try {
+			this.stateStore.clearState();
+			this.snapshotStored = false;
 		} catch(Exception e) {
-			// oh well...
+			// nothing to do
 		}
 	}
 }
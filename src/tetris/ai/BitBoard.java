@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.ai;
+
+import tetris.TetrisConstants;
+import tetris.model.PieceShapes;
+import tetris.model.TetrisBoard;
+
+/**
+ * A compact board for searching, each row is an int with bit x set if column x is filled.
+ * 
+ * Only tracks whether blocks are filled, not their types, which is all a search needs.
+ * Follows the same rules as TetrisBoard: a piece fits if all its blocks are on the board and empty,
+ * completed rows are removed and the rows above dropped.  Pieces are given as a type, rotation (see PieceShapes)
+ * and pivot position.  Nothing here allocates after construction, so boards can be reused as scratch space.
+ */
+public class BitBoard {
+	
+	public static final int FULL_ROW = (1 << TetrisConstants.WIDTH) - 1;	// mask of a completed row
+	
+	private static final int SHAPES = (TetrisConstants.NUM_PIECE_TYPES + 1) * PieceShapes.MAX_ROTATIONS;
+	
+	// per shape (type and rotation) row masks, so a piece can be tested a row at a time
+	private static int[] shapeMinX = new int[SHAPES];	// smallest x offset of the shape's blocks
+	private static int[] shapeMaxX = new int[SHAPES];	// largest x offset of the shape's blocks
+	private static int[] shapeMinY = new int[SHAPES];	// smallest y offset of the shape's blocks
+	private static int[] shapeRows = new int[SHAPES];	// number of rows the shape covers
+	private static int[] shapeMasks = new int[SHAPES * TetrisConstants.FOUR_BLOCKS];	// row masks, bit 0 is shapeMinX
+	
+	static {
+		for(int type = 1; type <= TetrisConstants.NUM_PIECE_TYPES; type++) {
+			for(int rotation = 0; rotation < PieceShapes.getRotationCount(type); rotation++) {
+				int shape = getShape(type, rotation);
+				
+				int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+				int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+				for(int i = 0; i < TetrisConstants.FOUR_BLOCKS; i++) {
+					minX = Math.min(minX, PieceShapes.getBlockX(type, rotation, i));
+					maxX = Math.max(maxX, PieceShapes.getBlockX(type, rotation, i));
+					minY = Math.min(minY, PieceShapes.getBlockY(type, rotation, i));
+					maxY = Math.max(maxY, PieceShapes.getBlockY(type, rotation, i));
+				}
+				
+				shapeMinX[shape] = minX;
+				shapeMaxX[shape] = maxX;
+				shapeMinY[shape] = minY;
+				shapeRows[shape] = maxY - minY + 1;
+				
+				for(int i = 0; i < TetrisConstants.FOUR_BLOCKS; i++) {
+					int row = PieceShapes.getBlockY(type, rotation, i) - minY;
+					shapeMasks[(shape * TetrisConstants.FOUR_BLOCKS) + row] |= 1 << (PieceShapes.getBlockX(type, rotation, i) - minX);
+				}
+			}
+		}
+	}
+	
+	private int[] rows = new int[TetrisConstants.HEIGHT];	// the filled blocks of each row, top row first
+	
+	/**
+	 * @param type the piece type
+	 * @param rotation the rotation
+	 * @return the index of the shape in the shape tables
+	 */
+	private static int getShape(int type, int rotation) {
+		return (type * PieceShapes.MAX_ROTATIONS) + rotation;
+	}
+	
+	/**
+	 * @param type the piece type
+	 * @param rotation the rotation
+	 * @return the smallest pivot x at which the piece is on the board
+	 */
+	public static int getMinPivotX(int type, int rotation) {
+		return -shapeMinX[getShape(type, rotation)];
+	}
+	
+	/**
+	 * @param type the piece type
+	 * @param rotation the rotation
+	 * @return the largest pivot x at which the piece is on the board
+	 */
+	public static int getMaxPivotX(int type, int rotation) {
+		return TetrisConstants.WIDTH - 1 - shapeMaxX[getShape(type, rotation)];
+	}
+	
+	////////////////////
+	
+	/**
+	 * Empty the board.
+	 */
+	public void clear() {
+		for(int y = 0; y < TetrisConstants.HEIGHT; y++) {
+			this.rows[y] = 0;
+		}
+	}
+	
+	/**
+	 * Copy the locked blocks of a game board.  The active piece isn't copied.
+	 * @param board the board to copy
+	 */
+	public void copyFrom(TetrisBoard board) {
+		for(int y = 0; y < TetrisConstants.HEIGHT; y++) {
+			int row = 0;
+			for(int x = 0; x < TetrisConstants.WIDTH; x++) {
+				if(board.getBlockType(x, y) > 0) {
+					row |= 1 << x;
+				}
+			}
+			
+			this.rows[y] = row;
+		}
+	}
+	
+	/**
+	 * @param other the board to copy
+	 */
+	public void copyFrom(BitBoard other) {
+		System.arraycopy(other.rows, 0, this.rows, 0, TetrisConstants.HEIGHT);
+	}
+	
+	/**
+	 * @param y the row index, top row is 0
+	 * @return the row's filled blocks, bit x set if column x is filled
+	 */
+	public int getRow(int y) {
+		return this.rows[y];
+	}
+	
+	/**
+	 * @param y the row index, top row is 0
+	 * @param row the row's filled blocks, bit x set if column x is filled
+	 */
+	public void setRow(int y, int row) {
+		this.rows[y] = row & FULL_ROW;
+	}
+	
+	/**
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return true if the block is filled
+	 */
+	public boolean isFilled(int x, int y) {
+		return 0 != (this.rows[y] & (1 << x));
+	}
+	
+	////////////////////
+	
+	/**
+	 * Check that a piece fits, ie all its blocks are on the board and empty.
+	 * 
+	 * @param type the piece type
+	 * @param rotation the rotation
+	 * @param pivotX the x coordinate of the pivot
+	 * @param pivotY the y coordinate of the pivot
+	 * @return true if the piece fits
+	 */
+	public boolean fits(int type, int rotation, int pivotX, int pivotY) {
+		return fits(this.rows, 0, type, rotation, pivotX, pivotY);
+	}
+	
+	/**
+	 * Check that a piece fits on a board held in part of a larger array of rows,
+	 * for callers that keep many boards in one array.
+	 * 
+	 * @param rows the array holding the board's rows
+	 * @param offset the index of the board's top row in the array
+	 * @param type the piece type
+	 * @param rotation the rotation
+	 * @param pivotX the x coordinate of the pivot
+	 * @param pivotY the y coordinate of the pivot
+	 * @return true if the piece fits
+	 */
+	public static boolean fits(int[] rows, int offset, int type, int rotation, int pivotX, int pivotY) {
+		int shape = getShape(type, rotation);
+		
+		int left = pivotX + shapeMinX[shape];
+		if(left < 0 || pivotX + shapeMaxX[shape] >= TetrisConstants.WIDTH) {
+			return false;
+		}
+		
+		int top = pivotY + shapeMinY[shape];
+		int numRows = shapeRows[shape];
+		if(top < 0 || top + numRows > TetrisConstants.HEIGHT) {
+			return false;
+		}
+		
+		int maskIndex = shape * TetrisConstants.FOUR_BLOCKS;
+		for(int i = 0; i < numRows; i++) {
+			if(0 != (rows[offset + top + i] & (shapeMasks[maskIndex + i] << left))) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Drop a piece straight down as far as it goes.
+	 * 
+	 * @param type the piece type
+	 * @param rotation the rotation
+	 * @param pivotX the x coordinate of the pivot
+	 * @param pivotY the y coordinate of the pivot to drop from, the piece should fit there
+	 * @return the y coordinate of the pivot where the piece lands
+	 */
+	public int dropY(int type, int rotation, int pivotX, int pivotY) {
+		while(this.fits(type, rotation, pivotX, pivotY + 1)) {
+			pivotY++;
+		}
+		
+		return pivotY;
+	}
+	
+	/**
+	 * Lock a piece into the board and clear any completed rows.
+	 * 
+	 * @param type the piece type
+	 * @param rotation the rotation
+	 * @param pivotX the x coordinate of the pivot
+	 * @param pivotY the y coordinate of the pivot, the piece should fit there
+	 * @return the number of rows cleared
+	 */
+	public int place(int type, int rotation, int pivotX, int pivotY) {
+		return place(this.rows, 0, type, rotation, pivotX, pivotY);
+	}
+	
+	/**
+	 * Lock a piece into a board held in part of a larger array of rows, and clear any completed rows.
+	 * 
+	 * @param rows the array holding the board's rows
+	 * @param offset the index of the board's top row in the array
+	 * @param type the piece type
+	 * @param rotation the rotation
+	 * @param pivotX the x coordinate of the pivot
+	 * @param pivotY the y coordinate of the pivot, the piece should fit there
+	 * @return the number of rows cleared
+	 */
+	public static int place(int[] rows, int offset, int type, int rotation, int pivotX, int pivotY) {
+		int shape = getShape(type, rotation);
+		int left = pivotX + shapeMinX[shape];
+		int top = pivotY + shapeMinY[shape];
+		int numRows = shapeRows[shape];
+		
+		int maskIndex = shape * TetrisConstants.FOUR_BLOCKS;
+		boolean completed = false;
+		for(int i = 0; i < numRows; i++) {
+			rows[offset + top + i] |= shapeMasks[maskIndex + i] << left;
+			completed |= FULL_ROW == rows[offset + top + i];
+		}
+		
+		return completed ? clearCompletedRows(rows, offset) : 0;
+	}
+	
+	/**
+	 * Remove completed rows, dropping the rows above.
+	 * @return the number of rows cleared
+	 */
+	public int clearCompletedRows() {
+		return clearCompletedRows(this.rows, 0);
+	}
+	
+	/**
+	 * Remove completed rows from a board held in part of a larger array of rows, dropping the rows above.
+	 * 
+	 * @param rows the array holding the board's rows
+	 * @param offset the index of the board's top row in the array
+	 * @return the number of rows cleared
+	 */
+	public static int clearCompletedRows(int[] rows, int offset) {
+		int numCleared = 0;
+		
+		// iterate from the bottom up, copying each kept row down by the number cleared below it
+		for(int y = TetrisConstants.HEIGHT - 1; y >= 0; y--) {
+			int row = rows[offset + y];
+			if(FULL_ROW == row) {
+				numCleared++;
+			} else if(numCleared > 0) {
+				rows[offset + y + numCleared] = row;
+			}
+		}
+		
+		for(int y = 0; y < numCleared; y++) {
+			rows[offset + y] = 0;
+		}
+		
+		return numCleared;
+	}
+	
+	/**
+	 * A 64 bit hash of the filled blocks, equal boards always have equal hashes.
+	 * @return the hash
+	 */
+	public long hash() {
+		long hash = 0xcbf29ce484222325L;
+		
+		for(int y = 0; y < TetrisConstants.HEIGHT; y++) {
+			hash ^= this.rows[y];
+			hash *= 0x100000001b3L;
+			hash ^= hash >>> 29;
+		}
+		
+		return hash;
+	}
+	
+	/**
+	 * @param other another board
+	 * @return true if both boards have the same filled blocks
+	 */
+	public boolean equals(BitBoard other) {
+		for(int y = 0; y < TetrisConstants.HEIGHT; y++) {
+			if(this.rows[y] != other.rows[y]) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @param bits an int
+	 * @return the number of set bits
+	 */
+	public static int bitCount(int bits) {
+		int count = 0;
+		while(0 != bits) {
+			bits &= bits - 1;
+			count++;
+		}
+		
+		return count;
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.ai;
+
+import tetris.TetrisConstants;
+
+/**
+ * Scores a board after a placement with a weighted sum of the standard features:
+ * aggregate column height, holes (empty blocks with a filled block somewhere above), bumpiness
+ * (sum of the height differences between neighboring columns), and lines cleared by the placement.
+ * 
+ * Weights are integers, the defaults are the well known hand tuned weights scaled by 1000.
+ * Holds its own scratch space, so evaluating doesn't allocate, but one evaluator shouldn't be shared between threads.
+ */
+public class Evaluator {
+	
+	// feature indices, also indices into the weights
+	public static final int AGGREGATE_HEIGHT = 0;
+	public static final int HOLES			 = 1;
+	public static final int BUMPINESS		 = 2;
+	public static final int LINES_CLEARED	 = 3;
+	public static final int NUM_FEATURES	 = 4;
+	
+	private static final int[] DEFAULT_WEIGHTS = { -510, -357, -184, 761 };
+	
+	private int[] weights = new int[NUM_FEATURES];			// the weight of each feature
+	private int[] features = new int[NUM_FEATURES];			// scratch for the features of the board being evaluated
+	private int[] heights = new int[TetrisConstants.WIDTH];	// scratch for the column heights of the board being evaluated
+	
+	/**
+	 * Make a new evaluator with the default weights.
+	 */
+	public Evaluator() {
+		this.setWeights(DEFAULT_WEIGHTS);
+	}
+	
+	/**
+	 * Make a new evaluator with the given weights.
+	 * @param weights the weights, indexed by feature
+	 */
+	public Evaluator(int[] weights) {
+		this.setWeights(weights);
+	}
+	
+	/**
+	 * @param weights the weights to copy, indexed by feature
+	 */
+	public void setWeights(int[] weights) {
+		System.arraycopy(weights, 0, this.weights, 0, NUM_FEATURES);
+	}
+	
+	/**
+	 * @param other the evaluator to copy the weights of
+	 */
+	public void copyWeights(Evaluator other) {
+		this.setWeights(other.weights);
+	}
+	
+	/**
+	 * @param feature the feature index
+	 * @return the weight of the feature
+	 */
+	public int getWeight(int feature) {
+		return this.weights[feature];
+	}
+	
+	/**
+	 * Score a board, higher is better.
+	 * 
+	 * @param board the board after the placement
+	 * @param linesCleared the number of lines the placement cleared
+	 * @return the score
+	 */
+	public int evaluate(BitBoard board, int linesCleared) {
+		this.computeFeatures(board, linesCleared, this.features);
+		
+		int score = 0;
+		for(int i = 0; i < NUM_FEATURES; i++) {
+			score += this.weights[i] * this.features[i];
+		}
+		
+		return score;
+	}
+	
+	/**
+	 * Compute the features of a board.
+	 * 
+	 * @param board the board after the placement
+	 * @param linesCleared the number of lines the placement cleared
+	 * @param features filled with the features, indexed by feature
+	 */
+	public void computeFeatures(BitBoard board, int linesCleared, int[] features) {
+		int holes = 0;
+		int seen = 0;	// columns that have had a filled block somewhere above the current row
+		
+		for(int x = 0; x < TetrisConstants.WIDTH; x++) {
+			this.heights[x] = 0;
+		}
+		
+		// one pass top down, the first filled block in a column sets its height, empties below it are holes
+		for(int y = 0; y < TetrisConstants.HEIGHT; y++) {
+			int row = board.getRow(y);
+			
+			holes += BitBoard.bitCount(seen & ~row);
+			
+			int tops = row & ~seen;
+			for(int x = 0; 0 != tops; x++, tops >>>= 1) {
+				if(0 != (tops & 1)) {
+					this.heights[x] = TetrisConstants.HEIGHT - y;
+				}
+			}
+			
+			seen |= row;
+		}
+		
+		int aggregateHeight = 0;
+		int bumpiness = 0;
+		for(int x = 0; x < TetrisConstants.WIDTH; x++) {
+			aggregateHeight += this.heights[x];
+			
+			if(x > 0) {
+				bumpiness += Math.abs(this.heights[x] - this.heights[x - 1]);
+			}
+		}
+		
+		features[AGGREGATE_HEIGHT] = aggregateHeight;
+		features[HOLES] = holes;
+		features[BUMPINESS] = bumpiness;
+		features[LINES_CLEARED] = linesCleared;
+	}
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.ai;
+
+import tetris.TetrisConstants;
+
+/**
+ * Two ply placement search, over the active piece and the next (preview) piece.
+ * 
+ * Each placement the active piece can reach from where it is now is a branch, including the slides and spins
+ * under overhangs that dropping straight down misses; a branch is scored by the best placement
+ * of the next piece after it, dropped from above.  Branches are handed out to a fixed set of worker threads through a shared index,
+ * so as many run at once as there are workers.  The search has a time budget, once it runs out no new branches
+ * are started and the best of the branches finished so far is returned.  A branch is only a few dozen
+ * evaluations so the budget is overrun by at most that much per worker.
+ * 
+ * Branches are handed out in a fixed order and ties go to the earliest branch,
+ * so when the budget doesn't run out the result doesn't depend on how the threads were scheduled.
+ * 
+ * The workers wait between searches, call stopThreads when done with the search.
+ * One search at a time, a search shouldn't be shared by threads calling findBest.
+ */
+public class LookaheadSearch {
+	
+	public static final int MAX_BRANCHES = ReachabilitySearch.MAX_STATES;	// most first ply placements of a piece
+	
+	private static final int DEAD_SCORE = Integer.MIN_VALUE + 1;	// score of a branch after which the next piece can't be placed
+	private static final int UNSEARCHED = Integer.MIN_VALUE;		// score of a branch not searched before the budget ran out
+	
+	private Evaluator evaluator;			// scores the placements, the workers use copies of its weights
+	private PlacementSearch firstPly;		// single ply search, for when the next piece isn't known
+	private ReachabilitySearch reachability = new ReachabilitySearch();	// finds the first ply placements
+	private LookaheadWorker[] workers;		// the threads that search the branches
+	private TranspositionTable table;		// results are cached in this if set, shared by the workers
+	
+	// the current search, set up by findBest before the workers are woken, read only while they run
+	private BitBoard board = new BitBoard();	// the board being searched
+	private int pieceType;						// the active piece
+	private int nextPieceType;					// the next piece
+	private long deadline;						// when to stop starting branches (ms)
+	private int generation;						// incremented for each search, so the workers know there's a new one
+	
+	// the first ply branches
+	private int[] branchRotation = new int[MAX_BRANCHES];
+	private int[] branchX = new int[MAX_BRANCHES];
+	private int[] branchY = new int[MAX_BRANCHES];
+	private int[] branchLines = new int[MAX_BRANCHES];	// lines the first ply placement clears
+	private int[] branchScore = new int[MAX_BRANCHES];	// best score of the next piece after the branch, written by the worker that searched it
+	private int branchCount;
+	
+	private int nextBranch;			// index of the next branch to hand out
+	private int busyWorkers;		// number of workers still on the current search
+	private long branchesSearched;	// total branches searched, for measuring
+	
+	/**
+	 * Make a new search, and start its workers.
+	 * 
+	 * @param evaluator the evaluator to score placements with
+	 * @param numThreads the number of worker threads
+	 */
+	public LookaheadSearch(Evaluator evaluator, int numThreads) {
+		this.evaluator = evaluator;
+		this.firstPly = new PlacementSearch(evaluator);
+		
+		this.workers = new LookaheadWorker[Math.max(1, numThreads)];
+		for(int i = 0; i < this.workers.length; i++) {
+			this.workers[i] = new LookaheadWorker(this);
+			this.workers[i].start();
+		}
+	}
+	
+	/**
+	 * @return the evaluator used to score placements
+	 */
+	public Evaluator getEvaluator() {
+		return this.evaluator;
+	}
+	
+	/**
+	 * Cache results in a table, both whole searches and the workers' next piece searches.
+	 * Takes effect from the next search.
+	 * 
+	 * @param table the table, or null for no caching
+	 */
+	public synchronized void setTranspositionTable(TranspositionTable table) {
+		this.table = table;
+		this.firstPly.setTranspositionTable(table);
+	}
+	
+	/**
+	 * @return the table results are cached in, or null
+	 */
+	synchronized TranspositionTable getTranspositionTable() {
+		return this.table;
+	}
+	
+	/**
+	 * Find the best placement the active piece can reach, looking ahead to the next piece.
+	 * Blocks until the branches are done or the budget runs out.
+	 * 
+	 * @param board the board to place on, without the active piece on it
+	 * @param pieceType the type of the active piece
+	 * @param rotation the active piece's rotation
+	 * @param pivotX the x coordinate of the active piece's pivot
+	 * @param pivotY the y coordinate of the active piece's pivot
+	 * @param nextPieceType the type of the next piece, if not a piece type it's a single ply search
+	 * @param budget the time budget (ms)
+	 * @param best set to the best placement, or cleared if the piece can't be placed anywhere.  The score is the branch score.
+	 * @return true if a placement was found
+	 */
+	public boolean findBest(BitBoard board, int pieceType, int rotation, int pivotX, int pivotY,
+							int nextPieceType, int budget, Placement best) {
+		if(nextPieceType < 1 || nextPieceType > TetrisConstants.NUM_PIECE_TYPES) {
+			synchronized(this) {
+				return this.firstPly.findBestReachable(board, pieceType, rotation, pivotX, pivotY, this.reachability, best);
+			}
+		}
+		
+		synchronized(this) {
+			long key = 0;
+			if(null != this.table) {
+				// the same board can reach different placements from a different start, so the start is in the key
+				long start = (((rotation * TetrisConstants.HEIGHT) + pivotY) * TetrisConstants.WIDTH) + pivotX + 1;
+				key = TranspositionTable.getKey(board.hash() ^ (start * 0xc2b2ae3d27d4eb4fL), pieceType, nextPieceType);
+				if(this.table.probe(key, pieceType, 2, best)) {
+					return true;
+				}
+			}
+			
+			this.board.copyFrom(board);
+			this.pieceType = pieceType;
+			this.nextPieceType = nextPieceType;
+			this.addBranches(rotation, pivotX, pivotY);
+			
+			if(0 == this.branchCount) {
+				best.clear();
+				return false;
+			}
+			
+			// wake the workers and wait for them to finish the branches
+			this.nextBranch = 0;
+			this.busyWorkers = this.workers.length;
+			this.deadline = System.currentTimeMillis() + budget;
+			this.generation++;
+			this.notifyAll();
+			
+			while(this.busyWorkers > 0) {
+				try {
+					this.wait();
+				} catch(InterruptedException ie) {
+					// keep waiting, the workers still have the board
+				}
+			}
+			
+			this.pickBest(best);
+			
+			if(null != this.table && this.nextBranch == this.branchCount) {
+				// only cache it if the budget didn't cut it short
+				this.table.store(key, 2, best);
+			}
+		}
+		
+		return best.isValid();
+	}
+	
+	/**
+	 * List the placements the active piece can reach as branches, in the order the reachability search finds them.
+	 * 
+	 * @param rotation the active piece's rotation
+	 * @param pivotX the x coordinate of the active piece's pivot
+	 * @param pivotY the y coordinate of the active piece's pivot
+	 */
+	private void addBranches(int rotation, int pivotX, int pivotY) {
+		this.branchCount = this.reachability.search(this.board, this.pieceType, rotation, pivotX, pivotY);
+		
+		for(int i = 0; i < this.branchCount; i++) {
+			this.branchRotation[i] = this.reachability.getRotation(i);
+			this.branchX[i] = this.reachability.getX(i);
+			this.branchY[i] = this.reachability.getY(i);
+			this.branchScore[i] = UNSEARCHED;
+		}
+	}
+	
+	/**
+	 * Pick the best searched branch.  If the budget ran out before any were searched, the first branch is taken.
+	 * 
+	 * @param best set to the best branch
+	 */
+	private void pickBest(Placement best) {
+		int bestBranch = 0;
+		for(int i = 1; i < this.branchCount; i++) {
+			if(this.branchScore[i] > this.branchScore[bestBranch]) {
+				bestBranch = i;
+			}
+		}
+		
+		best.set(this.pieceType, this.branchRotation[bestBranch], this.branchX[bestBranch], this.branchY[bestBranch],
+				 this.branchScore[bestBranch], this.branchLines[bestBranch]);
+	}
+	
+	////////////////////
+	// called by the workers
+	
+	/**
+	 * Wait for a search newer than the one the worker last did.
+	 * 
+	 * @param lastGeneration the generation of the search the worker last did
+	 * @return the generation of the new search, or -1 if the workers are stopping
+	 */
+	synchronized int awaitSearch(int lastGeneration) {
+		while(this.generation == lastGeneration && !this.isStopped()) {
+			try {
+				this.wait();
+			} catch(InterruptedException ie) {
+				// just check again
+			}
+		}
+		
+		return this.isStopped() ? -1 : this.generation;
+	}
+	
+	/**
+	 * @return the index of the next branch to search, or -1 if there are none left or the budget has run out
+	 */
+	synchronized int takeBranch() {
+		if(this.nextBranch >= this.branchCount || System.currentTimeMillis() >= this.deadline) {
+			return -1;
+		}
+		
+		this.branchesSearched++;
+		return this.nextBranch++;
+	}
+	
+	/**
+	 * Search a branch.  Run by the workers outside the lock, on their own scratch board and search.
+	 * 
+	 * @param branch the branch index
+	 * @param scratch the worker's scratch board
+	 * @param search the worker's single ply search
+	 * @param placement the worker's scratch placement
+	 */
+	void searchBranch(int branch, BitBoard scratch, PlacementSearch search, Placement placement) {
+		scratch.copyFrom(this.board);
+		int lines = scratch.place(this.pieceType, this.branchRotation[branch], this.branchX[branch], this.branchY[branch]);
+		this.branchLines[branch] = lines;
+		
+		if(search.findBest(scratch, this.nextPieceType, lines, placement)) {
+			this.branchScore[branch] = Math.max(DEAD_SCORE, placement.getScore());
+		} else {
+			this.branchScore[branch] = DEAD_SCORE;
+		}
+	}
+	
+	/**
+	 * Called by a worker when there are no more branches for it.
+	 */
+	synchronized void workerDone() {
+		this.busyWorkers--;
+		if(0 == this.busyWorkers) {
+			this.notifyAll();
+		}
+	}
+	
+	/**
+	 * @return true if stopThreads has been called
+	 */
+	private boolean isStopped() {
+		return null == this.workers;
+	}
+	
+	////////////////////
+	
+	/**
+	 * @return the total number of branches searched, each is one first ply placement and a full search of the next piece
+	 */
+	public synchronized long getBranchesSearched() {
+		return this.branchesSearched;
+	}
+	
+	/**
+	 * @return the number of worker threads
+	 */
+	public int getThreadCount() {
+		return null != this.workers ? this.workers.length : 0;
+	}
+	
+	/**
+	 * Stop the worker threads, the search can't be used after this.
+	 */
+	public synchronized void stopThreads() {
+		this.workers = null;
+		this.notifyAll();
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.ai;
+
+/**
+ * One of the threads of a LookaheadSearch.
+ * Waits for a search, takes branches until there are none left, and goes back to waiting.
+ * Has its own evaluator and scratch space, so nothing is shared with the other workers but the search's branch tables.
+ */
+class LookaheadWorker extends Thread {
+	
+	private LookaheadSearch lookahead;			// the search this works for
+	private Evaluator evaluator = new Evaluator();		// copy of the search's evaluator, taken at the start of each search
+	private PlacementSearch search = new PlacementSearch(this.evaluator);	// searches the next piece
+	private BitBoard scratch = new BitBoard();	// the board after a branch's first ply placement
+	private Placement placement = new Placement();	// the best placement of the next piece
+	
+	/**
+	 * @param lookahead the search this works for
+	 */
+	LookaheadWorker(LookaheadSearch lookahead) {
+		this.lookahead = lookahead;
+	}
+	
+	/**
+	 * The worker loop.
+	 */
+	public void run() {
+		int generation = 0;
+		
+		while(true) {
+			generation = this.lookahead.awaitSearch(generation);
+			if(generation < 0) {
+				return;
+			}
+			
+			// weights and table may have been changed between searches
+			this.evaluator.copyWeights(this.lookahead.getEvaluator());
+			this.search.setTranspositionTable(this.lookahead.getTranspositionTable());
+			
+			int branch;
+			while((branch = this.lookahead.takeBranch()) >= 0) {
+				this.lookahead.searchBranch(branch, this.scratch, this.search, this.placement);
+			}
+			
+			this.lookahead.workerDone();
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.ai;
+
+/**
+ * Where a piece is to be placed: its rotation and the pivot position it lands at, plus how good that is.
+ * Mutable so that searches can reuse them rather than allocate.
+ */
+public class Placement {
+	
+	private boolean valid;		// false if there is no placement
+	private int pieceType;		// the type of the piece
+	private int rotation;		// the rotation of the piece, see PieceShapes
+	private int x;				// x coordinate of the pivot
+	private int y;				// y coordinate of the pivot where the piece lands
+	private int score;			// the evaluated score of the placement, higher is better
+	private int linesCleared;	// the number of lines the placement clears
+	
+	/**
+	 * Set the placement.
+	 * 
+	 * @param pieceType the type of the piece
+	 * @param rotation the rotation of the piece
+	 * @param x x coordinate of the pivot
+	 * @param y y coordinate of the pivot where the piece lands
+	 * @param score the evaluated score of the placement
+	 * @param linesCleared the number of lines the placement clears
+	 */
+	public void set(int pieceType, int rotation, int x, int y, int score, int linesCleared) {
+		this.valid = true;
+		this.pieceType = pieceType;
+		this.rotation = rotation;
+		this.x = x;
+		this.y = y;
+		this.score = score;
+		this.linesCleared = linesCleared;
+	}
+	
+	/**
+	 * @param other the placement to copy
+	 */
+	public void copyFrom(Placement other) {
+		this.valid = other.valid;
+		this.pieceType = other.pieceType;
+		this.rotation = other.rotation;
+		this.x = other.x;
+		this.y = other.y;
+		this.score = other.score;
+		this.linesCleared = other.linesCleared;
+	}
+	
+	/**
+	 * Mark as no placement.
+	 */
+	public void clear() {
+		this.valid = false;
+	}
+	
+	/**
+	 * @return true if this holds a placement
+	 */
+	public boolean isValid() {
+		return this.valid;
+	}
+	
+	/**
+	 * @return the type of the piece
+	 */
+	public int getPieceType() {
+		return this.pieceType;
+	}
+	
+	/**
+	 * @return the rotation of the piece, see PieceShapes
+	 */
+	public int getRotation() {
+		return this.rotation;
+	}
+	
+	/**
+	 * @return x coordinate of the pivot
+	 */
+	public int getX() {
+		return this.x;
+	}
+	
+	/**
+	 * @return y coordinate of the pivot where the piece lands
+	 */
+	public int getY() {
+		return this.y;
+	}
+	
+	/**
+	 * @return the evaluated score of the placement, higher is better
+	 */
+	public int getScore() {
+		return this.score;
+	}
+	
+	/**
+	 * @param score the new score, used when a search rescores a placement
+	 */
+	public void setScore(int score) {
+		this.score = score;
+	}
+	
+	/**
+	 * @return the number of lines the placement clears
+	 */
+	public int getLinesCleared() {
+		return this.linesCleared;
+	}
+}
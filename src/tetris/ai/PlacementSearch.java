@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.ai;
+
+import tetris.model.PieceShapes;
+
+/**
+ * Finds the best placement of a piece: for every rotation and column it drops the piece straight down
+ * from the spawn row, places it on a scratch board, and scores the result with an Evaluator.
+ * 
+ * The scratch board is reused, so a search allocates nothing.
+ * Not thread safe, use one search per thread.
+ */
+public class PlacementSearch {
+	
+	private Evaluator evaluator;				// scores the placements
+	private BitBoard scratch = new BitBoard();	// each placement is tried on this
+	private long evaluatedCount;				// the number of placements evaluated so far
+	private TranspositionTable table;			// results are cached in this if set, may be shared with other searches
+	
+	/**
+	 * @param evaluator the evaluator to score placements with
+	 */
+	public PlacementSearch(Evaluator evaluator) {
+		this.evaluator = evaluator;
+	}
+	
+	/**
+	 * @return the evaluator used to score placements
+	 */
+	public Evaluator getEvaluator() {
+		return this.evaluator;
+	}
+	
+	/**
+	 * Cache results in a table.  The table can be shared by searches on other threads.
+	 * @param table the table, or null for no caching
+	 */
+	public void setTranspositionTable(TranspositionTable table) {
+		this.table = table;
+	}
+	
+	/**
+	 * Find the best placement of a piece.
+	 * 
+	 * @param board the board to place on
+	 * @param pieceType the type of the piece
+	 * @param best set to the best placement, or cleared if the piece can't be placed anywhere
+	 * @return true if a placement was found
+	 */
+	public boolean findBest(BitBoard board, int pieceType, Placement best) {
+		return this.findBest(board, pieceType, 0, best);
+	}
+	
+	/**
+	 * Find the best placement of a piece, as the later ply of a lookahead.
+	 * 
+	 * @param board the board to place on
+	 * @param pieceType the type of the piece
+	 * @param linesSoFar lines already cleared by earlier plies, counted in with the placement's own
+	 * @param best set to the best placement, or cleared if the piece can't be placed anywhere
+	 * @return true if a placement was found
+	 */
+	public boolean findBest(BitBoard board, int pieceType, int linesSoFar, Placement best) {
+		long key = 0;
+		if(null != this.table) {
+			// stored without the earlier lines, they add the same to every placement's score so don't change which is best
+			key = TranspositionTable.getKey(board.hash(), pieceType, 0);
+			if(this.table.probe(key, pieceType, 1, best)) {
+				best.setScore(best.getScore() + (linesSoFar * this.evaluator.getWeight(Evaluator.LINES_CLEARED)));
+				return true;
+			}
+		}
+		
+		best.clear();
+		
+		int startY = PieceShapes.getSpawnY(pieceType);
+		for(int rotation = 0; rotation < PieceShapes.getRotationCount(pieceType); rotation++) {
+			int maxX = BitBoard.getMaxPivotX(pieceType, rotation);
+			
+			for(int x = BitBoard.getMinPivotX(pieceType, rotation); x <= maxX; x++) {
+				if(!board.fits(pieceType, rotation, x, startY)) {
+					continue;
+				}
+				
+				int y = board.dropY(pieceType, rotation, x, startY);
+				
+				this.scratch.copyFrom(board);
+				int linesCleared = this.scratch.place(pieceType, rotation, x, y);
+				int score = this.evaluator.evaluate(this.scratch, linesCleared);
+				this.evaluatedCount++;
+				
+				if(!best.isValid() || score > best.getScore()) {
+					best.set(pieceType, rotation, x, y, score, linesCleared);
+				}
+			}
+		}
+		
+		if(!best.isValid()) {
+			return false;
+		}
+		
+		if(null != this.table) {
+			this.table.store(key, 1, best);
+		}
+		
+		best.setScore(best.getScore() + (linesSoFar * this.evaluator.getWeight(Evaluator.LINES_CLEARED)));
+		return true;
+	}
+	
+	/**
+	 * Find the best placement of a piece out of every placement it can reach from where it is,
+	 * including slides and spins under overhangs that dropping straight down misses.
+	 * 
+	 * @param board the board to place on, without the piece on it
+	 * @param pieceType the type of the piece
+	 * @param rotation the piece's rotation
+	 * @param pivotX the x coordinate of the piece's pivot
+	 * @param pivotY the y coordinate of the piece's pivot
+	 * @param reachability searches the reachable placements, left holding them
+	 * @param best set to the best placement, or cleared if the piece can't be placed anywhere
+	 * @return true if a placement was found
+	 */
+	public boolean findBestReachable(BitBoard board, int pieceType, int rotation, int pivotX, int pivotY,
+									 ReachabilitySearch reachability, Placement best) {
+		best.clear();
+		
+		int count = reachability.search(board, pieceType, rotation, pivotX, pivotY);
+		for(int i = 0; i < count; i++) {
+			int placedRotation = reachability.getRotation(i);
+			int x = reachability.getX(i);
+			int y = reachability.getY(i);
+			
+			this.scratch.copyFrom(board);
+			int linesCleared = this.scratch.place(pieceType, placedRotation, x, y);
+			int score = this.evaluator.evaluate(this.scratch, linesCleared);
+			this.evaluatedCount++;
+			
+			if(!best.isValid() || score > best.getScore()) {
+				best.set(pieceType, placedRotation, x, y, score, linesCleared);
+			}
+		}
+		
+		return best.isValid();
+	}
+	
+	/**
+	 * @return the number of placements evaluated by this search so far
+	 */
+	public long getEvaluatedCount() {
+		return this.evaluatedCount;
+	}
+}
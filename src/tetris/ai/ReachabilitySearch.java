@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.ai;
+
+import tetris.TetrisConstants;
+import tetris.model.PieceShapes;
+
+/**
+ * Finds every placement a piece can reach with the game's inputs, and the shortest input sequence to each.
+ * 
+ * A breadth first search over the piece's states (pivot x, pivot y, rotation) from where it is now.
+ * The moves are the same as TetrisBoard's: left, right and down move a row or column, rotate turns left about
+ * the pivot with no kicks, and a move is allowed if every block lands on the board in an empty cell.
+ * Moves are tested with BitBoard.fits, which applies exactly those rules, so the search finds slides and spins
+ * under overhangs that dropping from above misses.
+ * 
+ * A placement is a resting state (one the piece can't move down from).  Locking takes one more input, either
+ * down at the resting state or a quick drop from any reachable state above it in the same column, whichever is
+ * fewer inputs in all.  The path includes that last input.  Gravity is not modelled, paths are inputs only.
+ * 
+ * All the tables are allocated up front and the visited table is a bitset, so a search allocates nothing.
+ * Not thread safe, use one per thread.
+ */
+public class ReachabilitySearch {
+	
+	// the pivot is one of the blocks, so it's always on the board
+	public static final int MAX_STATES = PieceShapes.MAX_ROTATIONS * TetrisConstants.HEIGHT * TetrisConstants.WIDTH;
+	
+	private static final int NO_STATE = -1;
+	
+	private BitBoard board;			// the board being searched
+	private int pieceType;			// the piece being searched
+	
+	private int[] visited = new int[(MAX_STATES + 31) >> 5];	// bitset of the states reached
+	private int[] queue = new int[MAX_STATES];		// states in the order reached, the search queue
+	private int[] parent = new int[MAX_STATES];		// the state each state was reached from
+	private byte[] parentAction = new byte[MAX_STATES];	// the action that reached each state from its parent
+	private short[] distance = new short[MAX_STATES];	// the number of inputs to reach each state
+	
+	// the placements found, in the order reached
+	private int[] placementState = new int[MAX_STATES];	// the resting state
+	private int[] placementFrom = new int[MAX_STATES];	// the state the locking input is given from
+	private int placementCount;
+	
+	////////////////////
+	// states are packed into an int index
+	
+	/**
+	 * @param rotation the rotation
+	 * @param pivotX the pivot x
+	 * @param pivotY the pivot y
+	 * @return the state index
+	 */
+	private static int getState(int rotation, int pivotX, int pivotY) {
+		return (((rotation * TetrisConstants.HEIGHT) + pivotY) * TetrisConstants.WIDTH) + pivotX;
+	}
+	
+	/**
+	 * @param state the state index
+	 * @return the pivot x of the state
+	 */
+	private static int getStateX(int state) {
+		return state % TetrisConstants.WIDTH;
+	}
+	
+	/**
+	 * @param state the state index
+	 * @return the pivot y of the state
+	 */
+	private static int getStateY(int state) {
+		return (state / TetrisConstants.WIDTH) % TetrisConstants.HEIGHT;
+	}
+	
+	/**
+	 * @param state the state index
+	 * @return the rotation of the state
+	 */
+	private static int getStateRotation(int state) {
+		return state / (TetrisConstants.WIDTH * TetrisConstants.HEIGHT);
+	}
+	
+	/**
+	 * @param state the state index
+	 * @return true if the last search reached the state
+	 */
+	private boolean isVisited(int state) {
+		return 0 != (this.visited[state >> 5] & (1 << (state & 31)));
+	}
+	
+	////////////////////
+	
+	/**
+	 * Search from a piece's current state.
+	 * 
+	 * @param board the board, without the piece on it
+	 * @param pieceType the type of the piece
+	 * @param rotation the piece's rotation
+	 * @param pivotX the x coordinate of the piece's pivot
+	 * @param pivotY the y coordinate of the piece's pivot
+	 * @return the number of placements found, 0 if the piece doesn't fit where it is
+	 */
+	public int search(BitBoard board, int pieceType, int rotation, int pivotX, int pivotY) {
+		this.board = board;
+		this.pieceType = pieceType;
+		this.placementCount = 0;
+		
+		for(int i = 0; i < this.visited.length; i++) {
+			this.visited[i] = 0;
+		}
+		
+		if(!board.fits(pieceType, rotation, pivotX, pivotY)) {
+			return 0;
+		}
+		
+		int head = 0;
+		int tail = 0;
+		
+		int start = getState(rotation, pivotX, pivotY);
+		this.visited[start >> 5] |= 1 << (start & 31);
+		this.parent[start] = NO_STATE;
+		this.distance[start] = 0;
+		this.queue[tail++] = start;
+		
+		while(head < tail) {
+			int state = this.queue[head++];
+			int x = getStateX(state);
+			int y = getStateY(state);
+			int r = getStateRotation(state);
+			
+			tail = this.visit(state, PieceShapes.rotateLeft(pieceType, r), x, y, TetrisConstants.ACTION_ROTATE, tail);
+			tail = this.visit(state, r, x - 1, y, TetrisConstants.ACTION_LEFT, tail);
+			tail = this.visit(state, r, x + 1, y, TetrisConstants.ACTION_RIGHT, tail);
+			tail = this.visit(state, r, x, y + 1, TetrisConstants.ACTION_DOWN, tail);
+		}
+		
+		this.findPlacements(tail);
+		
+		return this.placementCount;
+	}
+	
+	/**
+	 * Visit a neighbor of a state, queueing it if it hasn't been reached yet.
+	 * 
+	 * @param from the state moved from
+	 * @param rotation the rotation of the neighbor
+	 * @param pivotX the pivot x of the neighbor
+	 * @param pivotY the pivot y of the neighbor
+	 * @param action the action that moves to the neighbor
+	 * @param tail the end of the queue
+	 * @return the new end of the queue
+	 */
+	private int visit(int from, int rotation, int pivotX, int pivotY, int action, int tail) {
+		if(!this.board.fits(this.pieceType, rotation, pivotX, pivotY)) {
+			return tail;
+		}
+		
+		int state = getState(rotation, pivotX, pivotY);
+		if(this.isVisited(state)) {
+			return tail;
+		}
+		
+		this.visited[state >> 5] |= 1 << (state & 31);
+		this.parent[state] = from;
+		this.parentAction[state] = (byte)action;
+		this.distance[state] = (short)(this.distance[from] + 1);
+		this.queue[tail] = state;
+		
+		return tail + 1;
+	}
+	
+	/**
+	 * Pick out the resting states, and for each the reachable state above it that locks it in the fewest inputs.
+	 * 
+	 * @param reachedCount the number of states reached
+	 */
+	private void findPlacements(int reachedCount) {
+		for(int i = 0; i < reachedCount; i++) {
+			int state = this.queue[i];
+			int x = getStateX(state);
+			int y = getStateY(state);
+			int r = getStateRotation(state);
+			
+			if(this.board.fits(this.pieceType, r, x, y + 1)) {
+				continue;
+			}
+			
+			// down at the resting state locks it, or a drop from anywhere above it that falls here
+			int from = state;
+			for(int aboveY = y - 1; aboveY >= 0 && this.board.fits(this.pieceType, r, x, aboveY); aboveY--) {
+				int above = getState(r, x, aboveY);
+				if(this.isVisited(above) && this.distance[above] < this.distance[from]) {
+					from = above;
+				}
+			}
+			
+			this.placementState[this.placementCount] = state;
+			this.placementFrom[this.placementCount] = from;
+			this.placementCount++;
+		}
+	}
+	
+	////////////////////
+	
+	/**
+	 * @return the number of placements found by the last search
+	 */
+	public int getPlacementCount() {
+		return this.placementCount;
+	}
+	
+	/**
+	 * @param index the placement index
+	 * @return the rotation of the placement
+	 */
+	public int getRotation(int index) {
+		return getStateRotation(this.placementState[index]);
+	}
+	
+	/**
+	 * @param index the placement index
+	 * @return the pivot x of the placement
+	 */
+	public int getX(int index) {
+		return getStateX(this.placementState[index]);
+	}
+	
+	/**
+	 * @param index the placement index
+	 * @return the pivot y of the placement
+	 */
+	public int getY(int index) {
+		return getStateY(this.placementState[index]);
+	}
+	
+	/**
+	 * @param index the placement index
+	 * @return the number of inputs in the shortest path to lock the piece at the placement
+	 */
+	public int getPathLength(int index) {
+		return this.distance[this.placementFrom[index]] + 1;
+	}
+	
+	/**
+	 * Find a placement by its state.
+	 * 
+	 * @param rotation the rotation
+	 * @param pivotX the pivot x
+	 * @param pivotY the pivot y
+	 * @return the placement index, or -1 if it wasn't reached
+	 */
+	public int findPlacement(int rotation, int pivotX, int pivotY) {
+		int state = getState(rotation, pivotX, pivotY);
+		for(int i = 0; i < this.placementCount; i++) {
+			if(this.placementState[i] == state) {
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Get the shortest input sequence that locks the piece at a placement, ending with the locking input.
+	 * 
+	 * @param index the placement index
+	 * @param actions filled with the actions in order, must hold at least getPathLength
+	 * @return the number of actions
+	 */
+	public int getPath(int index, byte[] actions) {
+		int from = this.placementFrom[index];
+		int length = this.distance[from] + 1;
+		
+		// lock with down if already resting there, otherwise drop to it
+		actions[length - 1] = (byte)(from == this.placementState[index] ? TetrisConstants.ACTION_DOWN : TetrisConstants.ACTION_DROP);
+		
+		// walk back up the parents
+		for(int i = length - 2, state = from; i >= 0; i--, state = this.parent[state]) {
+			actions[i] = this.parentAction[state];
+		}
+		
+		return length;
+	}
+	
+	/**
+	 * @param index the placement index
+	 * @return the first input of the shortest path to the placement
+	 */
+	public int getFirstAction(int index) {
+		int from = this.placementFrom[index];
+		if(0 == this.distance[from]) {
+			return from == this.placementState[index] ? TetrisConstants.ACTION_DOWN : TetrisConstants.ACTION_DROP;
+		}
+		
+		int state = from;
+		while(this.parent[this.parent[state]] != NO_STATE) {
+			state = this.parent[state];
+		}
+		
+		return this.parentAction[state];
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.ai;
+
+/**
+ * Fixed size cache of search results, keyed by board and pieces, so positions that come up again
+ * (the start of every game, or the same board reached by different orders in a deep search) aren't searched again.
+ * 
+ * One entry per slot, in parallel arrays.  The slots are split into stripes each with its own lock,
+ * so threads searching in parallel only contend when they hit the same stripe.
+ * When two keys want the same slot, the new one replaces the old if the old is from an earlier generation
+ * (see newGeneration) or the new one was searched at least as deep.
+ * 
+ * Results depend on the evaluator's weights, clear the table whenever they change.
+ */
+public class TranspositionTable {
+	
+	private long[] keys;		// the full key of each slot's entry
+	private int[] moves;		// each entry's placement: rotation, x, y and lines cleared in 4, 8, 8 and 4 bits
+	private int[] scores;		// each entry's score
+	private byte[] depths;		// each entry's search depth, 0 if the slot is empty
+	private byte[] ages;		// the generation each entry was stored in
+	
+	private int slotMask;		// slot count minus one
+	private int stripeMask;		// stripe count minus one
+	private Object[] locks;		// one lock per stripe
+	private int[] probes;		// lookups per stripe, kept under the stripe's lock
+	private int[] hits;			// lookups that found an entry per stripe
+	
+	private int generation;		// the current generation, entries from earlier ones are replaced first
+	
+	/**
+	 * Make a new empty table.
+	 * 
+	 * @param slotBits log2 of the number of slots
+	 * @param stripeBits log2 of the number of lock stripes, no more than slotBits
+	 */
+	public TranspositionTable(int slotBits, int stripeBits) {
+		int slotCount = 1 << slotBits;
+		int stripeCount = 1 << Math.min(slotBits, stripeBits);
+		
+		this.keys = new long[slotCount];
+		this.moves = new int[slotCount];
+		this.scores = new int[slotCount];
+		this.depths = new byte[slotCount];
+		this.ages = new byte[slotCount];
+		this.slotMask = slotCount - 1;
+		
+		this.locks = new Object[stripeCount];
+		for(int i = 0; i < stripeCount; i++) {
+			this.locks[i] = new Object();
+		}
+		
+		this.probes = new int[stripeCount];
+		this.hits = new int[stripeCount];
+		this.stripeMask = stripeCount - 1;
+	}
+	
+	/**
+	 * Make the key for a position.
+	 * 
+	 * @param boardHash the hash of the board, from BitBoard.hash
+	 * @param pieceType the type of the piece being placed
+	 * @param nextPieceType the type of the next piece if the search looked ahead to it, otherwise 0
+	 * @return the key
+	 */
+	public static long getKey(long boardHash, int pieceType, int nextPieceType) {
+		long key = boardHash ^ (((pieceType << 4) | nextPieceType) * 0x9e3779b97f4a7c15L);
+		return key ^ (key >>> 31);
+	}
+	
+	/**
+	 * @param key the key
+	 * @return the slot for the key
+	 */
+	private int getSlot(long key) {
+		return (int)(key ^ (key >>> 32)) & this.slotMask;
+	}
+	
+	/**
+	 * Look up a position.
+	 * 
+	 * @param key the position's key, from getKey
+	 * @param pieceType the type of the piece, to fill in the placement
+	 * @param depth the depth the result needs to have been searched to
+	 * @param best set to the stored placement and score if found, untouched otherwise
+	 * @return true if found
+	 */
+	public boolean probe(long key, int pieceType, int depth, Placement best) {
+		int slot = this.getSlot(key);
+		int stripe = slot & this.stripeMask;
+		
+		synchronized(this.locks[stripe]) {
+			this.probes[stripe]++;
+			
+			if(this.keys[slot] != key || this.depths[slot] < depth) {
+				return false;
+			}
+			
+			this.hits[stripe]++;
+			
+			int move = this.moves[slot];
+			best.set(pieceType, move & 0x0f, (move >>> 4) & 0xff, (move >>> 12) & 0xff, this.scores[slot], (move >>> 20) & 0x0f);
+			return true;
+		}
+	}
+	
+	/**
+	 * Store the result of a search, if the policy lets it replace what's in its slot.
+	 * 
+	 * @param key the position's key, from getKey
+	 * @param depth the depth searched to, at least 1
+	 * @param best the best placement found
+	 */
+	public void store(long key, int depth, Placement best) {
+		int slot = this.getSlot(key);
+		int age = this.generation;
+		
+		synchronized(this.locks[slot & this.stripeMask]) {
+			if(0 != this.depths[slot] && this.keys[slot] != key && this.ages[slot] == (byte)age && this.depths[slot] > depth) {
+				// a deeper result from this generation, keep it
+				return;
+			}
+			
+			this.keys[slot] = key;
+			this.moves[slot] = best.getRotation() | (best.getX() << 4) | (best.getY() << 12) | (best.getLinesCleared() << 20);
+			this.scores[slot] = best.getScore();
+			this.depths[slot] = (byte)depth;
+			this.ages[slot] = (byte)age;
+		}
+	}
+	
+	/**
+	 * Start a new generation, entries stored before now are replaced before newer ones.
+	 * Call it between games, or between moves of a long search.
+	 */
+	public void newGeneration() {
+		this.generation++;
+	}
+	
+	/**
+	 * Empty the table, and reset the counts.
+	 */
+	public void clear() {
+		for(int stripe = 0; stripe <= this.stripeMask; stripe++) {
+			synchronized(this.locks[stripe]) {
+				for(int slot = stripe; slot <= this.slotMask; slot += this.stripeMask + 1) {
+					this.depths[slot] = 0;
+					this.keys[slot] = 0;
+				}
+				
+				this.probes[stripe] = 0;
+				this.hits[stripe] = 0;
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of lookups since the table was made or cleared
+	 */
+	public int getProbeCount() {
+		return this.sumStripes(this.probes);
+	}
+	
+	/**
+	 * @return the number of lookups that found an entry
+	 */
+	public int getHitCount() {
+		return this.sumStripes(this.hits);
+	}
+	
+	/**
+	 * @param counts per stripe counts
+	 * @return the total over the stripes
+	 */
+	private int sumStripes(int[] counts) {
+		int total = 0;
+		for(int stripe = 0; stripe <= this.stripeMask; stripe++) {
+			synchronized(this.locks[stripe]) {
+				total += counts[stripe];
+			}
+		}
+		
+		return total;
+	}
+	
+	/**
+	 * @return the number of slots
+	 */
+	public int getSize() {
+		return this.slotMask + 1;
+	}
+}
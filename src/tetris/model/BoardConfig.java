@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.model;
+
+import tetris.TetrisConstants;
+
+/**
+ * The geometry of a board: its size, the rows hidden off the top, and where new pieces start.
+ * 
+ * A value fixed when it's made, shared by the board, the engine, the snapshot and the canvas.
+ * STANDARD is the usual 10 by 20 board the game has always been played on, and the only board the bot knows.
+ * Other sizes are for stress testing, up to MAX_WIDTH columns so a row fits the bits of a long,
+ * and a few hundred rows.
+ */
+public class BoardConfig {
+	
+	public static final int MIN_WIDTH	= TetrisConstants.FOUR_BLOCKS;				// narrowest board, wide enough to spawn an I piece
+	public static final int MAX_WIDTH	= 64;										// widest board, a row fits in a long
+	public static final int MIN_HEIGHT	= TetrisConstants.TOP_VISIBLE_ROW + 2;		// shortest board, room to spawn with a visible row under
+	public static final int MAX_HEIGHT	= 1024;										// tallest board
+	
+	public static final int NARROW_WIDTH = 32;	// widest board whose rows fit in an int, wider boards use longs
+	
+	public static final BoardConfig STANDARD = new BoardConfig(TetrisConstants.WIDTH, TetrisConstants.HEIGHT);	// the usual board
+	
+	private int width;			// number of grid blocks horizontally
+	private int height;			// number of grid blocks vertically, including the rows off the top
+	private int topVisibleRow;	// index of the first visible row
+	private int startX;			// x position of new pieces
+	private int startY;			// y position of new pieces
+	
+	/**
+	 * Make a board config with the usual hidden rows, new pieces starting in the middle of the top visible row.
+	 * 
+	 * @param width number of grid blocks horizontally, MIN_WIDTH to MAX_WIDTH
+	 * @param height number of grid blocks vertically including the hidden rows, MIN_HEIGHT to MAX_HEIGHT
+	 */
+	public BoardConfig(int width, int height) {
+		if(width < MIN_WIDTH || width > MAX_WIDTH || height < MIN_HEIGHT || height > MAX_HEIGHT) {
+			throw new IllegalArgumentException("board size " + width + "x" + height);
+		}
+		
+		this.width = width;
+		this.height = height;
+		this.topVisibleRow = TetrisConstants.TOP_VISIBLE_ROW;
+		
+		// on the standard board this is START_X, the pivot just left of center
+		this.startX = (width - 1) / 2;
+		this.startY = this.topVisibleRow;
+	}
+	
+	/**
+	 * @return number of grid blocks horizontally
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+	
+	/**
+	 * @return number of grid blocks vertically, including the rows off the top
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+	
+	/**
+	 * @return index of the first visible row
+	 */
+	public int getTopVisibleRow() {
+		return this.topVisibleRow;
+	}
+	
+	/**
+	 * @return number of visible rows
+	 */
+	public int getViewableRows() {
+		return this.height - this.topVisibleRow;
+	}
+	
+	/**
+	 * @return x position of new pieces
+	 */
+	public int getStartX() {
+		return this.startX;
+	}
+	
+	/**
+	 * @return y position of new pieces
+	 */
+	public int getStartY() {
+		return this.startY;
+	}
+	
+	/**
+	 * @return true if rows are too wide for an int and are kept in longs
+	 */
+	public boolean isWide() {
+		return this.width > NARROW_WIDTH;
+	}
+	
+	/**
+	 * @return true if this is the standard board
+	 */
+	public boolean isStandard() {
+		return TetrisConstants.WIDTH == this.width && TetrisConstants.HEIGHT == this.height;
+	}
+}
@@ -0,0 +1,677 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.model;
+
+import tetris.GameEventListener;
+import tetris.TetrisConstants;
+import tetris.perf.PerfStats;
+import tetris.perf.Tracer;
+
+/**
+ * The rules of the game without any of the app around it: the board, the active and next pieces,
+ * moving and locking pieces, clearing rows, scoring and levels.
+ * 
+ * The midlet drives one of these from its key presses and drop thread.  With no display or threads of its own
+ * it can also be driven headless, as fast as the caller likes, by bots and analysis tools.
+ * Everything is allocated up front and newGame reuses it, so a caller can play game after game without garbage.
+ * 
+ * Not synchronized, the caller is expected to hold whatever lock guards the game.
+ */
+public class GameEngine {
+	
+	private BoardConfig config;				// the size of the board
+	private TetrisBoard board;				// holds the game state
+	private TetrisPiece activePiece;		// holds the state of the active piece
+	private PieceRandom rand;				// generates pseudo random numbers to choose the next piece
+	
+	private int score;						// the current game score
+	private int level;						// the current level
+	private int startLevel;					// the level the current game was started at
+	private int lineCount;					// the current number of lines cleared
+	private int[] nextPieceTypes = new int[TetrisConstants.PREVIEW_PIECES];	// the upcoming pieces, in order
+	private int tickSpeed;					// the speed in milliseconds between drops
+	private int gravity;					// rows the piece falls each tick, fixed point with GRAVITY_SHIFT fraction bits
+	private int gravityFraction;			// the part of a row gravity has pulled the piece that it hasn't fallen yet
+	private int pieceCount;					// the number of pieces added in the current game
+	private boolean gameOver;				// whether the last new piece didn't fit
+	
+	private int[] clearedRows = new int[TetrisConstants.FOUR_BLOCKS];	// the rows the last clear removed, bottom up, as they were before
+	private int clearedRowCount;			// the number of rows the last clear removed
+	private int clearSequence;				// counts clears, so a change shows there's been a new one
+	
+	private GameEventListener eventListener;	// receives engine events, null if nobody is listening
+	private int clearEventThreshold;		// minimum row clear duration (ms) to send a lines cleared event
+	private PerfStats perfStats;			// row clear timing goes in here, if set
+	private Tracer tracer;					// row clears are traced with this, if set
+	
+	/**
+	 * Make a new engine on the standard board, with no game started.
+	 */
+	public GameEngine() {
+		this(BoardConfig.STANDARD);
+	}
+	
+	/**
+	 * Make a new engine, with no game started.
+	 * 
+	 * @param config the size of the board
+	 */
+	public GameEngine(BoardConfig config) {
+		this.config = config;
+		this.board = new TetrisBoard(config);
+		this.activePiece = new TetrisPiece();
+		this.rand = new PieceRandom();
+		this.clearNextPieces();
+	}
+	
+	/**
+	 * Start a new game.  The pieces follow on from the random generator's current state,
+	 * seed it first with getRandom().setSeed for a repeatable game.
+	 * 
+	 * @param level the initial level at which to start the game
+	 */
+	public void newGame(int level) {
+		this.score = 0;
+		this.lineCount = 0;
+		this.pieceCount = 0;
+		this.level = level;
+		this.startLevel = level;
+		this.gameOver = false;
+		for(int i = 0; i < this.nextPieceTypes.length; i++) {
+			this.nextPieceTypes[i] = this.getRandomPieceType();
+		}
+		this.tickSpeed = GravityTable.getTickSpeed(level);
+		this.gravity = GravityTable.getGravity(level);
+		this.gravityFraction = 0;
+		
+		this.board.clearBoard();
+		
+		if(null != this.eventListener) {
+			this.eventListener.gameStarted(level);
+		}
+		
+		this.tryAddNewPiece();
+	}
+	
+	/**
+	 * Finish the game, there's no next piece after this.
+	 */
+	public void endGame() {
+		this.clearNextPieces();
+	}
+	
+	/**
+	 * No upcoming pieces.
+	 */
+	private void clearNextPieces() {
+		for(int i = 0; i < this.nextPieceTypes.length; i++) {
+			this.nextPieceTypes[i] = TetrisConstants.UNINITIALIZED;
+		}
+	}
+	
+	/**
+	 * Put the engine back in the middle of a saved game.
+	 * The board and active piece should already have been restored, through getBoard and getActivePiece.
+	 * 
+	 * @param nextPieceTypes the upcoming pieces, in order, PREVIEW_PIECES of them
+	 * @param score the score
+	 * @param level the level
+	 * @param lineCount the line count
+	 * @param startLevel the level the game was started at
+	 * @param randomState the random generator's state
+	 */
+	public void restore(int[] nextPieceTypes, int score, int level, int lineCount, int startLevel, long randomState) {
+		System.arraycopy(nextPieceTypes, 0, this.nextPieceTypes, 0, this.nextPieceTypes.length);
+		this.score = score;
+		this.level = level;
+		this.lineCount = lineCount;
+		this.startLevel = startLevel;
+		this.tickSpeed = GravityTable.getTickSpeed(level);
+		this.gravity = GravityTable.getGravity(level);
+		this.gravityFraction = 0;
+		this.rand.setState(randomState);
+		this.gameOver = false;
+	}
+	
+	/**
+	 * Set the initial tick speed according to the given level.
+	 * 
+	 * @param level the initial level
+	 * @return the initial tick speed
+	 */
+	public static int getInitialTickSpeed(int level) {
+		return GravityTable.getTickSpeed(level);
+	}
+	
+	/**
+	 * Perform a player action on the active piece.
+	 * 
+	 * @param action the action, one of the action constants
+	 * @return true if the action moved the piece, false if it was blocked
+	 */
+	public boolean performAction(int action) {
+		switch(action) {
+			case TetrisConstants.ACTION_LEFT:
+				return this.tryMoveLeft();
+			case TetrisConstants.ACTION_RIGHT:
+				return this.tryMoveRight();
+			case TetrisConstants.ACTION_DOWN:
+				return this.tryMoveDown();
+			case TetrisConstants.ACTION_TICK:
+				return this.tick();
+			case TetrisConstants.ACTION_ROTATE:
+				return this.tryRotateLeft();
+			case TetrisConstants.ACTION_DROP:
+				this.quickDrop();
+				return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Quick drop the active piece as far as it will go
+	 * 
+	 * @return the number of rows dropped
+	 */
+	public int quickDrop() {
+		int dropScore = 0;	// 1 point for each line dropped
+		while(this.tryMoveDown()) {
+			// scored as it drops, so the score is up to date for events sent when the piece locks
+			this.score++;
+			dropScore++;
+		}
+		
+		return dropScore;
+	}
+	
+	/**
+	 * Set the active piece as the first of the upcoming pieces, and choose another to go at the end
+	 * 
+	 * @return the active piece, updated as a new piece
+	 */
+	private TetrisPiece newPiece() {
+		int[] nextPieceTypes = this.nextPieceTypes;
+		int pieceType = nextPieceTypes[0];
+		
+		int last = nextPieceTypes.length - 1;
+		for(int i = 0; i < last; i++) {
+			nextPieceTypes[i] = nextPieceTypes[i + 1];
+		}
+		nextPieceTypes[last] = this.getRandomPieceType();
+		
+		TetrisPiece activePiece = this.getActivePiece();
+		activePiece.setAsNewPiece(pieceType, this.config.getStartX(), this.config.getStartY());	
+		
+		return activePiece;
+	}
+	
+	/**
+	 * @return a pseudo random piece type
+	 */
+	private int getRandomPieceType() {
+		return this.rand.nextPieceType();
+	}
+	
+	/**
+	 * Clear the completed rows from the board.
+	 * Only the piece's rows can have been completed, so only they're checked,
+	 * then the board removes them and drops the rows above.
+	 * 
+	 * @param piece the piece in its final position
+	 * @return number of rows cleared
+	 */
+	private int clearCompletedRows(TetrisPiece piece) {
+		// only time it if somebody wants to know
+		boolean timed = null != this.perfStats || null != this.eventListener;
+		long startTime = 0;
+		if(timed) {
+			if(null != this.tracer) {
+				this.tracer.begin(Tracer.CLEAR);
+			}
+			
+			startTime = System.currentTimeMillis();
+		}
+		
+		TetrisBoard board = this.getBoard();
+		
+		// check each row that the piece includes, collect the completed ones bottom up
+		int[] clearedRows = this.clearedRows;
+		int numClearedRows = 0;
+		for(int i = 0; i < TetrisConstants.FOUR_BLOCKS; i++) {
+			int rowY = piece.getBlockY(i);
+			
+			if(board.checkRowCompleted(rowY) && !this.isRowCleared(rowY, numClearedRows)) {
+				// insert it in order, below the rows above it
+				int j = numClearedRows;
+				while(j > 0 && clearedRows[j - 1] < rowY) {
+					clearedRows[j] = clearedRows[j - 1];
+					j--;
+				}
+				clearedRows[j] = rowY;
+				numClearedRows++;
+			}
+		}
+		
+		if(numClearedRows > 0) {
+			board.removeRows(clearedRows, numClearedRows);
+			
+			// note the rows for anything showing the clear, the board has already moved on
+			this.clearedRowCount = numClearedRows;
+			this.clearSequence++;
+		}
+		
+		if(timed) {
+			long duration = System.currentTimeMillis() - startTime;
+			if(null != this.perfStats) {
+				this.perfStats.record(PerfStats.CLEAR_TIME, duration);
+			}
+			
+			if(null != this.tracer) {
+				this.tracer.end(Tracer.CLEAR);
+			}
+			
+			if(null != this.eventListener && numClearedRows > 0 && duration >= this.clearEventThreshold) {
+				this.eventListener.linesCleared(numClearedRows, duration);
+			}
+		}
+		
+		return numClearedRows;
+	}
+	
+	/**
+	 * Check if a row is already among the rows being cleared, a piece has more than one block in most rows.
+	 * 
+	 * @param row the index of the row, lower indices at the top of the board
+	 * @param numClearedRows the number of rows collected so far
+	 * @return true if the row has already been collected, false otherwise
+	 */
+	private boolean isRowCleared(int row, int numClearedRows) {
+		for(int i = 0; i < numClearedRows; i++) {
+			if(this.clearedRows[i] == row) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Update the game state to reflect the completed rows (adjust score, etc).
+	 * @param completedRows the number of completed rows
+	 */
+	private void updateRowState(int completedRows) {
+		this.lineCount += completedRows;	// increment the line count
+		this.score += getRowScore(completedRows, this.level);
+		
+		// integer division gets the level
+		int level = this.lineCount / TetrisConstants.LEVEL_UNIT;
+		if(level > this.level) {
+			int oldLevel = this.level;
+			this.level = level;
+		
+			// level increase, adjust tick speed and gravity, straight to the new level's however many levels were passed
+			this.tickSpeed = GravityTable.getTickSpeed(level);
+			this.gravity = GravityTable.getGravity(level);
+			
+			if(null != this.eventListener) {
+				this.eventListener.levelUp(oldLevel, this.level, this.tickSpeed, this.score);
+			}
+		}
+	}
+	
+	/**
+	 * The score for clearing rows at a level.
+	 * 
+	 * @param completedRows the number of rows cleared at once
+	 * @param level the level they were cleared at
+	 * @return the score for the rows
+	 */
+	public static int getRowScore(int completedRows, int level) {
+		// formula for scores is (ROW_SCORE * level) + ROW_SCORE
+		if(1 == completedRows) {
+			return (level * TetrisConstants.ONE_ROW_SCORE) + TetrisConstants.ONE_ROW_SCORE;
+		} else if(2 == completedRows) {
+			return (level * TetrisConstants.TWO_ROW_SCORE) + TetrisConstants.TWO_ROW_SCORE;
+		} else if(3 == completedRows) {
+			return (level * TetrisConstants.THREE_ROW_SCORE) + TetrisConstants.THREE_ROW_SCORE;
+		} else if(4 == completedRows) {
+			return (level * TetrisConstants.FOUR_ROW_SCORE) + TetrisConstants.FOUR_ROW_SCORE;
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * Try to add a new piece.  Check that there is room on the board.
+	 * If we can't add the piece, the game is over.
+	 * 
+	 * @return true if the piece was added, false if couldn't add and the game is over.
+	 */
+	private boolean tryAddNewPiece() {
+		TetrisPiece newPiece = this.newPiece();		// reset the active piece
+		TetrisBoard board = this.getBoard();
+		if(board.canAddNewPiece(newPiece)) {
+			board.addNewPiece(newPiece);
+			this.pieceCount++;
+			
+			if(null != this.eventListener) {
+				this.eventListener.pieceSpawned(newPiece.getPieceType(), this.nextPieceTypes[0]);
+			}
+		
+			// added successfully
+			return true;
+		}
+		
+		// no room to add, game over
+		this.gameOver = true;
+		
+		if(null != this.eventListener) {
+			this.eventListener.gameOver(this.score, this.lineCount, this.level, this.getStackHeight());
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Try to move the active piece down.
+	 * If it can't move down, it's locked into the board, rows are cleared, and a new piece added.
+	 * 
+	 * @return true if the piece moved down, false if it was locked
+	 */
+	public boolean tryMoveDown() {
+		TetrisPiece activePiece = this.getActivePiece();
+		TetrisBoard board = this.getBoard();
+		
+		if(board.canMoveDown(activePiece)) {
+			board.moveDown(activePiece);
+			
+			// piece moved down
+			return true;
+		}
+		
+		// couldn't move down
+		board.lockPiece(activePiece);
+		
+		if(null != this.eventListener) {
+			this.eventListener.pieceLocked(activePiece.getPieceType(),
+										   activePiece.getBlockX(TetrisConstants.PIVOT_INDEX),
+										   activePiece.getBlockY(TetrisConstants.PIVOT_INDEX));
+		}
+		
+		int numClearedRows = this.clearCompletedRows(activePiece);
+		this.updateRowState(numClearedRows);
+		this.tryAddNewPiece();
+		
+		return false;
+	}
+	
+	/**
+	 * Apply a tick of gravity.  The piece falls as many whole rows as gravity has pulled it, as far as it can,
+	 * the rest of a row carries over to the next tick.  If it can't fall at all it's locked, same as tryMoveDown.
+	 * 
+	 * @return true if the piece moved down, false if it was locked or gravity hasn't pulled it a whole row yet
+	 */
+	public boolean tick() {
+		int pull = this.gravityFraction + this.gravity;
+		int rows = pull >> TetrisConstants.GRAVITY_SHIFT;
+		this.gravityFraction = pull & (GravityTable.ONE_ROW - 1);
+		
+		if(this.gravity >= GravityTable.INSTANT) {
+			// instant is the height of the standard board, on a taller one it still means all the way down
+			rows = Math.max(rows, this.config.getHeight());
+		}
+		
+		if(rows <= 1) {
+			// a row a tick or less, the usual case
+			return rows == 1 && this.tryMoveDown();
+		}
+		
+		int dropRows = this.board.getDropDistance(this.activePiece, rows);
+		if(0 == dropRows) {
+			return this.tryMoveDown();
+		}
+		
+		// fall the rows at once, it locks on a later tick once it can't fall
+		this.board.translatePiece(this.activePiece, 0, dropRows);
+		return true;
+	}
+	
+	/**
+	 * Try to move the active piece left.
+	 * 
+	 * @return true if the piece moved, false otherwise
+	 */
+	public boolean tryMoveLeft() {
+		if(this.board.canMoveLeft(this.activePiece)) {
+			this.board.moveLeft(this.activePiece);
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Try to move the active piece right.
+	 * 
+	 * @return true if the piece moved, false otherwise
+	 */
+	public boolean tryMoveRight() {
+		if(this.board.canMoveRight(this.activePiece)) {
+			this.board.moveRight(this.activePiece);
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Try to rotate the active piece left.
+	 * 
+	 * @return true if the piece rotated, false otherwise
+	 */
+	public boolean tryRotateLeft() {
+		if(this.board.canRotateLeft(this.activePiece)) {
+			this.board.rotateLeft(this.activePiece);
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Try to rotate the active piece right.
+	 * 
+	 * @return true if the piece rotated, false otherwise
+	 */
+	public boolean tryRotateRight() {
+		if(this.board.canRotateRight(this.activePiece)) {
+			this.board.rotateRight(this.activePiece);
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * @return the height of the stack of locked blocks, in rows from the bottom of the board to its highest block
+	 */
+	public int getStackHeight() {
+		return this.board.getStackHeight();
+	}
+	
+	////////////////////
+	
+	/**
+	 * Set the listener to receive engine events.
+	 * 
+	 * @param eventListener the listener, or null to stop sending events
+	 */
+	public void setEventListener(GameEventListener eventListener) {
+		this.eventListener = eventListener;
+	}
+	
+	/**
+	 * @param clearEventThreshold minimum row clear duration (ms) to send a lines cleared event
+	 */
+	public void setClearEventThreshold(int clearEventThreshold) {
+		this.clearEventThreshold = clearEventThreshold;
+	}
+	
+	/**
+	 * Time and trace row clears.  Headless callers usually leave these unset, and clears aren't timed at all.
+	 * 
+	 * @param perfStats row clear times are recorded in this, or null
+	 * @param tracer row clears are traced with this, or null
+	 */
+	public void setInstrumentation(PerfStats perfStats, Tracer tracer) {
+		this.perfStats = perfStats;
+		this.tracer = tracer;
+	}
+	
+	/**
+	 * @return the size of the board
+	 */
+	public BoardConfig getBoardConfig() {
+		return this.config;
+	}
+	
+	/**
+	 * @return the board state object
+	 */
+	public TetrisBoard getBoard() {
+		return this.board;
+	}
+	
+	/**
+	 * @return the active piece state object
+	 */
+	public TetrisPiece getActivePiece() {
+		return this.activePiece;
+	}
+	
+	/**
+	 * @return the generator choosing the pieces, seed it before newGame for a repeatable game
+	 */
+	public PieceRandom getRandom() {
+		return this.rand;
+	}
+	
+	/**
+	 * @return true if the last new piece didn't fit, the game is over
+	 */
+	public boolean isGameOver() {
+		return this.gameOver;
+	}
+	
+	/**
+	 * @return the current game score
+	 */
+	public int getScore() {
+		return this.score;
+	}
+	
+	/**
+	 * @return the number of pieces added in the current game, changes whenever a new piece appears
+	 */
+	public int getPieceCount() {
+		return this.pieceCount;
+	}
+	
+	/**
+	 * @return the current line count
+	 */
+	public int getLineCount() {
+		return this.lineCount;
+	}
+	
+	/**
+	 * @return the current level
+	 */
+	public int getLevel() {
+		return this.level;
+	}
+	
+	/**
+	 * @return the level the current game was started at
+	 */
+	public int getStartLevel() {
+		return this.startLevel;
+	}
+	
+	/**
+	 * @return the upcoming piece once the current piece is dropped
+	 */
+	public int getNextPieceType() {
+		return this.nextPieceTypes[0];
+	}
+	
+	/**
+	 * @param i which of the upcoming pieces, 0 for the next, up to PREVIEW_PIECES - 1
+	 * @return the upcoming piece
+	 */
+	public int getNextPieceType(int i) {
+		return this.nextPieceTypes[i];
+	}
+	
+	/**
+	 * @return the upcoming pieces, in order, PREVIEW_PIECES of them.  This is the live array, not a copy.
+	 */
+	public int[] getNextPieceTypes() {
+		return this.nextPieceTypes;
+	}
+	
+	/**
+	 * @return a count of the clears so far, it changes each time rows are cleared
+	 */
+	public int getClearSequence() {
+		return this.clearSequence;
+	}
+	
+	/**
+	 * @return the number of rows the last clear removed
+	 */
+	public int getClearedRowCount() {
+		return this.clearedRowCount;
+	}
+	
+	/**
+	 * @param i the index of the row, 0 to getClearedRowCount - 1, bottom up
+	 * @return the y of the row, where it was on the board before it was cleared
+	 */
+	public int getClearedRow(int i) {
+		return this.clearedRows[i];
+	}
+	
+	/**
+	 * @return the current time between ticks (milliseconds)
+	 */
+	public int getTickSpeed() {
+		return this.tickSpeed;
+	}
+	
+	/**
+	 * @return the rows the piece currently falls each tick, fixed point with GRAVITY_SHIFT fraction bits
+	 */
+	public int getGravity() {
+		return this.gravity;
+	}
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.model;
+
+import tetris.TetrisConstants;
+
+/**
+ * A compact, bit-packed snapshot of a game in progress, so a game can be saved when the app
+ * is suspended and restored if the app is killed.
+ * 
+ * Locked blocks are packed at 3 bits per cell (0 for empty, otherwise the piece type), the active piece
+ * isn't stored in the grid since it is saved separately and put back when restored.
+ * The encoding goes into a buffer allocated once, so taking a snapshot doesn't allocate.
+ * A snapshot is for a board of one size, its size depends on the board's.
+ * The tick speed isn't stored, it follows from the level and is worked out again when the game is restored.
+ * 
+ * Layout, in order, most significant bit first:
+ * 	8	version
+ * 	8	board width
+ * 	16	board height
+ * 	3	per cell, columns left to right, each column top to bottom
+ * 	3	active piece type
+ * 	x/y	x/y of each of the active piece's four blocks, as many bits as the board's width/height need
+ * 	1	active piece rotation toggle
+ * 	3	per upcoming piece, PREVIEW_PIECES of them
+ * 	32	score
+ * 	16	level
+ * 	16	lines
+ * 	8	start level
+ * 	32	play time (ms)
+ * 	48	random generator state, after drawing the upcoming pieces
+ */
+public class GameSnapshot {
+	
+	private static final int VERSION = 4;	// 4 drops the tick speed and widens the level, 3 stores the board size, 2 the whole preview queue, 1 only the next piece
+	
+	private static final int CELL_BITS	= 3;
+	private static final int TYPE_BITS	= 3;
+	
+	private BoardConfig config;		// the size of the board snapshots are of
+	private int xBits;				// bits in a block's x coordinate
+	private int yBits;				// bits in a block's y coordinate
+	private int size;				// bytes in an encoded snapshot
+	
+	private byte[] buffer;			// the encoded snapshot
+	private int bitPosition;		// the next bit to write/read
+	
+	// scratch for decoding the active piece and upcoming pieces, checked before anything is restored
+	private int[] blockCoords = new int[TetrisConstants.FOUR_BLOCKS * 2];
+	private int[] readNextPieceTypes = new int[TetrisConstants.PREVIEW_PIECES];
+	
+	// the decoded values, once read
+	private int[] nextPieceTypes = new int[TetrisConstants.PREVIEW_PIECES];
+	private int score;
+	private int level;
+	private int lineCount;
+	private int startLevel;
+	private long playTime;
+	private long randomState;
+	
+	/**
+	 * Make a snapshot of games on the standard board.
+	 */
+	public GameSnapshot() {
+		this(BoardConfig.STANDARD);
+	}
+	
+	/**
+	 * Make a snapshot of games on boards of the given size.
+	 * 
+	 * @param config the size of the board
+	 */
+	public GameSnapshot(BoardConfig config) {
+		this.config = config;
+		this.xBits = getBitCount(config.getWidth() - 1);
+		this.yBits = getBitCount(config.getHeight() - 1);
+		
+		int snapshotBits = 8 + 8 + 16
+			+ (config.getWidth() * config.getHeight() * CELL_BITS)
+			+ TYPE_BITS + (TetrisConstants.FOUR_BLOCKS * (this.xBits + this.yBits)) + 1
+			+ (TetrisConstants.PREVIEW_PIECES * TYPE_BITS) + 32 + 16 + 16 + 8 + 32 + 48;
+		
+		this.size = (snapshotBits + 7) / 8;
+		this.buffer = new byte[this.size];
+	}
+	
+	/**
+	 * @param value a value
+	 * @return the number of bits needed to hold values from 0 to the given value
+	 */
+	private static int getBitCount(int value) {
+		int bits = 1;
+		while((value >> bits) > 0) {
+			bits++;
+		}
+		
+		return bits;
+	}
+	
+	/**
+	 * @return the number of bytes in an encoded snapshot
+	 */
+	public int getSize() {
+		return this.size;
+	}
+	
+	/**
+	 * @return the encoded snapshot buffer, getSize long.  This is the live array, not a copy.
+	 */
+	public byte[] getBuffer() {
+		return this.buffer;
+	}
+	
+	/**
+	 * Encode a game into the snapshot buffer.
+	 * 
+	 * @param board the board, the active piece should be on it
+	 * @param activePiece the active piece
+	 * @param nextPieceTypes the upcoming pieces, PREVIEW_PIECES of them
+	 * @param score the current score
+	 * @param level the current level
+	 * @param lineCount the current number of lines cleared
+	 * @param startLevel the level the game was started at
+	 * @param playTime the time played so far (ms)
+	 * @param randomState the state of the piece generator
+	 */
+	public void encode(TetrisBoard board, TetrisPiece activePiece, int[] nextPieceTypes,
+					   int score, int level, int lineCount, int startLevel,
+					   long playTime, long randomState) {
+		this.bitPosition = 0;
+		this.writeBits(VERSION, 8);
+		this.writeBits(this.config.getWidth(), 8);
+		this.writeBits(this.config.getHeight(), 16);
+		
+		for(int x = 0; x < this.config.getWidth(); x++) {
+			for(int y = 0; y < this.config.getHeight(); y++) {
+				int blockType = board.getBlockType(x, y);
+				
+				// the empty and active blocks are both stored as 0, active blocks are put back with the piece
+				this.writeBits(blockType > 0 ? blockType : 0, CELL_BITS);
+			}
+		}
+		
+		this.writeBits(activePiece.getPieceType(), TYPE_BITS);
+		for(int i = 0; i < TetrisConstants.FOUR_BLOCKS; i++) {
+			this.writeBits(activePiece.getBlockX(i), this.xBits);
+			this.writeBits(activePiece.getBlockY(i), this.yBits);
+		}
+		this.writeBits(activePiece.getRotationToggle() ? 1 : 0, 1);
+		
+		for(int i = 0; i < TetrisConstants.PREVIEW_PIECES; i++) {
+			this.writeBits(nextPieceTypes[i], TYPE_BITS);
+		}
+		this.writeBits(score, 32);
+		this.writeBits(level, 16);
+		this.writeBits(lineCount, 16);
+		this.writeBits(startLevel, 8);
+		this.writeBits((int)playTime, 32);
+		this.writeBits((int)(randomState >>> 24), 24);
+		this.writeBits((int)randomState, 24);
+	}
+	
+	/**
+	 * Decode a snapshot out of the given bytes, restoring the board and active piece directly.
+	 * The other values are available from the getters afterwards.
+	 * The board and piece are only touched if the snapshot is valid.
+	 * 
+	 * @param bytes the encoded snapshot
+	 * @param length the number of valid bytes
+	 * @param board the board to restore into
+	 * @param activePiece the piece to restore the active piece into
+	 * @return true if the snapshot was valid and restored, false otherwise
+	 */
+	public boolean decode(byte[] bytes, int length, TetrisBoard board, TetrisPiece activePiece) {
+		if(this.size != length) {
+			return false;
+		}
+		
+		if(bytes != this.buffer) {
+			System.arraycopy(bytes, 0, this.buffer, 0, this.size);
+		}
+		
+		this.bitPosition = 0;
+		if(VERSION != this.readBits(8)) {
+			return false;
+		}
+		
+		// a snapshot of a different sized board can't be restored, even if it happens to be as many bytes
+		if(this.config.getWidth() != this.readBits(8) || this.config.getHeight() != this.readBits(16)) {
+			return false;
+		}
+		
+		// read everything past the cells first, nothing is restored until it's all been checked
+		int cellsPosition = this.bitPosition;
+		this.bitPosition += this.config.getWidth() * this.config.getHeight() * CELL_BITS;
+		
+		int pieceType = this.readBits(TYPE_BITS);
+		for(int i = 0; i < TetrisConstants.FOUR_BLOCKS; i++) {
+			this.blockCoords[2 * i] = this.readBits(this.xBits);
+			this.blockCoords[(2 * i) + 1] = this.readBits(this.yBits);
+		}
+		boolean rotationToggle = 1 == this.readBits(1);
+		
+		for(int i = 0; i < TetrisConstants.PREVIEW_PIECES; i++) {
+			this.readNextPieceTypes[i] = this.readBits(TYPE_BITS);
+		}
+		int score = this.readBits(32);
+		int level = this.readBits(16);
+		int lineCount = this.readBits(16);
+		int startLevel = this.readBits(8);
+		long playTime = this.readBits(32) & 0xffffffffL;
+		long randomState = ((long)this.readBits(24) << 24) | this.readBits(24);
+		
+		if(!this.isValid(cellsPosition, pieceType)) {
+			return false;
+		}
+		
+		this.bitPosition = cellsPosition;
+		for(int x = 0; x < this.config.getWidth(); x++) {
+			for(int y = 0; y < this.config.getHeight(); y++) {
+				int blockType = this.readBits(CELL_BITS);
+				board.setBlockType(x, y, 0 == blockType ? TetrisConstants.BLOCK_EMPTY : blockType);
+			}
+		}
+		
+		// reset as a new piece of the type to get its rotation type, then move the blocks where they were
+		activePiece.setAsNewPiece(pieceType, this.config.getStartX(), this.config.getStartY());
+		for(int i = 0; i < TetrisConstants.FOUR_BLOCKS; i++) {
+			activePiece.setBlockCoords(i, this.blockCoords[2 * i], this.blockCoords[(2 * i) + 1]);
+		}
+		activePiece.setRotationToggle(rotationToggle);
+		board.addNewPiece(activePiece);
+		
+		System.arraycopy(this.readNextPieceTypes, 0, this.nextPieceTypes, 0, TetrisConstants.PREVIEW_PIECES);
+		this.score = score;
+		this.level = level;
+		this.lineCount = lineCount;
+		this.startLevel = startLevel;
+		this.playTime = playTime;
+		this.randomState = randomState;
+		
+		return true;
+	}
+	
+	/**
+	 * Check the decoded values make a game that can be restored: the piece types are piece types,
+	 * and the active piece's blocks are on the board over empty cells.
+	 * The cells themselves need no check, every 3 bit value is empty or a piece type.
+	 * 
+	 * @param cellsPosition the bit position of the first cell
+	 * @param pieceType the decoded active piece type
+	 * @return true if valid
+	 */
+	private boolean isValid(int cellsPosition, int pieceType) {
+		if(!isPieceType(pieceType)) {
+			return false;
+		}
+		
+		for(int i = 0; i < TetrisConstants.PREVIEW_PIECES; i++) {
+			if(!isPieceType(this.readNextPieceTypes[i])) {
+				return false;
+			}
+		}
+		
+		int height = this.config.getHeight();
+		for(int i = 0; i < TetrisConstants.FOUR_BLOCKS; i++) {
+			int x = this.blockCoords[2 * i];
+			int y = this.blockCoords[(2 * i) + 1];
+			if(x >= this.config.getWidth() || y >= height) {
+				return false;
+			}
+			
+			// the active blocks were stored as empty
+			this.bitPosition = cellsPosition + (((x * height) + y) * CELL_BITS);
+			if(0 != this.readBits(CELL_BITS)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @param type a decoded type
+	 * @return true if it's one of the piece types
+	 */
+	private static boolean isPieceType(int type) {
+		return type >= 1 && type <= TetrisConstants.NUM_PIECE_TYPES;
+	}
+	
+	/**
+	 * Write the low bits of a value at the current bit position.
+	 * 
+	 * @param value the value to write
+	 * @param numBits the number of low bits of value to write, up to 32
+	 */
+	private void writeBits(int value, int numBits) {
+		for(int i = numBits - 1; i >= 0; i--) {
+			int byteIndex = this.bitPosition >> 3;
+			int bitMask = 0x80 >> (this.bitPosition & 7);
+			
+			if(0 != ((value >>> i) & 1)) {
+				this.buffer[byteIndex] |= bitMask;
+			} else {
+				this.buffer[byteIndex] &= ~bitMask;
+			}
+			
+			this.bitPosition++;
+		}
+	}
+	
+	/**
+	 * Read bits at the current bit position.
+	 * 
+	 * @param numBits the number of bits to read, up to 32
+	 * @return the bits read, in the low bits of the result
+	 */
+	private int readBits(int numBits) {
+		int value = 0;
+		
+		for(int i = 0; i < numBits; i++) {
+			int bit = (this.buffer[this.bitPosition >> 3] >> (7 - (this.bitPosition & 7))) & 1;
+			value = (value << 1) | bit;
+			this.bitPosition++;
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * @return the decoded upcoming piece types, PREVIEW_PIECES of them.  This is the live array, not a copy.
+	 */
+	public int[] getNextPieceTypes() {
+		return this.nextPieceTypes;
+	}
+	
+	/**
+	 * @return the decoded score
+	 */
+	public int getScore() {
+		return this.score;
+	}
+	
+	/**
+	 * @return the decoded level
+	 */
+	public int getLevel() {
+		return this.level;
+	}
+	
+	/**
+	 * @return the decoded number of lines cleared
+	 */
+	public int getLineCount() {
+		return this.lineCount;
+	}
+	
+	/**
+	 * @return the decoded start level
+	 */
+	public int getStartLevel() {
+		return this.startLevel;
+	}
+	
+	/**
+	 * @return the decoded play time (ms)
+	 */
+	public long getPlayTime() {
+		return this.playTime;
+	}
+	
+	/**
+	 * @return the decoded random generator state
+	 */
+	public long getRandomState() {
+		return this.randomState;
+	}
+}
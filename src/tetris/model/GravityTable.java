@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.model;
+
+import tetris.TetrisConstants;
+
+/**
+ * The speed of the game at each level, worked out once up front.
+ * 
+ * Each level ticks SPEED_INCREASE_NUMERATOR / SPEED_INCREASE_DENOMINATOR faster than the last, starting from BASE_SPEED,
+ * until it would tick faster than MIN_TICK_SPEED.  From there the tick speed stays at MIN_TICK_SPEED and gravity
+ * pulls the piece more than a row per tick instead, as many rows as it would have fallen at the faster speed.
+ * Once the speed would reach 0, a tick drops the piece all the way down.
+ * 
+ * Gravity is in rows per tick, fixed point with GRAVITY_SHIFT fraction bits, so between a row and two rows per tick
+ * the piece falls two rows on some ticks and one on the others.
+ */
+public class GravityTable {
+	
+	public static final int ONE_ROW	= 1 << TetrisConstants.GRAVITY_SHIFT;	// gravity of a row per tick
+	public static final int INSTANT	= TetrisConstants.HEIGHT << TetrisConstants.GRAVITY_SHIFT;	// gravity that drops a piece to the bottom in a tick
+	
+	private static int[] tickSpeeds = new int[TetrisConstants.GRAVITY_LEVELS];	// the tick speed (ms) at each level
+	private static int[] gravities = new int[TetrisConstants.GRAVITY_LEVELS];	// the gravity at each level, fixed point rows per tick
+	
+	static {
+		// the same integer steps the speed always took, so the levels that tick a row at a time are unchanged
+		int speed = TetrisConstants.BASE_SPEED;
+		for(int level = 0; level < TetrisConstants.GRAVITY_LEVELS; level++) {
+			if(speed >= TetrisConstants.MIN_TICK_SPEED) {
+				tickSpeeds[level] = speed;
+				gravities[level] = ONE_ROW;
+			} else {
+				tickSpeeds[level] = TetrisConstants.MIN_TICK_SPEED;
+				gravities[level] = speed > 0 ? Math.min(INSTANT, (TetrisConstants.MIN_TICK_SPEED << TetrisConstants.GRAVITY_SHIFT) / speed) : INSTANT;
+			}
+			
+			speed = (speed * TetrisConstants.SPEED_INCREASE_NUMERATOR) / TetrisConstants.SPEED_INCREASE_DENOMINATOR;
+		}
+	}
+	
+	/**
+	 * @param level the level
+	 * @return the time between ticks (ms) at the level
+	 */
+	public static int getTickSpeed(int level) {
+		return tickSpeeds[Math.min(level, TetrisConstants.GRAVITY_LEVELS - 1)];
+	}
+	
+	/**
+	 * @param level the level
+	 * @return the rows the piece falls each tick at the level, fixed point with GRAVITY_SHIFT fraction bits
+	 */
+	public static int getGravity(int level) {
+		return gravities[Math.min(level, TetrisConstants.GRAVITY_LEVELS - 1)];
+	}
+}
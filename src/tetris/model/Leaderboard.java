@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.model;
+
+import tetris.TetrisConstants;
+
+/**
+ * The top scores, kept sorted, highest first.
+ * 
+ * The whole leaderboard lives in a single fixed-layout byte array, which is also its record in rms,
+ * so it is read with one getRecord and written with one setRecord, without any enumerating.
+ * Inserting a score shifts the lower entries down in place.
+ * 
+ * Record layout (big endian):
+ * 	byte	version
+ * 	byte	number of entries
+ * 	then LEADERBOARD_SIZE entries of ENTRY_SIZE bytes each:
+ * 		int		score
+ * 		int		lines
+ * 		short	level reached
+ * 		short	starting level
+ * 		int		duration of the game (seconds)
+ * 		long	time the game ended (ms since the epoch)
+ */
+public class Leaderboard {
+	
+	public static final int ENTRY_SIZE	= 24;	// bytes per entry
+	public static final int HEADER_SIZE	= 2;	// bytes before the first entry
+	public static final int RECORD_SIZE	= HEADER_SIZE + (TetrisConstants.LEADERBOARD_SIZE * ENTRY_SIZE);
+	
+	private static final int VERSION = 2;			// layout version, in the first byte of the record
+	private static final int LEGACY_RECORD_SIZE = 4;	// the old record was a single int hi score
+	
+	// version 1 stored the levels as single bytes, so its entries were two bytes shorter
+	private static final int V1_VERSION		= 1;
+	private static final int V1_ENTRY_SIZE	= 22;
+	private static final int V1_RECORD_SIZE	= HEADER_SIZE + (TetrisConstants.LEADERBOARD_SIZE * V1_ENTRY_SIZE);
+	
+	// offsets of the fields within an entry
+	private static final int SCORE_OFFSET		= 0;
+	private static final int LINES_OFFSET		= 4;
+	private static final int LEVEL_OFFSET		= 8;
+	private static final int START_LEVEL_OFFSET	= 10;
+	private static final int DURATION_OFFSET	= 12;
+	private static final int TIMESTAMP_OFFSET	= 16;
+	
+	private byte[] record = new byte[RECORD_SIZE];	// the packed leaderboard
+	
+	/**
+	 * Make a new empty leaderboard.
+	 */
+	public Leaderboard() {
+		this.clear();
+	}
+	
+	/**
+	 * Remove all entries.
+	 */
+	public void clear() {
+		for(int i = 0; i < RECORD_SIZE; i++) {
+			this.record[i] = 0;
+		}
+		
+		this.record[0] = VERSION;
+	}
+	
+	/**
+	 * Load the leaderboard from record bytes read out of storage.
+	 * Also understands the old single int hi score record, which becomes the only entry,
+	 * and version 1 records, whose entries are carried over.
+	 * Anything unrecognized leaves the leaderboard empty.
+	 * 
+	 * @param bytes the record bytes
+	 * @param length the number of valid bytes
+	 */
+	public void load(byte[] bytes, int length) {
+		this.clear();
+		
+		if(LEGACY_RECORD_SIZE == length) {
+			int score = getInt(bytes, 0);
+			if(score > 0) {
+				this.insert(score, 0, 0, 0, 0, 0);
+			}
+		} else if(RECORD_SIZE == length && VERSION == bytes[0]
+				  && bytes[1] >= 0 && bytes[1] <= TetrisConstants.LEADERBOARD_SIZE) {
+			// a corrupt count would index entries past the end of the record, so that's unrecognized too
+			System.arraycopy(bytes, 0, this.record, 0, RECORD_SIZE);
+		} else if(V1_RECORD_SIZE == length && V1_VERSION == bytes[0]
+				  && bytes[1] >= 0 && bytes[1] <= TetrisConstants.LEADERBOARD_SIZE) {
+			// already sorted, so each entry goes in below the last
+			for(int i = 0; i < bytes[1]; i++) {
+				int offset = HEADER_SIZE + (i * V1_ENTRY_SIZE);
+				this.insert(getInt(bytes, offset), getInt(bytes, offset + 4), bytes[offset + 8] & 0xff,
+							bytes[offset + 9] & 0xff, getInt(bytes, offset + 10), getLong(bytes, offset + 14));
+			}
+		}
+	}
+	
+	/**
+	 * @return the packed record, RECORD_SIZE long.  This is the live array, not a copy.
+	 */
+	public byte[] getRecord() {
+		return this.record;
+	}
+	
+	/**
+	 * Insert a score in its sorted place, if it is high enough to make the leaderboard.
+	 * Ties go below the existing entries.
+	 * 
+	 * @param score the final score
+	 * @param lines the number of lines cleared
+	 * @param level the level reached
+	 * @param startLevel the level the game was started at
+	 * @param duration how long the game was played (seconds)
+	 * @param timestamp when the game ended (ms since the epoch)
+	 * @return the rank the score was inserted at (0 is the top), or -1 if it didn't make the leaderboard
+	 */
+	public int insert(int score, int lines, int level, int startLevel, int duration, long timestamp) {
+		int count = this.getCount();
+		
+		// find the first entry with a lower score
+		int rank = 0;
+		while(rank < count && this.getScore(rank) >= score) {
+			rank++;
+		}
+		
+		if(rank >= TetrisConstants.LEADERBOARD_SIZE) {
+			// not high enough
+			return -1;
+		}
+		
+		// shift the lower entries down one, the last one falls off if full
+		int shiftCount = Math.min(count, TetrisConstants.LEADERBOARD_SIZE - 1) - rank;
+		if(shiftCount > 0) {
+			System.arraycopy(this.record, getEntryOffset(rank),
+							 this.record, getEntryOffset(rank + 1),
+							 shiftCount * ENTRY_SIZE);
+		}
+		
+		int offset = getEntryOffset(rank);
+		putInt(this.record, offset + SCORE_OFFSET, score);
+		putInt(this.record, offset + LINES_OFFSET, lines);
+		putShort(this.record, offset + LEVEL_OFFSET, level);
+		putShort(this.record, offset + START_LEVEL_OFFSET, startLevel);
+		putInt(this.record, offset + DURATION_OFFSET, duration);
+		putLong(this.record, offset + TIMESTAMP_OFFSET, timestamp);
+		
+		if(count < TetrisConstants.LEADERBOARD_SIZE) {
+			this.record[1] = (byte)(count + 1);
+		}
+		
+		return rank;
+	}
+	
+	/**
+	 * Insert all of the entries of another leaderboard into this one.
+	 * @param other the leaderboard to merge in
+	 */
+	public void merge(Leaderboard other) {
+		for(int i = 0; i < other.getCount(); i++) {
+			this.insert(other.getScore(i), other.getLines(i), other.getLevel(i),
+						other.getStartLevel(i), other.getDuration(i), other.getTimestamp(i));
+		}
+	}
+	
+	////////////////////
+	
+	/**
+	 * @return the number of entries
+	 */
+	public int getCount() {
+		return this.record[1];
+	}
+	
+	/**
+	 * @return the top score, 0 if there are no entries
+	 */
+	public int getHiScore() {
+		return this.getCount() > 0 ? this.getScore(0) : 0;
+	}
+	
+	/**
+	 * @param rank the rank of the entry, 0 is the top
+	 * @return the score of the entry
+	 */
+	public int getScore(int rank) {
+		return getInt(this.record, getEntryOffset(rank) + SCORE_OFFSET);
+	}
+	
+	/**
+	 * @param rank the rank of the entry, 0 is the top
+	 * @return the lines cleared in the entry's game
+	 */
+	public int getLines(int rank) {
+		return getInt(this.record, getEntryOffset(rank) + LINES_OFFSET);
+	}
+	
+	/**
+	 * @param rank the rank of the entry, 0 is the top
+	 * @return the level reached in the entry's game
+	 */
+	public int getLevel(int rank) {
+		return getShort(this.record, getEntryOffset(rank) + LEVEL_OFFSET);
+	}
+	
+	/**
+	 * @param rank the rank of the entry, 0 is the top
+	 * @return the level the entry's game was started at
+	 */
+	public int getStartLevel(int rank) {
+		return getShort(this.record, getEntryOffset(rank) + START_LEVEL_OFFSET);
+	}
+	
+	/**
+	 * @param rank the rank of the entry, 0 is the top
+	 * @return how long the entry's game was played (seconds)
+	 */
+	public int getDuration(int rank) {
+		return getInt(this.record, getEntryOffset(rank) + DURATION_OFFSET);
+	}
+	
+	/**
+	 * @param rank the rank of the entry, 0 is the top
+	 * @return when the entry's game ended (ms since the epoch)
+	 */
+	public long getTimestamp(int rank) {
+		return getLong(this.record, getEntryOffset(rank) + TIMESTAMP_OFFSET);
+	}
+	
+	////////////////////
+	
+	/**
+	 * @param rank the rank of an entry
+	 * @return the offset of the entry in the record
+	 */
+	private static int getEntryOffset(int rank) {
+		return HEADER_SIZE + (rank * ENTRY_SIZE);
+	}
+	
+	private static int getInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+			 | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+	}
+	
+	private static void putInt(byte[] bytes, int offset, int value) {
+		bytes[offset]	  = (byte)(value >> 24);
+		bytes[offset + 1] = (byte)(value >> 16);
+		bytes[offset + 2] = (byte)(value >> 8);
+		bytes[offset + 3] = (byte)value;
+	}
+	
+	private static int getShort(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
+	}
+	
+	private static void putShort(byte[] bytes, int offset, int value) {
+		bytes[offset]	  = (byte)(value >> 8);
+		bytes[offset + 1] = (byte)value;
+	}
+	
+	private static long getLong(byte[] bytes, int offset) {
+		return ((long)getInt(bytes, offset) << 32) | (getInt(bytes, offset + 4) & 0xffffffffL);
+	}
+	
+	private static void putLong(byte[] bytes, int offset, long value) {
+		putInt(bytes, offset, (int)(value >> 32));
+		putInt(bytes, offset + 4, (int)value);
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.model;
+
+import tetris.TetrisConstants;
+
+/**
+ * Pseudo random piece generator.
+ * 
+ * Uses the same linear congruential generator as java.util.Random, but unlike Random its state
+ * can be read and set, so it can be saved with the rest of the game and the game replayed exactly.
+ */
+public class PieceRandom {
+	
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND	 = 0xBL;
+	private static final long MASK		 = (1L << 48) - 1;
+	
+	private long state;		// the 48 bit generator state
+	
+	/**
+	 * Make a new generator seeded from the clock.
+	 */
+	public PieceRandom() {
+		this.setSeed(System.currentTimeMillis());
+	}
+	
+	/**
+	 * Make a new generator with the given seed.
+	 * @param seed the seed
+	 */
+	public PieceRandom(long seed) {
+		this.setSeed(seed);
+	}
+	
+	/**
+	 * Reseed the generator.  The same seed always gives the same sequence.
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed) {
+		this.state = (seed ^ MULTIPLIER) & MASK;
+	}
+	
+	/**
+	 * @return the current generator state, can be restored with setState
+	 */
+	public long getState() {
+		return this.state;
+	}
+	
+	/**
+	 * @param state a generator state previously returned by getState
+	 */
+	public void setState(long state) {
+		this.state = state & MASK;
+	}
+	
+	/**
+	 * @param bits the number of random bits wanted, 1-31
+	 * @return the next random bits
+	 */
+	private int next(int bits) {
+		this.state = (this.state * MULTIPLIER + ADDEND) & MASK;
+		return (int)(this.state >>> (48 - bits));
+	}
+	
+	/**
+	 * @param bound the upper bound, exclusive, must be positive
+	 * @return a uniformly distributed int from 0 up to bound
+	 */
+	public int nextInt(int bound) {
+		int bits;
+		int value;
+		
+		// reject the top partial range so every value is equally likely
+		do {
+			bits = this.next(31);
+			value = bits % bound;
+		} while(bits - value + (bound - 1) < 0);
+		
+		return value;
+	}
+	
+	/**
+	 * @return a random piece type, one of the piece constants
+	 */
+	public int nextPieceType() {
+		return this.nextInt(TetrisConstants.NUM_PIECE_TYPES) + 1;
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.model;
+
+import tetris.TetrisConstants;
+
+/**
+ * Tables of every piece type in every rotation, as block offsets from the piece's pivot block.
+ * 
+ * The tables are built once by running a TetrisPiece through its rotations, so they always agree
+ * with the real rotation rules: rotation n is reached from the spawn position by n left rotations,
+ * and a left rotation always goes from rotation n to n + 1 (wrapping), a right rotation back again.
+ * O pieces have one rotation, I, S and Z two, and T, L and J four.
+ * 
+ * These let anything that needs piece geometry (bots, previews, packed boards) work from
+ * a type, rotation, and pivot position, without a TetrisPiece.
+ */
+public class PieceShapes {
+	
+	public static final int MAX_ROTATIONS = 4;
+	
+	private static final int TYPES = TetrisConstants.NUM_PIECE_TYPES + 1;	// indexed by piece type, 0 unused
+	
+	private static int[] rotationCounts = new int[TYPES];	// number of distinct rotations of each type
+	private static int[] spawnX = new int[TYPES];			// x of the pivot of a new piece of each type
+	private static int[] spawnY = new int[TYPES];			// y of the pivot of a new piece of each type
+	
+	// block offsets from the pivot, indexed by getIndex
+	private static int[] blockX = new int[TYPES * MAX_ROTATIONS * TetrisConstants.FOUR_BLOCKS];
+	private static int[] blockY = new int[TYPES * MAX_ROTATIONS * TetrisConstants.FOUR_BLOCKS];
+	
+	static {
+		TetrisPiece piece = new TetrisPiece();
+		
+		for(int type = 1; type < TYPES; type++) {
+			piece.setAsNewPiece(type, TetrisConstants.START_X, TetrisConstants.START_Y);
+			
+			int pivotX = piece.getBlockX(TetrisConstants.PIVOT_INDEX);
+			int pivotY = piece.getBlockY(TetrisConstants.PIVOT_INDEX);
+			spawnX[type] = pivotX;
+			spawnY[type] = pivotY;
+			
+			int rotationType = piece.getRotationType();
+			if(TetrisConstants.ROTATION_TYPE_NONE == rotationType) {
+				rotationCounts[type] = 1;
+			} else if(TetrisConstants.ROTATION_TYPE_TOGGLE == rotationType) {
+				rotationCounts[type] = 2;
+			} else {
+				rotationCounts[type] = 4;
+			}
+			
+			for(int rotation = 0; rotation < rotationCounts[type]; rotation++) {
+				for(int i = 0; i < TetrisConstants.FOUR_BLOCKS; i++) {
+					blockX[getIndex(type, rotation, i)] = piece.getBlockX(i) - pivotX;
+					blockY[getIndex(type, rotation, i)] = piece.getBlockY(i) - pivotY;
+				}
+				
+				// the pivot block doesn't move when rotating
+				piece.rotate(pivotX, pivotY, true);
+			}
+		}
+	}
+	
+	/**
+	 * @param type the piece type
+	 * @param rotation the rotation
+	 * @param blockIndex the index of the block in the piece, 0-3
+	 * @return the index of the block's offsets in the tables
+	 */
+	private static int getIndex(int type, int rotation, int blockIndex) {
+		return (((type * MAX_ROTATIONS) + rotation) * TetrisConstants.FOUR_BLOCKS) + blockIndex;
+	}
+	
+	/**
+	 * @param type the piece type
+	 * @return the number of distinct rotations of the type
+	 */
+	public static int getRotationCount(int type) {
+		return rotationCounts[type];
+	}
+	
+	/**
+	 * @param type the piece type
+	 * @param rotation the rotation
+	 * @param blockIndex the index of the block in the piece, 0-3
+	 * @return the x offset of the block from the pivot
+	 */
+	public static int getBlockX(int type, int rotation, int blockIndex) {
+		return blockX[getIndex(type, rotation, blockIndex)];
+	}
+	
+	/**
+	 * @param type the piece type
+	 * @param rotation the rotation
+	 * @param blockIndex the index of the block in the piece, 0-3
+	 * @return the y offset of the block from the pivot
+	 */
+	public static int getBlockY(int type, int rotation, int blockIndex) {
+		return blockY[getIndex(type, rotation, blockIndex)];
+	}
+	
+	/**
+	 * @param type the piece type
+	 * @return the x coordinate of the pivot of a new piece of the type
+	 */
+	public static int getSpawnX(int type) {
+		return spawnX[type];
+	}
+	
+	/**
+	 * @param type the piece type
+	 * @return the y coordinate of the pivot of a new piece of the type
+	 */
+	public static int getSpawnY(int type) {
+		return spawnY[type];
+	}
+	
+	/**
+	 * @param type the piece type
+	 * @param rotation the current rotation
+	 * @return the rotation after rotating left once
+	 */
+	public static int rotateLeft(int type, int rotation) {
+		return (rotation + 1) % rotationCounts[type];
+	}
+	
+	/**
+	 * @param type the piece type
+	 * @param rotation the current rotation
+	 * @return the rotation after rotating right once
+	 */
+	public static int rotateRight(int type, int rotation) {
+		return (rotation + rotationCounts[type] - 1) % rotationCounts[type];
+	}
+	
+	/**
+	 * Work out which rotation a piece is in, from its block positions.
+	 * 
+	 * @param piece the piece
+	 * @return the rotation, or -1 if the blocks don't match any rotation of its type
+	 */
+	public static int getRotation(TetrisPiece piece) {
+		int type = piece.getPieceType();
+		int pivotX = piece.getBlockX(TetrisConstants.PIVOT_INDEX);
+		int pivotY = piece.getBlockY(TetrisConstants.PIVOT_INDEX);
+		
+		for(int rotation = 0; rotation < rotationCounts[type]; rotation++) {
+			boolean matches = true;
+			for(int i = 0; i < TetrisConstants.FOUR_BLOCKS && matches; i++) {
+				matches = piece.getBlockX(i) - pivotX == getBlockX(type, rotation, i)
+					   && piece.getBlockY(i) - pivotY == getBlockY(type, rotation, i);
+			}
+			
+			if(matches) {
+				return rotation;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Set a piece to the given type, rotation and position, exactly as if it had been rotated and moved there.
+	 * 
+	 * @param piece the piece to set
+	 * @param type the piece type
+	 * @param rotation the rotation
+	 * @param pivotX the x coordinate of the pivot
+	 * @param pivotY the y coordinate of the pivot
+	 */
+	public static void setPiece(TetrisPiece piece, int type, int rotation, int pivotX, int pivotY) {
+		piece.setAsNewPiece(type, TetrisConstants.START_X, TetrisConstants.START_Y);
+		
+		for(int i = 0; i < TetrisConstants.FOUR_BLOCKS; i++) {
+			piece.setBlockCoords(i, pivotX + getBlockX(type, rotation, i), pivotY + getBlockY(type, rotation, i));
+		}
+		
+		// toggling pieces start with the toggle set, each rotation flips it
+		piece.setRotationToggle(0 == rotation);
+	}
+}
@@ -27,24 +27,75 @@ import tetris.TetrisConstants;
  * Has logic for manipulating supplied pieces' state on the board.
  * Whenever the board adjusts its state to reflect that a piece has changed,
  * it should also ensure that the piece's state is updated as well.
+ * 
+ * The grid is kept a row array at a time, so clearing rows moves whole rows instead of copying blocks.
+ * Alongside each row its locked blocks are kept as bits, an int per row if the board is narrow enough,
+ * otherwise a long, so a completed row or an empty one is a single compare however wide the board.
  */
 public class TetrisBoard {
 	
-	private int[][] boardBlocks = new int[TetrisConstants.WIDTH][TetrisConstants.HEIGHT];	// the grid of blocks
+	private BoardConfig config;		// the size of the board
+	private int width;				// number of grid blocks horizontally
+	private int height;				// number of grid blocks vertically
+	
+	private int[][] rows;			// the grid of blocks, a row at a time, top row first
+	private int[] emptyRow;			// a row of empty blocks, copied over rows to clear them
+	private int[][] removedRows;	// reused by removeRows to hold the removed rows while the rows above drop
+	
+	// bit x of a row is set if the block at column x is locked, only one of these is used depending on the width
+	private int[] rowBits;			// the locked blocks of each row, narrow boards
+	private long[] wideRowBits;		// the locked blocks of each row, wide boards
+	private int fullRow;			// the bits of a completed row, narrow boards
+	private long fullWideRow;		// the bits of a completed row, wide boards
 	
 	/**
-	 * Make a new board.
+	 * Make a new standard board.
 	 */
 	public TetrisBoard() {
+		this(BoardConfig.STANDARD);
+	}
+	
+	/**
+	 * Make a new board.
+	 * 
+	 * @param config the size of the board
+	 */
+	public TetrisBoard(BoardConfig config) {
+		this.config = config;
+		this.width = config.getWidth();
+		this.height = config.getHeight();
+		
+		this.rows = new int[this.height][this.width];
+		this.emptyRow = new int[this.width];
+		this.removedRows = new int[this.height][];
+		for(int x = 0; x < this.width; x++) {
+			this.emptyRow[x] = TetrisConstants.BLOCK_EMPTY;
+		}
+		
+		if(config.isWide()) {
+			this.wideRowBits = new long[this.height];
+			this.fullWideRow = BoardConfig.MAX_WIDTH == this.width ? -1L : (1L << this.width) - 1;
+		} else {
+			this.rowBits = new int[this.height];
+			this.fullRow = BoardConfig.NARROW_WIDTH == this.width ? -1 : (1 << this.width) - 1;
+		}
+		
 		this.clearBoard();
 	}
 	
+	/**
+	 * @return the size of the board
+	 */
+	public BoardConfig getConfig() {
+		return this.config;
+	}
+	
 	/**
 	 * Clear the board so that all blocks on the board are empty
 	 *
 	 */
 	public void clearBoard() {
-		for(int y = 0; y < TetrisConstants.HEIGHT; y++) {
+		for(int y = 0; y < this.height; y++) {
 			this.clearRow(y);
 		}
 	}
@@ -55,8 +106,12 @@ public class TetrisBoard {
 	 * @param rowY the index of the row to clear, top of the board is lower, bottom higher
 	 */
 	public void clearRow(int rowY) {
-		for(int x = 0; x < TetrisConstants.WIDTH; x++) {
-			this.setBlockType(x, rowY, TetrisConstants.BLOCK_EMPTY);
+		System.arraycopy(this.emptyRow, 0, this.rows[rowY], 0, this.width);
+		
+		if(null == this.wideRowBits) {
+			this.rowBits[rowY] = 0;
+		} else {
+			this.wideRowBits[rowY] = 0;
 		}
 	}
 	
@@ -81,14 +136,24 @@ public class TetrisBoard {
 	 * @return true if the row is completely filled in, false otherwise
 	 */
 	public boolean checkRowCompleted(int rowY) {
-		for(int x = 0; x < TetrisConstants.WIDTH; x++) {
-			if(TetrisConstants.BLOCK_EMPTY == this.getBlockType(x, rowY)) {
-				// empty block, so the row is not filled
-				return false;
+		if(null == this.wideRowBits) {
+			return this.fullRow == this.rowBits[rowY];
+		}
+		
+		return this.fullWideRow == this.wideRowBits[rowY];
+	}
+	
+	/**
+	 * @return the height of the stack of locked blocks, in rows from the bottom of the board to its highest block
+	 */
+	public int getStackHeight() {
+		for(int y = 0; y < this.height; y++) {
+			if(null == this.wideRowBits ? 0 != this.rowBits[y] : 0 != this.wideRowBits[y]) {
+				return this.height - y;
 			}
 		}
 		
-		return true;
+		return 0;
 	}
 	
 	/**
@@ -101,10 +166,57 @@ public class TetrisBoard {
 	 * @param numRows the number of rows to translate the row blocks down
 	 */
 	public void dropRow(int rowY, int numRows) {
-		for(int x = 0; x < TetrisConstants.WIDTH; x++) {
-			int blockType = this.getBlockType(x, rowY);
+		System.arraycopy(this.rows[rowY], 0, this.rows[rowY + numRows], 0, this.width);
+		
+		if(null == this.wideRowBits) {
+			this.rowBits[rowY + numRows] = this.rowBits[rowY];
+		} else {
+			this.wideRowBits[rowY + numRows] = this.wideRowBits[rowY];
+		}
+	}
+	
+	/**
+	 * Remove rows, dropping the rows above them down into the gaps and leaving new empty rows at the top.
+	 * Rows are moved whole rather than a block at a time, so this costs the height of the board, not its area.
+	 * 
+	 * @param rowYs the y indexes of the rows to remove, from the bottom up
+	 * @param count the number of rows to remove
+	 */
+	public void removeRows(int[] rowYs, int count) {
+		if(count <= 0) {
+			return;
+		}
+		
+		int[][] rows = this.rows;
+		int[] rowBits = this.rowBits;
+		long[] wideRowBits = this.wideRowBits;
+		
+		// the removed rows' arrays are reused as the new rows at the top
+		for(int i = 0; i < count; i++) {
+			this.removedRows[i] = rows[rowYs[i]];
+		}
+		
+		// each row above the lowest removed row drops by the number of removed rows below it
+		int toY = rowYs[0];
+		int nextRemoved = 1;
+		for(int fromY = toY - 1; fromY >= 0; fromY--) {
+			if(nextRemoved < count && fromY == rowYs[nextRemoved]) {
+				nextRemoved++;
+				continue;
+			}
 			
-			this.setBlockType(x, rowY + numRows, blockType);
+			rows[toY] = rows[fromY];
+			if(null == wideRowBits) {
+				rowBits[toY] = rowBits[fromY];
+			} else {
+				wideRowBits[toY] = wideRowBits[fromY];
+			}
+			toY--;
+		}
+		
+		for(int y = 0; y < count; y++) {
+			rows[y] = this.removedRows[y];
+			this.clearRow(y);
 		}
 	}
 	
@@ -116,16 +228,34 @@ public class TetrisBoard {
 	 * @return the block/piece type at the given coordinates
 	 */
 	public int getBlockType(int x, int y) {
-		return this.boardBlocks[x][y];
+		return this.rows[y][x];
 	}
 	
 	/**
+	 * Set a block directly.  Mostly for internal use, also used to restore a saved board.
+	 * 
 	 * @param x the x coordinate of the block to set
 	 * @param y the y coordinate of the block to set
 	 * @param pieceType the type of the piece to set the block to
 	 */
-	private void setBlockType(int x, int y, int pieceType) {
-		this.boardBlocks[x][y] = pieceType;
+	public void setBlockType(int x, int y, int pieceType) {
+		this.rows[y][x] = pieceType;
+		
+		// anything but empty or the active piece is locked
+		boolean locked = TetrisConstants.BLOCK_EMPTY != pieceType && TetrisConstants.BLOCK_ACTIVE != pieceType;
+		if(null == this.wideRowBits) {
+			if(locked) {
+				this.rowBits[y] |= 1 << x;
+			} else {
+				this.rowBits[y] &= ~(1 << x);
+			}
+		} else {
+			if(locked) {
+				this.wideRowBits[y] |= 1L << x;
+			} else {
+				this.wideRowBits[y] &= ~(1L << x);
+			}
+		}
 	}
 	
 	/**
@@ -158,9 +288,9 @@ public class TetrisBoard {
 	 */
 	private boolean isOnBoard(int x, int y) {
 		return x >= 0 		&&		// not off the left edge
-		  	   x <  TetrisConstants.WIDTH	&&		// not off the right edge
+		  	   x <  this.width	&&		// not off the right edge
 			   y >= 0 		&&		// not off the bottom
-			   y <  TetrisConstants.HEIGHT;			// not already at the top? can't move up anyway...
+			   y <  this.height;			// not already at the top? can't move up anyway...
 	}
 	
 	/**
@@ -266,6 +396,23 @@ public class TetrisBoard {
 		return true;
 	}
 	
+	/**
+	 * Find how far the given piece can fall, up to a limit.
+	 * 
+	 * @param piece the piece to check
+	 * @param maxRows the most rows to check
+	 * @return the number of rows the piece can move down, at most maxRows
+	 */
+	public int getDropDistance(TetrisPiece piece, int maxRows) {
+		for(int rows = 1; rows <= maxRows; rows++) {
+			if(!this.canTranslatePiece(piece, 0, rows)) {
+				return rows - 1;
+			}
+		}
+		
+		return maxRows;
+	}
+	
 	/**
 	 * Move the given piece down one row.
 	 * @param piece the piece to move down.
@@ -55,25 +55,25 @@ public class TetrisPiece {
 	public void setAsNewPiece(int pieceType, int x, int y) {
 		switch(pieceType) {
 			case TetrisConstants.I_PIECE:
-				this.setAsNewIPiece(TetrisConstants.START_X, TetrisConstants.START_Y);
+				this.setAsNewIPiece(x, y);
 				break;
 			case TetrisConstants.O_PIECE:
-				this.setAsNewOPiece(TetrisConstants.START_X, TetrisConstants.START_Y);
+				this.setAsNewOPiece(x, y);
 				break;
 			case TetrisConstants.T_PIECE:
-				this.setAsNewTPiece(TetrisConstants.START_X, TetrisConstants.START_Y);
+				this.setAsNewTPiece(x, y);
 				break;
 			case TetrisConstants.S_PIECE:
-				this.setAsNewSPiece(TetrisConstants.START_X, TetrisConstants.START_Y);
+				this.setAsNewSPiece(x, y);
 				break;
 			case TetrisConstants.Z_PIECE:
-				this.setAsNewZPiece(TetrisConstants.START_X, TetrisConstants.START_Y);
+				this.setAsNewZPiece(x, y);
 				break;
 			case TetrisConstants.L_PIECE:
-				this.setAsNewLPiece(TetrisConstants.START_X, TetrisConstants.START_Y);
+				this.setAsNewLPiece(x, y);
 				break;
 			case TetrisConstants.J_PIECE:
-				this.setAsNewJPiece(TetrisConstants.START_X, TetrisConstants.START_Y);
+				this.setAsNewJPiece(x, y);
 		}
 	}
 	
@@ -318,4 +318,12 @@ public class TetrisPiece {
 	public boolean getRotationToggle() {
 		return this.rotationToggle;
 	}
+	
+	/**
+	 * Set the rotation toggle directly, used when restoring a saved piece.
+	 * @param rotationToggle the rotation toggle previously returned by getRotationToggle
+	 */
+	public void setRotationToggle(boolean rotationToggle) {
+		this.rotationToggle = rotationToggle;
+	}
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.perf;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A fixed-bucket histogram of millisecond latencies (or any small non-negative counts).
+ * 
+ * Buckets are powers of two: bucket 0 holds 0, bucket 1 holds 1, bucket 2 holds 2-3, bucket 3 holds 4-7, etc.
+ * The last bucket holds everything that overflows the others.
+ * All storage is allocated up front, so recording a value never allocates.
+ * 
+ * Recording is not synchronized.  Each histogram is expected to be written by a single thread,
+ * a reader on another thread may see a slightly stale snapshot, which is fine for statistics.
+ */
+public class LatencyHistogram {
+	
+	public static final int NUM_BUCKETS = 14;	// 0, 1, 2-3, ... 2048-4095, 4096+
+	
+	private int[] buckets = new int[NUM_BUCKETS];	// the count of recorded values in each bucket
+	
+	private int count;		// total number of recorded values
+	private long total;		// sum of all recorded values, for the mean
+	private int max;		// the largest recorded value
+	private int last;		// the most recently recorded value
+	
+	/**
+	 * Record a value.
+	 * 
+	 * @param value the value to record, negative values are recorded as 0
+	 */
+	public void record(long value) {
+		int v = value < 0 ? 0 : (value > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)value);
+		
+		this.buckets[getBucketIndex(v)]++;
+		this.count++;
+		this.total += v;
+		this.last = v;
+		
+		if(v > this.max) {
+			this.max = v;
+		}
+	}
+	
+	/**
+	 * Clear all recorded values.
+	 */
+	public void reset() {
+		for(int i = 0; i < NUM_BUCKETS; i++) {
+			this.buckets[i] = 0;
+		}
+		
+		this.count = 0;
+		this.total = 0;
+		this.max = 0;
+		this.last = 0;
+	}
+	
+	/**
+	 * @param value a non-negative value
+	 * @return the index of the bucket the value falls into
+	 */
+	public static int getBucketIndex(int value) {
+		int index = 0;
+		
+		// the bucket is the number of significant bits in the value
+		while(value > 0 && index < NUM_BUCKETS - 1) {
+			value >>= 1;
+			index++;
+		}
+		
+		return index;
+	}
+	
+	/**
+	 * @param bucketIndex the index of a bucket
+	 * @return the smallest value that falls into the bucket
+	 */
+	public static int getBucketLowerBound(int bucketIndex) {
+		return 0 == bucketIndex ? 0 : 1 << (bucketIndex - 1);
+	}
+	
+	/**
+	 * @param bucketIndex the index of a bucket
+	 * @return the number of values recorded into the bucket
+	 */
+	public int getBucketCount(int bucketIndex) {
+		return this.buckets[bucketIndex];
+	}
+	
+	/**
+	 * @return the number of recorded values
+	 */
+	public int getCount() {
+		return this.count;
+	}
+	
+	/**
+	 * @return the sum of the recorded values
+	 */
+	public long getTotal() {
+		return this.total;
+	}
+	
+	/**
+	 * @return the mean of the recorded values, 0 if nothing recorded
+	 */
+	public int getMean() {
+		return 0 == this.count ? 0 : (int)(this.total / this.count);
+	}
+	
+	/**
+	 * @return the largest recorded value
+	 */
+	public int getMax() {
+		return this.max;
+	}
+	
+	/**
+	 * @return the most recently recorded value
+	 */
+	public int getLast() {
+		return this.last;
+	}
+	
+	/**
+	 * Find an approximate percentile.  The result is the lower bound of the bucket the percentile falls into.
+	 * 
+	 * @param percent the percentile, 0-100
+	 * @return the approximate value at the percentile
+	 */
+	public int getPercentile(int percent) {
+		// the rank of the value we're looking for, rounded up
+		long rank = ((long)this.count * percent + 99) / 100;
+		
+		long seen = 0;
+		for(int i = 0; i < NUM_BUCKETS; i++) {
+			seen += this.buckets[i];
+			if(seen >= rank && seen > 0) {
+				return getBucketLowerBound(i);
+			}
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * Write the histogram in a compact form: count, total, max, then the bucket counts.
+	 * 
+	 * @param dataOut the stream to write to
+	 * @throws IOException if the underlying stream fails
+	 */
+	public void writeTo(DataOutputStream dataOut) throws IOException {
+		dataOut.writeInt(this.count);
+		dataOut.writeLong(this.total);
+		dataOut.writeInt(this.max);
+		
+		for(int i = 0; i < NUM_BUCKETS; i++) {
+			dataOut.writeInt(this.buckets[i]);
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.perf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Holds the engine and rendering performance counters.
+ * 
+ * Each measurement goes into its own fixed-bucket LatencyHistogram, so recording never allocates.
+ * Times are in milliseconds, since System.currentTimeMillis() is the only clock available on CLDC.
+ * The game and canvas record into this as they run, anything (the overlay, a debug command) can query it,
+ * and the whole thing can be dumped as a compact record for collecting from the field.
+ */
+public class PerfStats {
+	
+	// histogram ids
+	public static final int TICK_TIME		= 0;	// time spent in TetrisMIDlet.tick()
+	public static final int CLEAR_TIME		= 1;	// time spent clearing completed rows
+	public static final int PAINT_TIME		= 2;	// time spent in TetrisCanvas.paint()
+	public static final int GRAVITY_JITTER	= 3;	// how late the drop thread wakes compared to the tick speed
+	public static final int INPUT_TO_PAINT	= 4;	// time from a key press until the end of the next paint
+	public static final int CELLS_PAINTED	= 5;	// number of board blocks repainted per frame (a count, not a time)
+	public static final int NUM_HISTOGRAMS	= 6;
+	
+	private static final int RECORD_VERSION = 1;	// version of the dumped record layout
+	private static final int PAINT_WINDOW	= 1000;	// length of the window over which paints are counted (ms)
+	
+	private LatencyHistogram[] histograms;	// the histograms, indexed by the ids above
+	
+	private boolean enabled;				// whether recording is on, when off every record call is a single check
+	
+	private long pendingInputTime;			// time of the earliest key press not yet painted, 0 if none
+	
+	private long paintWindowStart;			// start time of the current paint counting window
+	private int paintWindowCount;			// paints so far in the current window
+	private int paintsPerSecond;			// paints counted in the last complete window
+	
+	/**
+	 * Make a new, enabled, set of stats.
+	 */
+	public PerfStats() {
+		this.histograms = new LatencyHistogram[NUM_HISTOGRAMS];
+		for(int i = 0; i < NUM_HISTOGRAMS; i++) {
+			this.histograms[i] = new LatencyHistogram();
+		}
+		
+		this.enabled = true;
+	}
+	
+	/**
+	 * @return true if stats are being recorded
+	 */
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+	
+	/**
+	 * @param enabled true to record stats, false to ignore all record calls
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+	
+	/**
+	 * Record a value into one of the histograms.
+	 * 
+	 * @param histogramId the histogram id, one of the constants defined here
+	 * @param value the value to record
+	 */
+	public void record(int histogramId, long value) {
+		if(this.enabled) {
+			this.histograms[histogramId].record(value);
+		}
+	}
+	
+	/**
+	 * Note that a key was pressed.  The latency is recorded at the end of the next paint.
+	 * If several keys are pressed before a paint, the latency is measured from the first.
+	 * 
+	 * @param time the time of the key press (ms)
+	 */
+	public void markInput(long time) {
+		if(this.enabled && 0 == this.pendingInputTime) {
+			this.pendingInputTime = time;
+		}
+	}
+	
+	/**
+	 * Record a completed paint.
+	 * 
+	 * @param startTime the time the paint started (ms)
+	 * @param endTime the time the paint finished (ms)
+	 * @param cellsPainted the number of board blocks repainted
+	 */
+	public void recordPaint(long startTime, long endTime, int cellsPainted) {
+		if(!this.enabled) {
+			return;
+		}
+		
+		this.histograms[PAINT_TIME].record(endTime - startTime);
+		this.histograms[CELLS_PAINTED].record(cellsPainted);
+		
+		if(0 != this.pendingInputTime) {
+			this.histograms[INPUT_TO_PAINT].record(endTime - this.pendingInputTime);
+			this.pendingInputTime = 0;
+		}
+		
+		// count paints in fixed windows, rolling over once a window has passed
+		if(endTime - this.paintWindowStart >= PAINT_WINDOW) {
+			if(0 != this.paintWindowStart) {
+				this.paintsPerSecond = (int)((this.paintWindowCount * (long)PAINT_WINDOW) / (endTime - this.paintWindowStart));
+			}
+			
+			this.paintWindowStart = endTime;
+			this.paintWindowCount = 0;
+		}
+		
+		this.paintWindowCount++;
+	}
+	
+	/**
+	 * @param histogramId the histogram id, one of the constants defined here
+	 * @return the histogram
+	 */
+	public LatencyHistogram getHistogram(int histogramId) {
+		return this.histograms[histogramId];
+	}
+	
+	/**
+	 * @return the number of paints in the last complete one second window
+	 */
+	public int getPaintsPerSecond() {
+		return this.paintsPerSecond;
+	}
+	
+	/**
+	 * Clear all recorded stats.
+	 */
+	public void reset() {
+		for(int i = 0; i < NUM_HISTOGRAMS; i++) {
+			this.histograms[i].reset();
+		}
+		
+		this.pendingInputTime = 0;
+		this.paintWindowStart = 0;
+		this.paintWindowCount = 0;
+		this.paintsPerSecond = 0;
+	}
+	
+	/**
+	 * Dump the stats as a compact record, suitable for storing in rms or sending off the device.
+	 * Layout is a version byte, the paints per second, then each histogram in id order.
+	 * 
+	 * @return the record bytes
+	 */
+	public byte[] toRecord() {
+		ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+		DataOutputStream dataOut = new DataOutputStream(byteOut);
+		
+		try {
+			dataOut.writeByte(RECORD_VERSION);
+			dataOut.writeInt(this.paintsPerSecond);
+			
+			for(int i = 0; i < NUM_HISTOGRAMS; i++) {
+				this.histograms[i].writeTo(dataOut);
+			}
+			
+			dataOut.close();
+		} catch(IOException ioe) {
+			// can't happen writing to memory
+		}
+		
+		return byteOut.toByteArray();
+	}
+}
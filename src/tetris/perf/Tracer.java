@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.perf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Records begin/end spans of the game loop into a preallocated ring buffer, and exports them
+ * in the Chrome trace event format (load the output in chrome://tracing or Perfetto).
+ * 
+ * Spans are tagged with the thread that recorded them, so the drop thread's ticks show
+ * on their own track alongside the UI thread's input handling and painting.
+ * 
+ * When disabled, begin and end are a single field check.  When enabled nothing is allocated,
+ * once the ring is full the oldest events are overwritten.
+ */
+public class Tracer {
+	
+	// span ids, also indices into SPAN_NAMES
+	public static final int INPUT = 0;		// handling a key press
+	public static final int TICK  = 1;		// a drop thread tick
+	public static final int CLEAR = 2;		// clearing completed rows
+	public static final int PAINT = 3;		// painting the canvas
+	public static final int BLIT  = 4;		// drawing the double buffer to the screen
+	
+	private static final String[] SPAN_NAMES = { "input", "tick", "clear", "paint", "blit" };
+	
+	private static final int DEFAULT_CAPACITY = 4096;	// events held in the ring by default
+	private static final int MAX_THREADS = 16;			// threads given their own track, any others share the last
+	
+	private long[] times;			// the time of each event (ms)
+	private byte[] spans;			// the span id of each event
+	private boolean[] begins;		// true if the event begins its span, false if it ends it
+	private byte[] threadIds;		// the track of the thread that recorded each event
+	
+	private int capacity;			// the size of the ring
+	private int next;				// index in the ring the next event is written to
+	private int size;				// the number of events in the ring, up to capacity
+	
+	private Thread[] threads = new Thread[MAX_THREADS];	// threads seen so far, indexed by their track id
+	private int numThreads;								// number of threads seen so far
+	
+	private boolean enabled;		// whether events are being recorded
+	
+	/**
+	 * Make a new disabled tracer with the default capacity.
+	 */
+	public Tracer() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Make a new disabled tracer.
+	 * @param capacity the number of events to keep in the ring
+	 */
+	public Tracer(int capacity) {
+		this.capacity = capacity;
+		this.times = new long[capacity];
+		this.spans = new byte[capacity];
+		this.begins = new boolean[capacity];
+		this.threadIds = new byte[capacity];
+	}
+	
+	/**
+	 * @return true if events are being recorded
+	 */
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+	
+	/**
+	 * @param enabled true to record events, false to ignore them
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+	
+	/**
+	 * Begin a span on the current thread.
+	 * @param span the span id, one of the constants defined here
+	 */
+	public void begin(int span) {
+		if(this.enabled) {
+			this.record(span, true);
+		}
+	}
+	
+	/**
+	 * End a span on the current thread.
+	 * @param span the span id, one of the constants defined here
+	 */
+	public void end(int span) {
+		if(this.enabled) {
+			this.record(span, false);
+		}
+	}
+	
+	/**
+	 * Write an event into the ring.
+	 * 
+	 * @param span the span id
+	 * @param begin true if beginning the span, false if ending it
+	 */
+	private synchronized void record(int span, boolean begin) {
+		this.times[this.next] = System.currentTimeMillis();
+		this.spans[this.next] = (byte)span;
+		this.begins[this.next] = begin;
+		this.threadIds[this.next] = (byte)this.getThreadId(Thread.currentThread());
+		
+		this.next = (this.next + 1) % this.capacity;
+		if(this.size < this.capacity) {
+			this.size++;
+		}
+	}
+	
+	/**
+	 * Get the track id for a thread, assigning the next free one if it hasn't been seen before.
+	 * 
+	 * @param thread the thread
+	 * @return the track id of the thread
+	 */
+	private int getThreadId(Thread thread) {
+		for(int i = 0; i < this.numThreads; i++) {
+			if(this.threads[i] == thread) {
+				return i;
+			}
+		}
+		
+		if(this.numThreads < MAX_THREADS) {
+			this.threads[this.numThreads] = thread;
+			return this.numThreads++;
+		}
+		
+		// out of tracks, share the last one
+		return MAX_THREADS - 1;
+	}
+	
+	/**
+	 * Discard all recorded events.
+	 */
+	public synchronized void clear() {
+		this.next = 0;
+		this.size = 0;
+		this.numThreads = 0;
+		
+		for(int i = 0; i < MAX_THREADS; i++) {
+			this.threads[i] = null;	// don't hold on to dead threads
+		}
+	}
+	
+	/**
+	 * @return the number of events currently held
+	 */
+	public int getSize() {
+		return this.size;
+	}
+	
+	/**
+	 * Export the recorded events as Chrome trace event JSON, oldest first.
+	 * Timestamps are relative to the oldest event.
+	 * 
+	 * @param out the stream to write the JSON to, isn't closed
+	 * @throws IOException if writing fails
+	 */
+	public synchronized void writeChromeTrace(OutputStream out) throws IOException {
+		Writer writer = new OutputStreamWriter(out, "UTF-8");
+		
+		int first = (this.next - this.size + this.capacity) % this.capacity;	// index of the oldest event
+		long baseTime = this.size > 0 ? this.times[first] : 0;
+		
+		writer.write("{\"traceEvents\":[");
+		
+		// name each track after its thread
+		for(int i = 0; i < this.numThreads; i++) {
+			if(i > 0) {
+				writer.write(',');
+			}
+			
+			writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + i + ",\"args\":{\"name\":");
+			writeJsonString(writer, this.threads[i].getName());
+			writer.write("}}");
+		}
+		
+		for(int i = 0; i < this.size; i++) {
+			int index = (first + i) % this.capacity;
+			
+			if(i > 0 || this.numThreads > 0) {
+				writer.write(',');
+			}
+			
+			// trace timestamps are in microseconds
+			writer.write("{\"name\":\"" + SPAN_NAMES[this.spans[index]]
+						 + "\",\"ph\":\"" + (this.begins[index] ? 'B' : 'E')
+						 + "\",\"ts\":" + ((this.times[index] - baseTime) * 1000)
+						 + ",\"pid\":1,\"tid\":" + this.threadIds[index] + "}");
+		}
+		
+		writer.write("]}");
+		writer.flush();
+	}
+	
+	/**
+	 * Write a string as a quoted JSON string, escaping anything that would break out of it.
+	 * Thread names can be set to anything.
+	 * 
+	 * @param writer the writer
+	 * @param value the string
+	 * @throws IOException if writing fails
+	 */
+	private static void writeJsonString(Writer writer, String value) throws IOException {
+		writer.write('"');
+		
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			
+			if('"' == c || '\\' == c) {
+				writer.write('\\');
+				writer.write(c);
+			} else if(c < 0x20) {
+				// control characters as unicode escapes
+				String hex = Integer.toHexString(c);
+				writer.write("\\u00");
+				if(hex.length() < 2) {
+					writer.write('0');
+				}
+				writer.write(hex);
+			} else {
+				writer.write(c);
+			}
+		}
+		
+		writer.write('"');
+	}
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.replay;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Many recorded games in one append only archive, so a corpus of games is one file to open rather than one per game.
+ * 
+ * The whole archive is a single byte array, laid out exactly as it's stored:
+ * a header, then an index with a fixed number of entries, then each game's actions one after the other.
+ * An index entry holds where the game's actions are, its seed and start level, and its final score, lines and level,
+ * so any game can be found by id without looking at the others.
+ * 
+ * Reading an archive is one read of the file into the array, after which everything is read in place:
+ * getBuffer and getActionsOffset give a game's actions where they lie, nothing is copied or allocated to
+ * go through them.  Appending writes the game's actions, then its entry, then bumps the count.
+ * 
+ * Not synchronized, append from one thread at a time and don't read while appending.
+ */
+public class ReplayArchive {
+	
+	private static final int MAGIC = 0x54525041;	// "TRPA"
+	private static final byte VERSION = 2;
+	
+	// header: magic, version, index capacity, game count, end of the data
+	private static final int HEADER_SIZE	 = 17;
+	private static final int CAPACITY_OFFSET = 5;
+	private static final int COUNT_OFFSET	 = 9;
+	private static final int END_OFFSET		 = 13;
+	
+	// index entry: actions offset, action count, seed, start level, level, score, lines
+	private static final int ENTRY_SIZE		= 27;
+	private static final int ENTRY_OFFSET	= 0;
+	private static final int ENTRY_LENGTH	= 4;
+	private static final int ENTRY_SEED		= 8;
+	private static final int ENTRY_START	= 16;
+	private static final int ENTRY_LEVEL	= 17;
+	private static final int ENTRY_SCORE	= 19;
+	private static final int ENTRY_LINES	= 23;
+	
+	private byte[] bytes;		// the archive, as stored
+	private int capacity;		// the number of index entries
+	private int count;			// the number of games
+	private int end;			// the end of the data, the stored size of the archive
+	
+	/**
+	 * Make a new empty archive.
+	 * 
+	 * @param capacity the most games it can hold
+	 * @param dataCapacity the initial space for actions, it grows as needed
+	 */
+	public ReplayArchive(int capacity, int dataCapacity) {
+		this.capacity = capacity;
+		this.end = HEADER_SIZE + (capacity * ENTRY_SIZE);
+		this.bytes = new byte[this.end + dataCapacity];
+		
+		putInt(this.bytes, 0, MAGIC);
+		this.bytes[4] = VERSION;
+		putInt(this.bytes, CAPACITY_OFFSET, capacity);
+		this.updateHeader();
+	}
+	
+	/**
+	 * Wrap stored archive bytes.
+	 * 
+	 * @param bytes the archive
+	 */
+	private ReplayArchive(byte[] bytes) {
+		this.bytes = bytes;
+		this.capacity = getInt(bytes, CAPACITY_OFFSET);
+		this.count = getInt(bytes, COUNT_OFFSET);
+		this.end = getInt(bytes, END_OFFSET);
+	}
+	
+	/**
+	 * Read an archive written by writeTo, in one go.
+	 * 
+	 * @param in the stream to read
+	 * @return the archive
+	 * @throws IOException if it can't be read, isn't an archive, or its index doesn't fit its data
+	 */
+	public static ReplayArchive read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		
+		byte[] header = new byte[HEADER_SIZE];
+		data.readFully(header);
+		
+		int end = getInt(header, END_OFFSET);
+		if(MAGIC != getInt(header, 0) || VERSION != header[4] || end < HEADER_SIZE) {
+			throw new IOException("not a replay archive");
+		}
+		
+		byte[] bytes = new byte[end];
+		System.arraycopy(header, 0, bytes, 0, HEADER_SIZE);
+		data.readFully(bytes, HEADER_SIZE, end - HEADER_SIZE);
+		
+		ReplayArchive archive = new ReplayArchive(bytes);
+		if(!archive.isValid()) {
+			throw new IOException("corrupt replay archive");
+		}
+		
+		return archive;
+	}
+	
+	/**
+	 * Check the header and index of stored bytes before anything is read through them,
+	 * the index has to fit in front of the data and every game's actions have to lie within the data.
+	 * 
+	 * @return true if the archive can be read safely
+	 */
+	private boolean isValid() {
+		if(this.capacity < 0 || this.count < 0 || this.count > this.capacity
+				|| HEADER_SIZE + ((long)this.capacity * ENTRY_SIZE) > this.end) {
+			return false;
+		}
+		
+		int dataStart = getEntry(this.capacity);
+		for(int id = 0; id < this.count; id++) {
+			int offset = this.getActionsOffset(id);
+			int length = this.getActionCount(id);
+			if(offset < dataStart || length < 0 || offset > this.end - length) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Write the archive, in one go.
+	 * 
+	 * @param out the stream to write to
+	 * @throws IOException if it can't be written
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(this.bytes, 0, this.end);
+	}
+	
+	/**
+	 * Add a recorded game.
+	 * 
+	 * @param recorder the recording
+	 * @param score the game's final score
+	 * @param lines the game's final line count
+	 * @param level the game's final level
+	 * @return the game's id, or -1 if the archive is full
+	 */
+	public int append(ReplayRecorder recorder, int score, int lines, int level) {
+		return this.append(recorder.getSeed(), recorder.getStartLevel(), recorder.getActions(), 0, recorder.getActionCount(),
+						   score, lines, level);
+	}
+	
+	/**
+	 * Add a game.
+	 * 
+	 * @param seed the seed the game's pieces were generated from
+	 * @param startLevel the level the game was started at
+	 * @param actions buffer holding the game's actions
+	 * @param offset the offset of the first action in the buffer
+	 * @param length the number of actions
+	 * @param score the game's final score
+	 * @param lines the game's final line count
+	 * @param level the game's final level
+	 * @return the game's id, or -1 if the archive is full
+	 */
+	public int append(long seed, int startLevel, byte[] actions, int offset, int length, int score, int lines, int level) {
+		if(this.count == this.capacity) {
+			return -1;
+		}
+		
+		if(this.end + length > this.bytes.length) {
+			byte[] bytes = new byte[Math.max(this.bytes.length * 2, this.end + length)];
+			System.arraycopy(this.bytes, 0, bytes, 0, this.end);
+			this.bytes = bytes;
+		}
+		
+		System.arraycopy(actions, offset, this.bytes, this.end, length);
+		
+		int id = this.count;
+		int entry = getEntry(id);
+		putInt(this.bytes, entry + ENTRY_OFFSET, this.end);
+		putInt(this.bytes, entry + ENTRY_LENGTH, length);
+		putLong(this.bytes, entry + ENTRY_SEED, seed);
+		this.bytes[entry + ENTRY_START] = (byte)startLevel;
+		putShort(this.bytes, entry + ENTRY_LEVEL, level);
+		putInt(this.bytes, entry + ENTRY_SCORE, score);
+		putInt(this.bytes, entry + ENTRY_LINES, lines);
+		
+		this.end += length;
+		this.count++;
+		this.updateHeader();
+		
+		return id;
+	}
+	
+	/**
+	 * Write the count and end into the header.
+	 */
+	private void updateHeader() {
+		putInt(this.bytes, COUNT_OFFSET, this.count);
+		putInt(this.bytes, END_OFFSET, this.end);
+	}
+	
+	/**
+	 * @param id the game id
+	 * @return the offset of the game's index entry
+	 */
+	private static int getEntry(int id) {
+		return HEADER_SIZE + (id * ENTRY_SIZE);
+	}
+	
+	////////////////////
+	
+	/**
+	 * @return the number of games
+	 */
+	public int getGameCount() {
+		return this.count;
+	}
+	
+	/**
+	 * @return the most games the archive can hold
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+	
+	/**
+	 * @return the archive bytes, read actions directly from here with getActionsOffset and getActionCount
+	 */
+	public byte[] getBuffer() {
+		return this.bytes;
+	}
+	
+	/**
+	 * @param id the game id
+	 * @return the offset of the game's first action in the buffer
+	 */
+	public int getActionsOffset(int id) {
+		return getInt(this.bytes, getEntry(id) + ENTRY_OFFSET);
+	}
+	
+	/**
+	 * @param id the game id
+	 * @return the number of actions in the game
+	 */
+	public int getActionCount(int id) {
+		return getInt(this.bytes, getEntry(id) + ENTRY_LENGTH);
+	}
+	
+	/**
+	 * @param id the game id
+	 * @return the seed the game's pieces were generated from
+	 */
+	public long getSeed(int id) {
+		return getLong(this.bytes, getEntry(id) + ENTRY_SEED);
+	}
+	
+	/**
+	 * @param id the game id
+	 * @return the level the game was started at
+	 */
+	public int getStartLevel(int id) {
+		return this.bytes[getEntry(id) + ENTRY_START] & 0xff;
+	}
+	
+	/**
+	 * @param id the game id
+	 * @return the game's final level
+	 */
+	public int getLevel(int id) {
+		return getShort(this.bytes, getEntry(id) + ENTRY_LEVEL);
+	}
+	
+	/**
+	 * @param id the game id
+	 * @return the game's final score
+	 */
+	public int getScore(int id) {
+		return getInt(this.bytes, getEntry(id) + ENTRY_SCORE);
+	}
+	
+	/**
+	 * @param id the game id
+	 * @return the game's final line count
+	 */
+	public int getLines(int id) {
+		return getInt(this.bytes, getEntry(id) + ENTRY_LINES);
+	}
+	
+	////////////////////
+	
+	private static int getInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+			 | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+	}
+	
+	private static void putInt(byte[] bytes, int offset, int value) {
+		bytes[offset]	  = (byte)(value >> 24);
+		bytes[offset + 1] = (byte)(value >> 16);
+		bytes[offset + 2] = (byte)(value >> 8);
+		bytes[offset + 3] = (byte)value;
+	}
+	
+	private static int getShort(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
+	}
+	
+	private static void putShort(byte[] bytes, int offset, int value) {
+		bytes[offset]	  = (byte)(value >> 8);
+		bytes[offset + 1] = (byte)value;
+	}
+	
+	private static long getLong(byte[] bytes, int offset) {
+		return ((long)getInt(bytes, offset) << 32) | (getInt(bytes, offset + 4) & 0xffffffffL);
+	}
+	
+	private static void putLong(byte[] bytes, int offset, long value) {
+		putInt(bytes, offset, (int)(value >> 32));
+		putInt(bytes, offset + 4, (int)value);
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.replay;
+
+/**
+ * Records a game as it's played, as the seed of its pieces, its start level, and every action in order,
+ * a byte each, gravity ticks included.  That's all it takes to replay the game exactly on a GameEngine.
+ * 
+ * The board size isn't recorded, recordings are replayed on the standard board, so only games on it should be recorded.
+ * The buffer grows as needed and is reused from game to game.
+ */
+public class ReplayRecorder {
+	
+	private static final int INITIAL_CAPACITY = 1024;	// actions, a short game
+	
+	private long seed;				// the seed the game's pieces were generated from
+	private int startLevel;			// the level the game was started at
+	private byte[] actions = new byte[INITIAL_CAPACITY];	// the actions so far
+	private int actionCount;		// the number of actions so far
+	private boolean recording;		// whether a game is being recorded
+	
+	/**
+	 * Start recording a new game, forgetting the last one.
+	 * 
+	 * @param seed the seed the game's pieces are generated from
+	 * @param startLevel the level the game starts at
+	 */
+	public void start(long seed, int startLevel) {
+		this.seed = seed;
+		this.startLevel = startLevel;
+		this.actionCount = 0;
+		this.recording = true;
+	}
+	
+	/**
+	 * Record an action, if recording.
+	 * 
+	 * @param action the action, one of the action constants
+	 */
+	public void record(int action) {
+		if(!this.recording) {
+			return;
+		}
+		
+		if(this.actionCount == this.actions.length) {
+			byte[] actions = new byte[this.actions.length * 2];
+			System.arraycopy(this.actions, 0, actions, 0, this.actionCount);
+			this.actions = actions;
+		}
+		
+		this.actions[this.actionCount++] = (byte)action;
+	}
+	
+	/**
+	 * Stop recording, keeping what was recorded.
+	 */
+	public void stop() {
+		this.recording = false;
+	}
+	
+	/**
+	 * Throw away the recording, for a game that can't be replayed from its start (such as one restored from a snapshot).
+	 */
+	public void clear() {
+		this.recording = false;
+		this.actionCount = 0;
+		this.seed = 0;
+	}
+	
+	/**
+	 * @return true if there's a recording, finished or not
+	 */
+	public boolean hasRecording() {
+		return this.actionCount > 0 || this.recording;
+	}
+	
+	/**
+	 * @return the seed the game's pieces were generated from
+	 */
+	public long getSeed() {
+		return this.seed;
+	}
+	
+	/**
+	 * @return the level the game was started at
+	 */
+	public int getStartLevel() {
+		return this.startLevel;
+	}
+	
+	/**
+	 * @return the buffer of actions, the first getActionCount of them are the recording
+	 */
+	public byte[] getActions() {
+		return this.actions;
+	}
+	
+	/**
+	 * @return the number of actions recorded
+	 */
+	public int getActionCount() {
+		return this.actionCount;
+	}
+}
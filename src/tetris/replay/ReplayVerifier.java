@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.replay;
+
+import tetris.TetrisConstants;
+import tetris.model.GameEngine;
+
+/**
+ * Checks submitted scores against their recordings, by replaying the recording and comparing the result with the claim.
+ * 
+ * A replay is just the engine, no drop thread, no painting, no listener and no timing, the recorded ticks
+ * stand in for the drop thread.  The engine is reused from game to game and nothing is allocated,
+ * so a verifier gets through a great many submissions a second.  Not synchronized, use one per thread.
+ */
+public class ReplayVerifier {
+	
+	public static final int VALID			= 0;	// the recording plays out to the claimed score, lines and level
+	public static final int BAD_START		= 1;	// the start level isn't one a game can be started at
+	public static final int BAD_ACTION		= 2;	// the recording has something that isn't an action
+	public static final int NOT_OVER		= 3;	// the recording ends before the game does
+	public static final int ACTIONS_AFTER_END = 4;	// the recording goes on after the game was over
+	public static final int WRONG_SCORE		= 5;	// the game doesn't score what was claimed
+	public static final int WRONG_LINES		= 6;	// the game doesn't clear the lines claimed
+	public static final int WRONG_LEVEL		= 7;	// the game doesn't reach the level claimed
+	public static final int BAD_RECORDING	= 8;	// the offset and length don't lie within the actions buffer
+	
+	private static final int MAX_START_LEVEL = 9;	// games are started at levels 0-9
+	
+	private GameEngine engine = new GameEngine();	// the engine games are replayed on
+	
+	/**
+	 * Verify a game in an archive against the result stored with it.
+	 * 
+	 * @param archive the archive
+	 * @param id the game's id
+	 * @return VALID, or why the game isn't
+	 */
+	public int verify(ReplayArchive archive, int id) {
+		return this.verify(archive.getSeed(id), archive.getStartLevel(id),
+						   archive.getBuffer(), archive.getActionsOffset(id), archive.getActionCount(id),
+						   archive.getScore(id), archive.getLines(id), archive.getLevel(id));
+	}
+	
+	/**
+	 * Verify a submitted game.
+	 * 
+	 * @param seed the seed the game's pieces were generated from
+	 * @param startLevel the level the game was started at
+	 * @param actions buffer holding the game's actions
+	 * @param offset the offset of the first action in the buffer
+	 * @param length the number of actions
+	 * @param score the claimed final score
+	 * @param lines the claimed line count
+	 * @param level the claimed final level
+	 * @return VALID, or why the game isn't
+	 */
+	public int verify(long seed, int startLevel, byte[] actions, int offset, int length, int score, int lines, int level) {
+		if(offset < 0 || length < 0 || offset > actions.length - length) {
+			return BAD_RECORDING;
+		} else if(startLevel < 0 || startLevel > MAX_START_LEVEL) {
+			return BAD_START;
+		}
+		
+		for(int i = offset; i < offset + length; i++) {
+			if(actions[i] < TetrisConstants.ACTION_LEFT || actions[i] > TetrisConstants.ACTION_TICK) {
+				return BAD_ACTION;
+			}
+		}
+		
+		GameEngine engine = this.engine;
+		int played = replay(engine, seed, startLevel, actions, offset, length);
+		
+		if(!engine.isGameOver()) {
+			return NOT_OVER;
+		} else if(played < length) {
+			return ACTIONS_AFTER_END;
+		} else if(engine.getScore() != score) {
+			return WRONG_SCORE;
+		} else if(engine.getLineCount() != lines) {
+			return WRONG_LINES;
+		} else if(engine.getLevel() != level) {
+			return WRONG_LEVEL;
+		}
+		
+		return VALID;
+	}
+	
+	/**
+	 * Replay a recording on an engine, up to the end of the recording or the end of the game.
+	 * Whatever listener the engine has gets the game's events.
+	 * 
+	 * @param engine the engine to replay on
+	 * @param seed the seed the game's pieces were generated from
+	 * @param startLevel the level the game was started at
+	 * @param actions buffer holding the game's actions
+	 * @param offset the offset of the first action in the buffer
+	 * @param length the number of actions
+	 * @return the number of actions played
+	 */
+	public static int replay(GameEngine engine, long seed, int startLevel, byte[] actions, int offset, int length) {
+		engine.getRandom().setSeed(seed);
+		engine.newGame(startLevel);
+		
+		int i = 0;
+		while(i < length && !engine.isGameOver()) {
+			engine.performAction(actions[offset + i]);
+			i++;
+		}
+		
+		return i;
+	}
+	
+	/**
+	 * @return the engine the last game was replayed on, as it was left
+	 */
+	public GameEngine getEngine() {
+		return this.engine;
+	}
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.microedition.io.Connector;
+import javax.microedition.io.file.FileConnection;
+
+/**
+ * A store backed by a single file of fixed-size slots, through the JSR-75 FileConnection API.
+ * 
+ * Each slot is a 4 byte length followed by slotSize bytes of data, so slot n is always at the same offset
+ * and can be read or rewritten without touching the rest of the file.  This makes it suitable for
+ * keeping large numbers of results (one per slot) as well as the single leaderboard or snapshot.
+ * 
+ * Writes to consecutive slots are batched in memory and written out with a single stream write and flush
+ * once the batch fills up, or on flush/close.  Writing past the end of the file fills any slots skipped over with empty ones.  The ScoreStore/StateStore methods use slot 0 and flush
+ * immediately, since they are expected to be durable once they return.
+ */
+public class FileStore implements ScoreStore, StateStore {
+	
+	private static final int LENGTH_SIZE = 4;	// bytes of length at the start of each slot
+	
+	private static final byte[] ZEROS = new byte[256];	// written out to fill skipped slots
+	
+	private String url;				// file:/// url of the file
+	private int slotSize;			// data bytes per slot
+	private int slotStride;			// total bytes per slot, including the length
+	
+	private FileConnection file;	// the open file, null until first used
+	private byte[] lengthBytes = new byte[LENGTH_SIZE];	// scratch for reading a slot length
+	private long fileSize;			// number of bytes already written out to the file
+	
+	private byte[] batch;			// pending writes, consecutive slots laid out as in the file
+	private int batchStart;			// the first slot in the batch
+	private int batchCount;			// number of slots in the batch
+	private int batchSlots;			// the most slots to batch before writing out
+	
+	/**
+	 * Make a new file store.  The file isn't opened until first used.
+	 * 
+	 * @param url the file:/// url of the file, created if it doesn't exist
+	 * @param slotSize the number of data bytes in each slot
+	 * @param batchSlots the number of consecutive slot writes to batch before writing to the file
+	 */
+	public FileStore(String url, int slotSize, int batchSlots) {
+		this.url = url;
+		this.slotSize = slotSize;
+		this.slotStride = LENGTH_SIZE + slotSize;
+		this.batchSlots = Math.max(batchSlots, 1);
+		this.batch = new byte[this.batchSlots * this.slotStride];
+	}
+	
+	/**
+	 * Open the file if not already open, creating it if necessary.
+	 * @throws IOException if the file can't be opened or created
+	 */
+	private void open() throws IOException {
+		if(null != this.file) {
+			return;
+		}
+		
+		this.file = (FileConnection)Connector.open(this.url, Connector.READ_WRITE);
+		if(!this.file.exists()) {
+			this.file.create();
+		}
+		
+		this.fileSize = this.file.fileSize();
+	}
+	
+	/**
+	 * @return the number of slots in the store, including any not yet written out
+	 * @throws IOException if the file can't be opened
+	 */
+	public synchronized long getSlotCount() throws IOException {
+		this.open();
+		
+		return Math.max(this.fileSize / this.slotStride, (long)this.batchStart + this.batchCount);
+	}
+	
+	/**
+	 * Read a slot.
+	 * 
+	 * @param slot the slot index
+	 * @param buffer the buffer to read into
+	 * @return the number of bytes read, 0 if the slot is empty, doesn't exist, or doesn't fit the buffer
+	 * @throws IOException if the file can't be read
+	 */
+	public synchronized int readSlot(int slot, byte[] buffer) throws IOException {
+		this.open();
+		
+		if(slot >= this.batchStart && slot < this.batchStart + this.batchCount) {
+			// still in the batch, read it from there
+			int offset = (slot - this.batchStart) * this.slotStride;
+			int length = getInt(this.batch, offset);
+			if(length > buffer.length) {
+				return 0;
+			}
+			
+			System.arraycopy(this.batch, offset + LENGTH_SIZE, buffer, 0, length);
+			return length;
+		}
+		
+		long slotOffset = (long)slot * this.slotStride;
+		if(slotOffset + LENGTH_SIZE > this.fileSize) {
+			return 0;
+		}
+		
+		InputStream in = this.file.openInputStream();
+		try {
+			skipFully(in, slotOffset);
+			
+			// the length, then the data
+			readFully(in, this.lengthBytes, LENGTH_SIZE);
+			int length = getInt(this.lengthBytes, 0);
+			if(length < 0 || length > buffer.length || length > this.slotSize
+					|| slotOffset + LENGTH_SIZE + length > this.fileSize) {
+				return 0;
+			}
+			
+			readFully(in, buffer, length);
+			return length;
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Write a slot.  Consecutive slot writes are batched, the slot may not be in the file until the batch is flushed.
+	 * 
+	 * @param slot the slot index
+	 * @param buffer the bytes to write
+	 * @param length the number of bytes to write, no more than the slot size
+	 * @throws IOException if the file can't be written
+	 */
+	public synchronized void writeSlot(int slot, byte[] buffer, int length) throws IOException {
+		if(length > this.slotSize) {
+			throw new IOException("slot overflow");
+		}
+		
+		this.open();
+		
+		boolean inBatch = slot >= this.batchStart && slot < this.batchStart + this.batchCount;
+		boolean extendsBatch = (0 == this.batchCount || slot == this.batchStart + this.batchCount)
+							   && this.batchCount < this.batchSlots;
+		
+		if(!inBatch && !extendsBatch) {
+			// not next to the batch, write out what we have and start a new one
+			this.flush();
+		}
+		
+		if(0 == this.batchCount) {
+			this.batchStart = slot;
+		}
+		
+		int index = slot - this.batchStart;
+		int offset = index * this.slotStride;
+		putInt(this.batch, offset, length);
+		System.arraycopy(buffer, 0, this.batch, offset + LENGTH_SIZE, length);
+		
+		if(index >= this.batchCount) {
+			this.batchCount = index + 1;
+		}
+		
+		if(this.batchCount == this.batchSlots) {
+			this.flush();
+		}
+	}
+	
+	/**
+	 * Write any batched slots out to the file, in one write.
+	 * If the batch starts past the end of the file, the gap is zeroed first so the slots in it read as empty.
+	 * @throws IOException if the file can't be written
+	 */
+	public synchronized void flush() throws IOException {
+		if(0 == this.batchCount) {
+			return;
+		}
+		
+		long batchOffset = (long)this.batchStart * this.slotStride;
+		long writeOffset = Math.min(batchOffset, this.fileSize);
+		
+		OutputStream out = this.file.openOutputStream(writeOffset);
+		try {
+			for(long gap = batchOffset - writeOffset; gap > 0; ) {
+				int count = (int)Math.min(gap, ZEROS.length);
+				out.write(ZEROS, 0, count);
+				gap -= count;
+			}
+			
+			out.write(this.batch, 0, this.batchCount * this.slotStride);
+			out.flush();
+		} finally {
+			out.close();
+		}
+		
+		this.fileSize = Math.max(this.fileSize, batchOffset + (this.batchCount * this.slotStride));
+		this.batchCount = 0;
+	}
+	
+	public int readScores(byte[] buffer) throws IOException {
+		return this.readSlot(0, buffer);
+	}
+	
+	public void writeScores(byte[] buffer, int length) throws IOException {
+		synchronized(this) {
+			this.writeSlot(0, buffer, length);
+			this.flush();
+		}
+	}
+	
+	public int readState(byte[] buffer) throws IOException {
+		return this.readSlot(0, buffer);
+	}
+	
+	public void writeState(byte[] buffer, int length) throws IOException {
+		synchronized(this) {
+			this.writeSlot(0, buffer, length);
+			this.flush();
+		}
+	}
+	
+	public void clearState() throws IOException {
+		synchronized(this) {
+			this.writeSlot(0, this.batch, 0);
+			this.flush();
+		}
+	}
+	
+	public synchronized void close() {
+		try {
+			if(null != this.file) {
+				this.flush();
+				this.file.close();
+				this.file = null;
+			}
+		} catch(IOException ioe) {
+			// closing anyway
+		}
+	}
+	
+	////////////////////
+	
+	private static void skipFully(InputStream in, long count) throws IOException {
+		while(count > 0) {
+			long skipped = in.skip(count);
+			if(skipped <= 0) {
+				throw new IOException("unexpected end of file");
+			}
+			
+			count -= skipped;
+		}
+	}
+	
+	private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+		int offset = 0;
+		while(offset < length) {
+			int read = in.read(buffer, offset, length - offset);
+			if(read < 0) {
+				throw new IOException("unexpected end of file");
+			}
+			
+			offset += read;
+		}
+	}
+	
+	private static int getInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+			 | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+	}
+	
+	private static void putInt(byte[] bytes, int offset, int value) {
+		bytes[offset]	  = (byte)(value >> 24);
+		bytes[offset + 1] = (byte)(value >> 16);
+		bytes[offset + 2] = (byte)(value >> 8);
+		bytes[offset + 3] = (byte)value;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.store;
+
+/**
+ * A ScoreStore or StateStore that just keeps the bytes in memory.
+ * Nothing survives the app, but it needs no rms, so it's handy off the device.
+ */
+public class MemoryStore implements ScoreStore, StateStore {
+	
+	private byte[] data = new byte[0];	// the stored bytes
+	
+	/**
+	 * Copy out the stored bytes.
+	 * 
+	 * @param buffer the buffer to copy into
+	 * @return the number of bytes copied, 0 if nothing stored or it doesn't fit
+	 */
+	private synchronized int read(byte[] buffer) {
+		if(this.data.length > buffer.length) {
+			return 0;
+		}
+		
+		System.arraycopy(this.data, 0, buffer, 0, this.data.length);
+		return this.data.length;
+	}
+	
+	/**
+	 * Replace the stored bytes with a copy.
+	 * 
+	 * @param buffer the bytes to copy in
+	 * @param length the number of bytes to copy
+	 */
+	private synchronized void write(byte[] buffer, int length) {
+		if(this.data.length != length) {
+			this.data = new byte[length];
+		}
+		
+		System.arraycopy(buffer, 0, this.data, 0, length);
+	}
+	
+	public int readScores(byte[] buffer) {
+		return this.read(buffer);
+	}
+	
+	public void writeScores(byte[] buffer, int length) {
+		this.write(buffer, length);
+	}
+	
+	public int readState(byte[] buffer) {
+		return this.read(buffer);
+	}
+	
+	public void writeState(byte[] buffer, int length) {
+		this.write(buffer, length);
+	}
+	
+	public void clearState() {
+		this.write(this.data, 0);
+	}
+	
+	public void close() {
+		// nothing to release
+	}
+}
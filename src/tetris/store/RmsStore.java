@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.store;
+
+import java.io.IOException;
+
+import javax.microedition.rms.RecordStore;
+
+/**
+ * A ScoreStore or StateStore backed by a RecordStore holding a single record.
+ * 
+ * The record is always the first one added to the store, so it is accessed directly by its known id,
+ * never by enumerating.  The RecordStore isn't opened until the first read or write.
+ */
+public class RmsStore implements ScoreStore, StateStore {
+	
+	private static final int RECORD_ID = 1;	// the only record in the store gets the first id
+	private static final byte[] EMPTY = new byte[0];	// written to clear the record
+	
+	private String storeName;		// the name of the RecordStore
+	private RecordStore store;		// the RecordStore, null until opened
+	private boolean recordExists;	// whether the record has been added to the store
+	
+	/**
+	 * Make a new store.  Doesn't touch rms until it's used.
+	 * @param storeName the name of the RecordStore to use
+	 */
+	public RmsStore(String storeName) {
+		this.storeName = storeName;
+	}
+	
+	/**
+	 * Open the record store if not already open.
+	 * @throws IOException if the record store can't be opened
+	 */
+	private void open() throws IOException {
+		if(null != this.store) {
+			return;
+		}
+		
+		try {
+			this.store = RecordStore.openRecordStore(this.storeName, true);
+			this.recordExists = this.store.getNumRecords() > 0;
+		} catch(Exception e) {
+			throw new IOException(e.toString());
+		}
+	}
+	
+	/**
+	 * Read the record.
+	 * 
+	 * @param buffer the buffer to read into
+	 * @return the number of bytes read, 0 if nothing is stored or it doesn't fit
+	 * @throws IOException if the record store can't be read
+	 */
+	private int readRecord(byte[] buffer) throws IOException {
+		this.open();
+		
+		if(!this.recordExists) {
+			return 0;
+		}
+		
+		try {
+			int length = this.store.getRecordSize(RECORD_ID);
+			if(length > buffer.length) {
+				return 0;
+			}
+			
+			return this.store.getRecord(RECORD_ID, buffer, 0);
+		} catch(Exception e) {
+			throw new IOException(e.toString());
+		}
+	}
+	
+	/**
+	 * Write the record, in one go.
+	 * 
+	 * @param buffer the bytes to write
+	 * @param length the number of bytes to write
+	 * @throws IOException if the record store can't be written
+	 */
+	private void writeRecord(byte[] buffer, int length) throws IOException {
+		this.open();
+		
+		try {
+			if(!this.recordExists) {
+				// first record, so it gets the known id
+				this.store.addRecord(buffer, 0, length);
+				this.recordExists = true;
+			} else {
+				this.store.setRecord(RECORD_ID, buffer, 0, length);
+			}
+		} catch(Exception e) {
+			throw new IOException(e.toString());
+		}
+	}
+	
+	public int readScores(byte[] buffer) throws IOException {
+		return this.readRecord(buffer);
+	}
+	
+	public void writeScores(byte[] buffer, int length) throws IOException {
+		this.writeRecord(buffer, length);
+	}
+	
+	public int readState(byte[] buffer) throws IOException {
+		return this.readRecord(buffer);
+	}
+	
+	public void writeState(byte[] buffer, int length) throws IOException {
+		this.writeRecord(buffer, length);
+	}
+	
+	public void clearState() throws IOException {
+		if(this.recordExists) {
+			// a zero length record reads back as nothing stored
+			this.writeRecord(EMPTY, 0);
+		}
+	}
+	
+	public void close() {
+		try {
+			if(null != this.store) {
+				this.store.closeRecordStore();
+				this.store = null;
+			}
+		} catch(Exception e) {
+			// closing anyway
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.store;
+
+import java.io.IOException;
+
+/**
+ * Storage for the snapshot of a suspended game.
+ */
+public interface StateStore {
+	
+	/**
+	 * Read the stored snapshot.
+	 * 
+	 * @param buffer the buffer to read into
+	 * @return the number of bytes read, 0 if nothing is stored or the stored snapshot doesn't fit the buffer
+	 * @throws IOException if the storage can't be read
+	 */
+	public int readState(byte[] buffer) throws IOException;
+	
+	/**
+	 * Replace the stored snapshot.
+	 * 
+	 * @param buffer the bytes to store
+	 * @param length the number of bytes to store
+	 * @throws IOException if the storage can't be written
+	 */
+	public void writeState(byte[] buffer, int length) throws IOException;
+	
+	/**
+	 * Clear the stored snapshot, a following read returns 0.
+	 * @throws IOException if the storage can't be written
+	 */
+	public void clearState() throws IOException;
+	
+	/**
+	 * Release the underlying storage, anything written is flushed first.
+	 */
+	public void close();
+}
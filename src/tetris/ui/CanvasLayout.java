@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.ui;
+
+import javax.microedition.lcdui.Font;
+
+import tetris.TetrisConstants;
+import tetris.TetrisMIDlet;
+import tetris.model.BoardConfig;
+
+/**
+ * The layout of the canvas for one screen size: the block size, where the board and info panel go,
+ * and the boxes built to fit.  Worked out once per size and kept, so the canvas can switch between
+ * sizes (rotating the screen, going full screen) without working anything out or making new boxes again.
+ */
+class CanvasLayout {
+	
+	int screenWidth;			// total screen width (pixels) this layout is for
+	int screenHeight;			// total screen height (pixels) this layout is for
+	
+	int boardX;					// x coordinate of the upper left corner of the playing grid on the canvas
+	int boardY;					// y coordinate of the upper left corner of the playing grid on the canvas
+	int boardWidth;				// width (pixels) of the playing grid on the canvas
+	int boardHeight;			// height (pixels) of the playing grid on the canvas
+	int viewableWidth;			// used width once layout calculations are made (pixels)
+	int viewableHeight;			// used height once layout calculations are made (pixels)
+	int blockSize;				// the dimension of a grid block, same for width and height
+	int infoPanelX;				// the x coordinate of the left edge of the right info panel (scores, level, etc.)
+	int infoPanelWidth;			// the width (pixels) of the info panel
+	
+	InfoBox scoreBox;			// box showing the score
+	InfoBox lineCountBox;		// box showing the number of lines cleared
+	InfoBox levelBox;			// box showing the current level
+	NextPieceBox nextPieceBox;	// box showing the next piece
+	TitleBox titleBox;			// box showing the title screen, displayed when no game running
+	
+	/**
+	 * A lot of one-time ugliness.  Don't look in here...
+	 * Inspects the screen size/font, etc... and sets variables that determine the layout.
+	 * The attempt here is to make things relative so that it will appear OK on different platforms.
+	 * 
+	 * @param screenWidth the screen width (pixels)
+	 * @param screenHeight the screen height (pixels)
+	 * @param font the font used throughout
+	 * @param game the game, for the initial box values
+	 */
+	CanvasLayout(int screenWidth, int screenHeight, Font font, TetrisMIDlet game) {
+		this.screenWidth = screenWidth;
+		this.screenHeight = screenHeight;
+		
+		// get the minimum width for the info panel by using the width of a sample score
+		int sampleLabelWidth = font.stringWidth("10000000");
+		this.infoPanelWidth = sampleLabelWidth + (sampleLabelWidth / 4);  // 1.25 * sampleLabelWidth so box is a little wider 
+		int infoBoxHeight = font.getHeight() * 2;						  // make the box twice has high as the font
+		
+		// get the width remaining on the screen minus the info panel
+		int remainderWidth = screenWidth - this.infoPanelWidth;
+		
+		// blocks should be a square, so we get the minimum possible dimension and use it for both
+		BoardConfig boardConfig = game.getBoardConfig();
+		int blockWidth = remainderWidth / boardConfig.getWidth();
+		int blockHeight = screenHeight / boardConfig.getViewableRows();	// only use visible rows in calculation
+		this.blockSize = Math.max(1, Math.min(blockWidth, blockHeight));
+		
+		// dimension of the board (grid area) is the size of the block * the dimension
+		this.boardWidth = this.blockSize * boardConfig.getWidth();
+		this.boardHeight = this.blockSize * boardConfig.getViewableRows();
+		
+		// get the used dimensions of the screen
+		this.viewableWidth = this.boardWidth + this.infoPanelWidth;
+		this.viewableHeight = this.boardHeight;
+		
+		// center the board in the available space
+		this.boardX = (screenWidth - this.viewableWidth) / 2;
+		this.boardY = (screenHeight - this.viewableHeight) / 2;
+		this.infoPanelX = this.boardX + this.boardWidth;
+		
+		// NextPieceBox is 1.5 height for the next piece, plus a box height for each further preview,
+		// but gives up preview room rather than run off the board
+		int nextPieceBoxHeight = ((infoBoxHeight * 3) / 2) + ((TetrisConstants.PREVIEW_PIECES - 1) * infoBoxHeight);
+		nextPieceBoxHeight = Math.max((infoBoxHeight * 3) / 2, Math.min(nextPieceBoxHeight, this.viewableHeight - (infoBoxHeight * 3)));
+		
+		// info boxes stacked on top of each other, get their total height
+		int infoBoxTotalHeight = (infoBoxHeight * 3) + nextPieceBoxHeight;
+		int remainderHeight = this.viewableHeight - infoBoxTotalHeight;
+		int infoBoxY = this.boardY + (remainderHeight / 2);
+		
+		// build score box on top
+		this.scoreBox = new InfoBox(this.infoPanelX, infoBoxY, this.infoPanelWidth, infoBoxHeight,
+									TetrisConstants.COLOR_BLACK, TetrisConstants.COLOR_LIGHT_GREY,
+									font, "score", game.getScore());
+
+		// level box under score box
+		infoBoxY += infoBoxHeight;
+		this.levelBox = new InfoBox(this.infoPanelX, infoBoxY, this.infoPanelWidth, infoBoxHeight,
+									TetrisConstants.COLOR_BLACK, TetrisConstants.COLOR_LIGHT_GREY,
+									font, "level", game.getLevel());
+		
+		// line box under level box
+		infoBoxY += infoBoxHeight;
+		this.lineCountBox = new InfoBox(this.infoPanelX, infoBoxY, this.infoPanelWidth, infoBoxHeight,
+										TetrisConstants.COLOR_BLACK, TetrisConstants.COLOR_LIGHT_GREY,
+										font, "lines", game.getLineCount());
+		
+		// next piece box under level box
+		infoBoxY += infoBoxHeight;
+		this.nextPieceBox = new NextPieceBox(this.infoPanelX, infoBoxY, this.infoPanelWidth, nextPieceBoxHeight,
+											 TetrisConstants.COLOR_BLACK, TetrisConstants.COLOR_LIGHT_GREY, font,
+											 TetrisConstants.PREVIEW_PIECES);
+
+		// longest string in the title box is possibly the hi score line
+		// so we ensure that it's wide enough to accomodate an impossibly high score
+		int titleBoxWidth = font.stringWidth("hi score: 1000000000000");
+		
+		// title box half the viewable height, or the height of four lines, whichever is more
+		int titleBoxHeight = (this.viewableHeight / 2);
+		titleBoxHeight = Math.max(titleBoxHeight, font.getHeight() * 4);
+		
+		// center the title box int he available space
+		int titleBoxX = this.boardX + ((this.boardWidth - titleBoxWidth) / 2);
+		titleBoxX = Math.max(titleBoxX, 0);
+		int titleBoxY = this.boardY + ((this.boardHeight - titleBoxHeight) / 2);
+		titleBoxY = Math.max(titleBoxY, 0);
+
+		this.titleBox = new TitleBox(titleBoxX, titleBoxY, titleBoxWidth, titleBoxHeight,
+									 TetrisConstants.COLOR_BLACK, TetrisConstants.COLOR_LIGHT_GREY,
+									 font);
+	}
+	
+	/**
+	 * @param screenWidth a screen width (pixels)
+	 * @param screenHeight a screen height (pixels)
+	 * @return true if this is the layout for a screen of that size
+	 */
+	boolean isFor(int screenWidth, int screenHeight) {
+		return this.screenWidth == screenWidth && this.screenHeight == screenHeight;
+	}
+}
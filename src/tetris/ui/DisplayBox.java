@@ -56,6 +56,17 @@ public class DisplayBox {
 		this.bgColor = bgColor;
 	}
 	
+	/**
+	 * Move the box, keeping its size.
+	 * 
+	 * @param x x coordinate of upper left of the box
+	 * @param y y coordinate of upper left of the box
+	 */
+	public void setPosition(int x, int y) {
+		this.x = x;
+		this.y = y;
+	}
+	
 	/**
 	 * Paint this box on the given Graphics object.
 	 * @param g the Graphics on which to paint.
@@ -21,19 +21,33 @@ package tetris.ui;
 
 import javax.microedition.lcdui.Font;
 import javax.microedition.lcdui.Graphics;
+import javax.microedition.lcdui.Image;
 
 import tetris.TetrisConstants;
+import tetris.model.PieceShapes;
 
 /**
- * A DisplayBox that shows the next piece.
+ * A DisplayBox that shows the upcoming pieces, a slot for each, the next piece in the top slot.
+ * 
+ * The pieces are drawn from PieceShapes, as they'll appear on the board.  Each piece type is rendered
+ * once into an image the size of a slot, and a slot is shown by blitting its piece's image.
+ * Only the slots whose piece changed are blitted, the caption and border are only painted with the whole box.
  */
 public class NextPieceBox extends DisplayBox {
 	
-	private int pieceType;		// the type of the piece to display
+	private static final int SLOT_COLUMNS	= 5;	// a slot is a grid of blocks, fits any piece as it spawns with room round it
+	private static final int SLOT_ROWS		= 3;
+	
 	private Font captionFont;	// the font to write the caption in
 	
-	private int leftBlockX;		// left most position of the mini-grid we display the next piece
-	private int blockSize;		// the dimension of a block to fit into the display box.
+	private int[] pieceTypes;	// the type of the piece in each slot
+	private boolean[] changed;	// whether each slot has changed since it was last painted
+	
+	private int slotX;			// x coordinate of the left of the slots
+	private int slotY;			// y coordinate of the top of the first slot
+	private int slotWidth;		// width of a slot (pixels)
+	private int slotHeight;		// height of a slot (pixels)
+	private Image[] pieceImages;	// each piece type rendered to fill a slot, indexed by type, 0 is an empty slot
 	
 	/**
 	 * Make a new NextPieceBox.
@@ -45,47 +59,108 @@ public class NextPieceBox extends DisplayBox {
 	 * @param fgColor foreground color, used in this class just for border
 	 * @param bgColor background color
 	 * @param captionFont the font to write the "next" caption in
+	 * @param numSlots the number of upcoming pieces to show
 	 */
 	public NextPieceBox(int x, int y, int width, int height,
 						int fgColor, int bgColor,
-						Font captionFont) {
+						Font captionFont, int numSlots) {
 		super(x, y, width, height, fgColor, bgColor);
 		
 		this.captionFont = captionFont;
+		this.pieceTypes = new int[numSlots];
+		this.changed = new boolean[numSlots];
 	
 		this.setupLayout();
+		this.renderPieces();
 	}
 	
 	/**
-	 * One time method to set up the layout in the box, ie how big the blocks are, positioning, etc...
+	 * One time method to set up the layout in the box, ie how big the slots are, positioning, etc...
 	 */
 	private void setupLayout() {
-		// as if the box was composed of a 6x6 grid, will fit any piece with a block on either side
-		final int gridSize = 6;
-		
+		// slots stacked under the caption, inside the border
+		this.slotX = this.x + 1;
+		this.slotY = this.y + this.captionFont.getHeight();
+		this.slotWidth = Math.max(1, this.width - 1);
+		this.slotHeight = Math.max(1, (this.y + this.height - this.slotY) / this.pieceTypes.length);
+	}
+	
+	/**
+	 * Render each piece type into its own slot image, one time.
+	 */
+	private void renderPieces() {
 		// blocksize is minimum of the grid we can display given our size
-		this.blockSize = Math.min(this.width / gridSize, this.height / gridSize);
-		
-		// center the grid in the display box by specifying its left most position
-		this.leftBlockX = this.x + ((this.width - (this.blockSize * gridSize)) / 2);
+		int blockSize = Math.max(1, Math.min(this.slotWidth / SLOT_COLUMNS, this.slotHeight / SLOT_ROWS));
+		
+		this.pieceImages = new Image[TetrisConstants.NUM_PIECE_TYPES + 1];
+		for(int type = 0; type <= TetrisConstants.NUM_PIECE_TYPES; type++) {
+			Image image = Image.createImage(this.slotWidth, this.slotHeight);
+			Graphics g = image.getGraphics();
+			g.setColor(this.bgColor);
+			g.fillRect(0, 0, this.slotWidth, this.slotHeight);
+			
+			if(type > 0) {
+				// find the piece's extent, so it can be centered
+				int minX = 0, maxX = 0, minY = 0, maxY = 0;
+				for(int i = 0; i < TetrisConstants.FOUR_BLOCKS; i++) {
+					minX = Math.min(minX, PieceShapes.getBlockX(type, 0, i));
+					maxX = Math.max(maxX, PieceShapes.getBlockX(type, 0, i));
+					minY = Math.min(minY, PieceShapes.getBlockY(type, 0, i));
+					maxY = Math.max(maxY, PieceShapes.getBlockY(type, 0, i));
+				}
+				
+				int originX = ((this.slotWidth - ((maxX - minX + 1) * blockSize)) / 2) - (minX * blockSize);
+				int originY = ((this.slotHeight - ((maxY - minY + 1) * blockSize)) / 2) - (minY * blockSize);
+				
+				int color = getPieceColor(type);
+				for(int i = 0; i < TetrisConstants.FOUR_BLOCKS; i++) {
+					int blockX = originX + (PieceShapes.getBlockX(type, 0, i) * blockSize);
+					int blockY = originY + (PieceShapes.getBlockY(type, 0, i) * blockSize);
+					this.paintBlock(blockX, blockY, blockSize, color, g);
+				}
+			}
+			
+			this.pieceImages[type] = image;
+		}
 	}
 	
 	/**
-	 * Update the piece type.
+	 * Update the piece type of a slot.
 	 * Its return value can be used to decide whether repainting is necessary.
 	 * 
+	 * @param slot the slot, 0 for the next piece
 	 * @param pieceType the type of the piece to display
 	 * @return true if the piece type was changed, false it matches the currently set piece type.
 	 */
-	public boolean setPieceType(int pieceType) {
-		if(this.pieceType != pieceType) {
-			this.pieceType = pieceType;
+	public boolean setPieceType(int slot, int pieceType) {
+		if(this.pieceTypes[slot] != pieceType) {
+			this.pieceTypes[slot] = pieceType;
+			this.changed[slot] = true;
 			return true;
 		}
 
 		return false;
 	}
 	
+	/**
+	 * @return the number of slots
+	 */
+	public int getSlotCount() {
+		return this.pieceTypes.length;
+	}
+	
+	/**
+	 * Paint just the slots that changed since they were last painted.
+	 * @param g the Graphics object on which to paint
+	 */
+	public void paintChangedSlots(Graphics g) {
+		for(int slot = 0; slot < this.pieceTypes.length; slot++) {
+			if(this.changed[slot]) {
+				this.paintSlot(slot, g);
+			}
+		}
+	}
+	
 	/**
 	 * Paint the NextPieceBox contents on the given Graphics object.
 	 * @param g the Graphics object on which to paint
@@ -99,32 +174,27 @@ public class NextPieceBox extends DisplayBox {
 		g.setFont(this.captionFont);
 		g.drawString("next", xCenter, this.y, Graphics.TOP | Graphics.HCENTER);
 		
-		// paint the piece in the box
-		switch(this.pieceType) {
-			case TetrisConstants.I_PIECE:
-				this.paintIPiece(g);
-				break;
-			case TetrisConstants.O_PIECE:
-				this.paintOPiece(g);
-				break;
-			case TetrisConstants.T_PIECE:
-				this.paintTPiece(g);
-				break;
-			case TetrisConstants.S_PIECE:
-				this.paintSPiece(g);
-				break;
-			case TetrisConstants.Z_PIECE:
-				this.paintZPiece(g);
-				break;
-			case TetrisConstants.L_PIECE:
-				this.paintLPiece(g);
-				break;
-			case TetrisConstants.J_PIECE:
-				this.paintJPiece(g);
-				break;
+		for(int slot = 0; slot < this.pieceTypes.length; slot++) {
+			this.paintSlot(slot, g);
 		}
 	}
 	
+	/**
+	 * Blit a slot's piece.
+	 * 
+	 * @param slot the slot
+	 * @param g the Graphics object on which to paint
+	 */
+	private void paintSlot(int slot, Graphics g) {
+		int type = this.pieceTypes[slot];
+		if(type < 0 || type > TetrisConstants.NUM_PIECE_TYPES) {
+			type = 0;	// no piece, an empty slot
+		}
+		
+		g.drawImage(this.pieceImages[type], this.slotX, this.slotY + (slot * this.slotHeight), Graphics.LEFT | Graphics.TOP);
+		this.changed[slot] = false;
+	}
+	
 	/**
 	 * Paint a block, paints a 1 pixel drop shadow.
 	 * 
@@ -142,129 +212,25 @@ public class NextPieceBox extends DisplayBox {
 	}
 	
 	/**
-	 * ####
-	 * 
-	 * @param g a Graphics object on which to paint an I piece
-	 */
-	private void paintIPiece(Graphics g) {
-		int color = TetrisConstants.I_PIECE_COLOR;
-		
-		int x = this.leftBlockX + this.blockSize;
-		int y = (this.y + this.height) - (this.blockSize * 2);
-		
-		this.paintBlock(x, y, this.blockSize, color, g);
-		this.paintBlock(x + this.blockSize, y, this.blockSize, color, g);
-		this.paintBlock(x + (2 *this. blockSize), y, this.blockSize, color, g);
-		this.paintBlock(x + (3 * this.blockSize), y, this.blockSize, color, g);
-	}
-	
-	/**
-	 * ##
-	 * ##
-	 * 
-	 * @param g a Graphics object on which to paint an O piece
+	 * @param type a piece type
+	 * @return the color pieces of the type are painted in
 	 */
-	private void paintOPiece(Graphics g) {
-		int color = TetrisConstants.O_PIECE_COLOR;
-		
-		int x = this.leftBlockX + (this.blockSize * 2);
-		int y = (this.y + this.height) - (this.blockSize * 3);
-		
-		this.paintBlock(x, y, this.blockSize, color, g);
-		this.paintBlock(x + this.blockSize, y, this.blockSize, color, g);
-		this.paintBlock(x, y + this.blockSize, this.blockSize, color, g);
-		this.paintBlock(x + this.blockSize, y + this.blockSize, this.blockSize, color, g);
-	}
-	
-	/**
-	 *  #
-	 * ###
-	 * 
-	 * @param g a Graphics object on which to paint an T piece
-	 */
-	private void paintTPiece(Graphics g) {
-		int color = TetrisConstants.T_PIECE_COLOR;
-		
-		int x = this.leftBlockX + (this.blockSize * 3);
-		int y = (this.y + this.height) - (this.blockSize * 3);
-		
-		this.paintBlock(x, y, this.blockSize, color, g);
-		this.paintBlock(x - this.blockSize, y + this.blockSize, this.blockSize, color, g);
-		this.paintBlock(x, y + this.blockSize, this.blockSize, color, g);
-		this.paintBlock(x + this.blockSize, y + this.blockSize, this.blockSize, color, g);
-	}
-	
-	/**
-	 *  ##
-	 * ##
-	 * 
-	 * @param g a Graphics object on which to paint an S piece
-	 */
-	private void paintSPiece(Graphics g) {
-		int color = TetrisConstants.S_PIECE_COLOR;
-		
-		int x = this.leftBlockX + (this.blockSize * 2);
-		int y = (this.y + this.height) - (this.blockSize * 3);
-		
-		this.paintBlock(x, y, this.blockSize, color, g);
-		this.paintBlock(x + this.blockSize, y, this.blockSize, color, g);
-		this.paintBlock(x - this.blockSize, y + this.blockSize, this.blockSize, color, g);
-		this.paintBlock(x, y + this.blockSize, this.blockSize, color, g);
-	}
-	
-	/**
-	 * ##
-	 *  ##
-	 *  
-	 * @param g a Graphics object on which to paint a Z piece
-	 */
-	private void paintZPiece(Graphics g) {
-		int color = TetrisConstants.Z_PIECE_COLOR;
-		
-		int x = this.leftBlockX + this.blockSize;
-		int y = (this.y + this.height) - (this.blockSize * 3);
-		
-		this.paintBlock(x, y, this.blockSize, color, g);
-		this.paintBlock(x + this.blockSize, y, this.blockSize, color, g);
-		this.paintBlock(x + this.blockSize, y + this.blockSize, this.blockSize, color, g);
-		this.paintBlock(x + (this.blockSize * 2), y + this.blockSize, this.blockSize, color, g);
-	}
-	
-	/**
-	 * #
-	 * #
-	 * ##
-	 *  
-	 * @param g a Graphics object on which to paint a L piece
-	 */
-	private void paintLPiece(Graphics g) {
-		int color = TetrisConstants.L_PIECE_COLOR;
-		
-		int x = this.leftBlockX + (this.blockSize * 2);
-		int y = (this.y + this.height) - (this.blockSize * 4);
-		
-		this.paintBlock(x, y, this.blockSize, color, g);
-		this.paintBlock(x, y + this.blockSize, this.blockSize, color, g);
-		this.paintBlock(x, y + (this.blockSize * 2), this.blockSize, color, g);
-		this.paintBlock(x + this.blockSize, y + (this.blockSize * 2), this.blockSize, color, g);
-	}
-	
-	/**
-	 *  #
-	 *  #
-	 * ##
-	 *  
-	 * @param g a Graphics object on which to paint a L piece
-	 */
-	private void paintJPiece(Graphics g) {
-		int color = TetrisConstants.J_PIECE_COLOR;
-		
-		int x = this.leftBlockX + (this.blockSize * 3);
-		int y = (this.y + this.height) - (this.blockSize * 4);
-		
-		this.paintBlock(x, y, this.blockSize, color, g);
-		this.paintBlock(x, y + this.blockSize, this.blockSize, color, g);
-		this.paintBlock(x, y + (this.blockSize * 2), this.blockSize, color, g);
-		this.paintBlock(x - this.blockSize, y + (this.blockSize * 2), this.blockSize, color, g);
+	private static int getPieceColor(int type) {
+		switch(type) {
+			case TetrisConstants.I_PIECE:
+				return TetrisConstants.I_PIECE_COLOR;
+			case TetrisConstants.O_PIECE:
+				return TetrisConstants.O_PIECE_COLOR;
+			case TetrisConstants.T_PIECE:
+				return TetrisConstants.T_PIECE_COLOR;
+			case TetrisConstants.S_PIECE:
+				return TetrisConstants.S_PIECE_COLOR;
+			case TetrisConstants.Z_PIECE:
+				return TetrisConstants.Z_PIECE_COLOR;
+			case TetrisConstants.L_PIECE:
+				return TetrisConstants.L_PIECE_COLOR;
+			default:
+				return TetrisConstants.J_PIECE_COLOR;
+		}
 	}
 }
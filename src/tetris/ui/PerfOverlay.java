@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.ui;
+
+import javax.microedition.lcdui.Font;
+import javax.microedition.lcdui.Graphics;
+import javax.microedition.lcdui.Image;
+import javax.microedition.lcdui.game.Sprite;
+
+import tetris.perf.LatencyHistogram;
+import tetris.perf.PerfStats;
+
+/**
+ * A debug overlay showing the performance stats live: paints per second, average/worst paint time,
+ * gravity jitter, heap free/total, and the number of blocks repainted in the last frame.
+ * 
+ * Text is drawn from images rendered once up front (a strip of digit glyphs and one image per label),
+ * numbers are blitted glyph by glyph.  This way the overlay doesn't create Strings or render text every
+ * frame, which would distort the very paint times it is showing.
+ */
+public class PerfOverlay extends DisplayBox {
+
+	private static final String GLYPHS = "0123456789/";		// the characters that make up values
+	private static final int SLASH_GLYPH = 10;				// index of the '/' separator in GLYPHS
+	private static final int MAX_VALUE_CHARS = 9;			// widest value we show, ie "9999/9999"
+	
+	private static final String[] LABELS = { "fps", "paint", "jitter", "heap", "cells" };
+	private static final int FPS_ROW	= 0;
+	private static final int PAINT_ROW	= 1;
+	private static final int JITTER_ROW	= 2;
+	private static final int HEAP_ROW	= 3;
+	private static final int CELLS_ROW	= 4;
+	
+	private PerfStats stats;		// the stats being shown
+	
+	private Image glyphImage;		// all of the GLYPHS rendered side by side
+	private int[] glyphX;			// x offset of each glyph in the glyph image
+	private int[] glyphWidth;		// width of each glyph in the glyph image
+	
+	private Image[] labelImages;	// each of the LABELS pre-rendered
+	private int labelWidth;			// width of the label column
+	private int rowHeight;			// height of a line of text
+	
+	private int[] digits = new int[10];	// scratch space for splitting a number into digits, enough for any int
+	
+	/**
+	 * Make a new PerfOverlay.  The size is worked out from the font.
+	 * 
+	 * @param x x coordinate of upper left of the box
+	 * @param y y coordinate of upper left of the box
+	 * @param fgColor foreground color, for the border and the text
+	 * @param bgColor background color
+	 * @param font the font to render the glyphs in
+	 * @param stats the stats to show
+	 */
+	public PerfOverlay(int x, int y,
+					   int fgColor, int bgColor,
+					   Font font, PerfStats stats) {
+		super(x, y, 0, 0, fgColor, bgColor);
+		
+		this.stats = stats;
+		
+		this.renderGlyphs(font);
+		this.renderLabels(font);
+		
+		// label column, then room for the widest value, with a pixel of padding all round
+		int maxGlyphWidth = 0;
+		for(int i = 0; i < this.glyphWidth.length; i++) {
+			maxGlyphWidth = Math.max(maxGlyphWidth, this.glyphWidth[i]);
+		}
+		
+		this.width = this.labelWidth + (maxGlyphWidth * MAX_VALUE_CHARS) + 2;
+		this.height = (this.rowHeight * LABELS.length) + 2;
+	}
+	
+	/**
+	 * Render the value glyphs into a single image strip, one time.
+	 * @param font the font to render in
+	 */
+	private void renderGlyphs(Font font) {
+		this.rowHeight = font.getHeight();
+		this.glyphX = new int[GLYPHS.length()];
+		this.glyphWidth = new int[GLYPHS.length()];
+		
+		int stripWidth = 0;
+		for(int i = 0; i < GLYPHS.length(); i++) {
+			this.glyphX[i] = stripWidth;
+			this.glyphWidth[i] = font.charWidth(GLYPHS.charAt(i));
+			stripWidth += this.glyphWidth[i];
+		}
+		
+		this.glyphImage = Image.createImage(stripWidth, this.rowHeight);
+		Graphics g = this.glyphImage.getGraphics();
+		g.setColor(this.bgColor);
+		g.fillRect(0, 0, stripWidth, this.rowHeight);
+		g.setColor(this.fgColor);
+		g.setFont(font);
+		
+		for(int i = 0; i < GLYPHS.length(); i++) {
+			g.drawChar(GLYPHS.charAt(i), this.glyphX[i], 0, Graphics.TOP | Graphics.LEFT);
+		}
+	}
+	
+	/**
+	 * Render each of the labels into its own image, one time.
+	 * @param font the font to render in
+	 */
+	private void renderLabels(Font font) {
+		this.labelImages = new Image[LABELS.length];
+		
+		for(int i = 0; i < LABELS.length; i++) {
+			int labelImageWidth = font.stringWidth(LABELS[i]);
+			this.labelWidth = Math.max(this.labelWidth, labelImageWidth);
+			
+			this.labelImages[i] = Image.createImage(labelImageWidth, this.rowHeight);
+			Graphics g = this.labelImages[i].getGraphics();
+			g.setColor(this.bgColor);
+			g.fillRect(0, 0, labelImageWidth, this.rowHeight);
+			g.setColor(this.fgColor);
+			g.setFont(font);
+			g.drawString(LABELS[i], 0, 0, Graphics.TOP | Graphics.LEFT);
+		}
+		
+		// a space's worth of gap between the labels and the values
+		this.labelWidth += font.charWidth(' ');
+	}
+	
+	/**
+	 * Paint the stats.
+	 * @param g the Graphics object on which to paint
+	 */
+	protected void paintBoxContents(Graphics g) {
+		LatencyHistogram paintTime = this.stats.getHistogram(PerfStats.PAINT_TIME);
+		LatencyHistogram jitter = this.stats.getHistogram(PerfStats.GRAVITY_JITTER);
+		Runtime runtime = Runtime.getRuntime();
+		
+		this.paintRow(g, FPS_ROW, this.stats.getPaintsPerSecond(), -1);
+		this.paintRow(g, PAINT_ROW, paintTime.getMean(), paintTime.getMax());
+		this.paintRow(g, JITTER_ROW, jitter.getMean(), jitter.getMax());
+		this.paintRow(g, HEAP_ROW, (int)(runtime.freeMemory() / 1024), (int)(runtime.totalMemory() / 1024));
+		this.paintRow(g, CELLS_ROW, this.stats.getHistogram(PerfStats.CELLS_PAINTED).getLast(), -1);
+	}
+	
+	/**
+	 * Paint one row, the label and then either a single value, or two values separated by a slash.
+	 * 
+	 * @param g the Graphics object on which to paint
+	 * @param row the row index, also the index of the label
+	 * @param value the first value
+	 * @param secondValue the second value, or negative if there is only one value
+	 */
+	private void paintRow(Graphics g, int row, int value, int secondValue) {
+		int rowX = this.x + 1;
+		int rowY = this.y + 1 + (row * this.rowHeight);
+		
+		g.drawImage(this.labelImages[row], rowX, rowY, Graphics.TOP | Graphics.LEFT);
+		
+		int valueX = this.paintNumber(g, value, rowX + this.labelWidth, rowY);
+		if(secondValue >= 0) {
+			valueX = this.paintGlyph(g, SLASH_GLYPH, valueX, rowY);
+			this.paintNumber(g, secondValue, valueX, rowY);
+		}
+	}
+	
+	/**
+	 * Paint a non-negative number from the digit glyphs.
+	 * 
+	 * @param g the Graphics object on which to paint
+	 * @param value the number to paint, negatives are painted as 0
+	 * @param x the x coordinate of the left of the number
+	 * @param y the y coordinate of the top of the number
+	 * @return the x coordinate just to the right of the painted number
+	 */
+	private int paintNumber(Graphics g, int value, int x, int y) {
+		value = Math.max(value, 0);
+		
+		// split into digits least significant first, then paint them back to front
+		int numDigits = 0;
+		do {
+			this.digits[numDigits++] = value % 10;
+			value /= 10;
+		} while(value > 0);
+		
+		while(numDigits > 0) {
+			x = this.paintGlyph(g, this.digits[--numDigits], x, y);
+		}
+		
+		return x;
+	}
+	
+	/**
+	 * Blit a single glyph out of the glyph strip.
+	 * 
+	 * @param g the Graphics object on which to paint
+	 * @param glyph the index of the glyph in GLYPHS
+	 * @param x the x coordinate of the left of the glyph
+	 * @param y the y coordinate of the top of the glyph
+	 * @return the x coordinate just to the right of the glyph
+	 */
+	private int paintGlyph(Graphics g, int glyph, int x, int y) {
+		g.drawRegion(this.glyphImage, this.glyphX[glyph], 0, this.glyphWidth[glyph], this.rowHeight,
+					 Sprite.TRANS_NONE, x, y, Graphics.TOP | Graphics.LEFT);
+		
+		return x + this.glyphWidth[glyph];
+	}
+}
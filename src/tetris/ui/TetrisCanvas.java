@@ -26,7 +26,9 @@ import javax.microedition.lcdui.Image;
 
 import tetris.TetrisConstants;
 import tetris.TetrisMIDlet;
+import tetris.model.BoardConfig;
 import tetris.model.TetrisBoard;
+import tetris.perf.Tracer;
 
 /**
  * Handles all of the UI and painting for the app.
@@ -38,6 +40,7 @@ import tetris.model.TetrisBoard;
 public class TetrisCanvas extends Canvas {
 
 	private TetrisMIDlet game;			// the midlet
+	private BoardConfig boardConfig;	// the size of the board being played
 
 	private int boardX;					// x coordinate of the upper left corner of the playing grid on the canvas
 	private int boardY;					// y coordinate of the upper left corner of the playing grid on the canvas
@@ -59,12 +62,23 @@ public class TetrisCanvas extends Canvas {
 	private InfoBox levelBox;			// box showing the current level
 	private NextPieceBox nextPieceBox;	// box showing the next piece
 	private TitleBox titleBox;			// box showing the title screen, displayed when no game running
+	private PerfOverlay perfOverlay;	// debug overlay showing the performance stats
+	private boolean showPerfOverlay;	// whether the performance overlay is toggled on
 	
 	private Font font;					// font to use throughout display
 	
 	private Image doubleBuffer;			// if Canvas isn't double buffered, use Image to manually double buffer
+	private CanvasLayout[] layouts = new CanvasLayout[TetrisConstants.LAYOUT_CACHE_SIZE];	// layouts worked out so far, by screen size
+	private int layoutCount;			// the number of layouts kept
 	private boolean paintedOnce;		// a flag to indicate whether things that only need to be drawn once have been
 	private int[][] lastBoardState;		// the board state last time the screen was painted, used to avoid unecessary painting
+	private int cellsPainted;			// the number of board blocks repainted during the current paint
+	private boolean firstFramePainted;	// whether the game has been told the first frame is up
+	
+	private int clearSequence;			// the game's clear count last time it was checked
+	private int[] animatedRows = new int[TetrisConstants.FOUR_BLOCKS];	// the cleared rows being animated
+	private int animatedRowCount;		// the number of rows being animated, 0 if there's no animation running
+	private long animationStartTime;	// when the running animation started
 	
 	/**
 	 * Make a new canvas.
@@ -73,29 +87,42 @@ public class TetrisCanvas extends Canvas {
 	 */
 	public TetrisCanvas(TetrisMIDlet game) {
 		this.game = game;
-		this.lastBoardState = new int[TetrisConstants.WIDTH][TetrisConstants.VIEWABLE_ROWS];	// only need to save state for visible rows
+		this.boardConfig = game.getBoardConfig();
+		this.lastBoardState = new int[this.boardConfig.getWidth()][this.boardConfig.getViewableRows()];	// only need to save state for visible rows
 		
-		if(!this.isDoubleBuffered()) {
-			// use a double buffer if Canvas doesn't automatically support
-			// can use a null check on this.doubleBuffer to see if double buffering
-			this.doubleBuffer = Image.createImage(this.getWidth(), this.getHeight());
-		}
+		// get a simple font to use throughout
+		this.font = Font.getFont(Font.FACE_SYSTEM, Font.STYLE_PLAIN, Font.SIZE_SMALL);
+		this.perfOverlay = new PerfOverlay(0, 0, TetrisConstants.COLOR_BLACK, TetrisConstants.COLOR_LIGHT_GREY,
+										   this.font, this.game.getPerfStats());
+		
+		// work out the other orientation up front too, so rotating is instant
+		this.getLayout(this.getHeight(), this.getWidth());
 		
 		// initializes instance variables that set the relative layout
-		this.setupLayout();
+		this.setupLayout(this.getWidth(), this.getHeight());
 	}
 
 	/**
 	 * Passes on single key press to the game instance that handles input.
 	 */
 	protected void keyPressed(int keyCode) {
+		Tracer tracer = this.game.getTracer();
+		
+		tracer.begin(Tracer.INPUT);
 		this.game.keyPressed(keyCode);
+		tracer.end(Tracer.INPUT);
 	}
 	
 	/**
 	 * Paint the canvas.
 	 */
 	public void paint(Graphics g) {
+		Tracer tracer = this.game.getTracer();
+		
+		tracer.begin(Tracer.PAINT);
+		long startTime = System.currentTimeMillis();
+		this.cellsPainted = 0;
+		
 		if(null == this.doubleBuffer) {
 			// direct support for double buffering, so we just paint directly to the canvas
 			this.paintScreen(g);
@@ -103,7 +130,17 @@ public class TetrisCanvas extends Canvas {
 			// no automatic double buffering, so we paint on an buffer Image and then draw it
 			Graphics bufferG = this.doubleBuffer.getGraphics();
 			this.paintScreen(bufferG);
+			tracer.begin(Tracer.BLIT);
 			g.drawImage(this.doubleBuffer, 0 , 0, Graphics.LEFT | Graphics.TOP);
+			tracer.end(Tracer.BLIT);
+		}
+		
+		this.game.getPerfStats().recordPaint(startTime, System.currentTimeMillis(), this.cellsPainted);
+		tracer.end(Tracer.PAINT);
+		
+		if(!this.firstFramePainted) {
+			this.firstFramePainted = true;
+			this.game.firstFramePainted();
 		}
 	}
 
@@ -126,6 +163,12 @@ public class TetrisCanvas extends Canvas {
 			
 			this.paintInfoBoxes(g);
 			this.paintBoard(g);
+			this.paintClearAnimation(g);
+		}
+		
+		if(this.showPerfOverlay) {
+			// painted last on every frame, so whatever was repainted underneath is covered again
+			this.perfOverlay.paint(g);
 		}
 	}
 	
@@ -157,6 +200,7 @@ public class TetrisCanvas extends Canvas {
 		} else if(TetrisConstants.RUNNING_STATE == this.game.getGameState()) {
 			// just need to paint the game board
 			this.paintBoard(g);
+			this.paintClearAnimation(g);
 			
 		} else if(TetrisConstants.PAUSED_STATE == this.game.getGameState()) {
 			// we paint a paused message and hide the board
@@ -186,10 +230,11 @@ public class TetrisCanvas extends Canvas {
 			this.levelBox.paint(g);
 		}
 		
-		// paint the next piece box only if the next piece has changed
-		if(this.nextPieceBox.setPieceType(this.game.getNextPieceType())) {
-			this.nextPieceBox.paint(g);
+		// paint only the preview slots whose piece has changed
+		for(int i = 0; i < this.nextPieceBox.getSlotCount(); i++) {
+			this.nextPieceBox.setPieceType(i, this.game.getNextPieceType(i));
 		}
+		this.nextPieceBox.paintChangedSlots(g);
 	}
 	
 	/**
@@ -218,15 +263,19 @@ public class TetrisCanvas extends Canvas {
 	 */
 	private void paintBoard(Graphics g) {
 		TetrisBoard board = this.game.getBoard();
+		int width = this.boardConfig.getWidth();
+		int height = this.boardConfig.getHeight();
+		int topVisibleRow = this.boardConfig.getTopVisibleRow();
 		
-		for(int x = 0; x < TetrisConstants.WIDTH; x++) {
-			for(int y = TetrisConstants.TOP_VISIBLE_ROW; y < TetrisConstants.HEIGHT; y++) {
+		for(int x = 0; x < width; x++) {
+			for(int y = topVisibleRow; y < height; y++) {
 				int blockType = board.getBlockType(x, y);
 				
 				// check if the state of the block is different from the last time we painted
 				if(blockType != this.getLastBoardState(x, y) || TetrisConstants.BLOCK_ACTIVE == blockType) {
 					// repaint the block
 					this.paintBlock(x, y, blockType, g);
+					this.cellsPainted++;
 					
 					// update the saved state
 					this.setLastBoardState(x, y, blockType);
@@ -235,12 +284,74 @@ public class TetrisCanvas extends Canvas {
 		}
 	}
 	
+	/**
+	 * Paint cleared rows collapsing, over the board.
+	 * The game doesn't wait for this, by the time it's seen the board has already moved on,
+	 * so the rows are painted where they were, over whatever has dropped in since, and a frame paints only those rows.
+	 * The animation keeps repainting until it's run its time.
+	 * 
+	 * @param g the Graphics object to paint on
+	 */
+	private void paintClearAnimation(Graphics g) {
+		long now = System.currentTimeMillis();
+		
+		int clearSequence = this.game.getClearSequence();
+		if(clearSequence != this.clearSequence) {
+			// rows were cleared since the last frame, start animating them
+			this.clearSequence = clearSequence;
+			this.animatedRowCount = this.game.getClearedRowCount();
+			for(int i = 0; i < this.animatedRowCount; i++) {
+				this.animatedRows[i] = this.game.getClearedRow(i);
+			}
+			
+			this.animationStartTime = now;
+		}
+		
+		if(0 == this.animatedRowCount) {
+			return;
+		}
+		
+		// the board blocks under the rows are painted over,
+		// forget them so the next frame repaints them, either under the next step or with the animation over
+		for(int i = 0; i < this.animatedRowCount; i++) {
+			int y = this.animatedRows[i];
+			if(y >= this.boardConfig.getTopVisibleRow()) {
+				for(int x = 0; x < this.boardConfig.getWidth(); x++) {
+					this.setLastBoardState(x, y, TetrisConstants.UNINITIALIZED);
+				}
+			}
+		}
+		
+		long elapsed = now - this.animationStartTime;
+		if(elapsed >= TetrisConstants.CLEAR_ANIMATION_TIME) {
+			// done, the next frame puts the board back
+			this.animatedRowCount = 0;
+			this.repaint();
+			return;
+		}
+		
+		// each row shrinks to its middle over the animation time
+		int width = (int)((this.boardWidth * (TetrisConstants.CLEAR_ANIMATION_TIME - elapsed)) / TetrisConstants.CLEAR_ANIMATION_TIME);
+		int rowX = this.boardX + ((this.boardWidth - width) / 2);
+		
+		g.setColor(TetrisConstants.CLEAR_COLOR);
+		for(int i = 0; i < this.animatedRowCount; i++) {
+			int y = this.animatedRows[i];
+			if(y >= this.boardConfig.getTopVisibleRow()) {
+				int rowY = this.boardY + (this.blockSize * (y - this.boardConfig.getTopVisibleRow()));
+				g.fillRect(rowX, rowY, width, this.blockSize);
+			}
+		}
+		
+		this.repaint();		// keep the frames coming
+	}
+	
 	private int getLastBoardState(int x, int y) {
-		return this.lastBoardState[x][y - TetrisConstants.TOP_VISIBLE_ROW];
+		return this.lastBoardState[x][y - this.boardConfig.getTopVisibleRow()];
 	}
 	
 	private void setLastBoardState(int x, int y, int blockType) {
-		this.lastBoardState[x][y - TetrisConstants.TOP_VISIBLE_ROW] = blockType;
+		this.lastBoardState[x][y - this.boardConfig.getTopVisibleRow()] = blockType;
 	}
 	
 	/**
@@ -253,7 +364,7 @@ public class TetrisCanvas extends Canvas {
 	 */
 	private void paintBlock(int x, int y, int blockType, Graphics g) {
 		int blockX = this.boardX + (this.blockSize * x);
-		int blockY = this.boardY + (this.blockSize * (y - TetrisConstants.TOP_VISIBLE_ROW));
+		int blockY = this.boardY + (this.blockSize * (y - this.boardConfig.getTopVisibleRow()));
 		
 		if(TetrisConstants.BLOCK_EMPTY != blockType) {
 			// draw a drop shadow
@@ -271,6 +382,15 @@ public class TetrisCanvas extends Canvas {
 		}	
 	}
 	
+	/**
+	 * Toggle the performance overlay on or off.
+	 * Resets so that the whole screen is repainted, which clears the overlay when it's switched off.
+	 */
+	public void togglePerfOverlay() {
+		this.showPerfOverlay = !this.showPerfOverlay;
+		this.reset();
+	}
+	
 	/**
 	 * Reset the board state so that one-time painting will be done with next painting.
 	 */
@@ -278,8 +398,8 @@ public class TetrisCanvas extends Canvas {
 		this.paintedOnce = false;
 		
 		// reset the board cached board state too
-		for(int x = 0; x < TetrisConstants.WIDTH; x++) {
-			for(int y = TetrisConstants.TOP_VISIBLE_ROW; y < TetrisConstants.HEIGHT; y++) {
+		for(int x = 0; x < this.boardConfig.getWidth(); x++) {
+			for(int y = this.boardConfig.getTopVisibleRow(); y < this.boardConfig.getHeight(); y++) {
 				this.setLastBoardState(x, y, TetrisConstants.UNINITIALIZED);
 			}	
 		}
@@ -327,94 +447,97 @@ public class TetrisCanvas extends Canvas {
 	}
 	
 	/**
-	 * A lot of one-time ugliness.  Don't look in here...
-	 * This method inspects the available screen/font, etc... and sets variables that determine the layout.
-	 * The attempt here is to make things relative so that it will appear OK on different platforms.
+	 * The screen changed size, rotated or went full screen.  Switch to the layout for the new size.
 	 */
-	private void setupLayout() {
-		// screen dimensions
-		this.screenWidth = this.getWidth();
-		this.screenHeight = this.getHeight();
+	protected void sizeChanged(int width, int height) {
+		if(width == this.screenWidth && height == this.screenHeight) {
+			return;
+		}
 		
-		// get a simple font to use throughout
-		this.font = Font.getFont(Font.FACE_SYSTEM, Font.STYLE_PLAIN, Font.SIZE_SMALL);
+		this.setupLayout(width, height);
+		this.reset();
+	}
+	
+	/**
+	 * Lay out the canvas for a screen size.  Layouts are kept once worked out, switching back to a size uses the one kept.
+	 * The double buffer is only replaced if it's too small for the new size.
+	 * 
+	 * @param width the screen width (pixels)
+	 * @param height the screen height (pixels)
+	 */
+	private void setupLayout(int width, int height) {
+		CanvasLayout layout = this.getLayout(width, height);
 		
-		// get the minimum width for the info panel by using the width of a sample score
-		int sampleLabelWidth = this.font.stringWidth("10000000");
-		this.infoPanelWidth = sampleLabelWidth + (sampleLabelWidth / 4);  // 1.25 * sampleLabelWidth so box is a little wider 
-		this.infoPanelX = screenWidth - this.infoPanelWidth;
-		int infoBoxHeight = this.font.getHeight() * 2;					  // make the box twice has high as the font
-		
-		// get the width remaining on the screen minus the info panel
-		int remainderWidth = screenWidth - this.infoPanelWidth;
-		
-		// initial settings
-		this.boardX = 0;
-		this.boardY = 0;
-		this.viewableWidth = screenWidth;
-		this.viewableHeight = screenHeight;
-		
-		// blocks should be a square, so we get the minimum possible dimension and use it for both
-		int blockWidth = remainderWidth / TetrisConstants.WIDTH;
-		int blockHeight = screenHeight / TetrisConstants.VIEWABLE_ROWS;	// only use visible rows in calculation
-		this.blockSize = Math.min(blockWidth, blockHeight);
-		
-		// dimension of the board (grid area) is the size of the block * the dimension
-		this.boardWidth = this.blockSize * TetrisConstants.WIDTH;
-		this.boardHeight = this.blockSize * TetrisConstants.VIEWABLE_ROWS;
-		
-		// get the used dimensions of the screen
-		this.viewableWidth = this.boardWidth + this.infoPanelWidth;
-		this.viewableHeight = this.boardHeight;
-		
-		// center the board in the available space
-		this.boardX = (this.screenWidth - this.viewableWidth) / 2;
-		this.boardY = (this.screenHeight - this.viewableHeight) / 2;
-		this.infoPanelX = this.boardX + this.boardWidth;
-		
-		// info boxes stacked on top of each other, get their total height (NextPieceBox is 1.5 height)
-		int infoBoxTotalHeight = (infoBoxHeight * 9) / 2; // 4.5 * height of one box
-		int remainderHeight = this.viewableHeight - infoBoxTotalHeight;
-		int infoBoxY = this.boardY + (remainderHeight / 2);
-		
-		// build score box on top
-		this.scoreBox = new InfoBox(this.infoPanelX, infoBoxY, this.infoPanelWidth, infoBoxHeight,
-									TetrisConstants.COLOR_BLACK, TetrisConstants.COLOR_LIGHT_GREY,
-									this.font, "score", this.game.getScore());
-
-		// level box under score box
-		infoBoxY += infoBoxHeight;
-		this.levelBox = new InfoBox(this.infoPanelX, infoBoxY, this.infoPanelWidth, infoBoxHeight,
-									TetrisConstants.COLOR_BLACK, TetrisConstants.COLOR_LIGHT_GREY,
-									this.font, "level", this.game.getLevel());
-		
-		// line box under level box
-		infoBoxY += infoBoxHeight;
-		this.lineCountBox = new InfoBox(this.infoPanelX, infoBoxY, this.infoPanelWidth, infoBoxHeight,
-										TetrisConstants.COLOR_BLACK, TetrisConstants.COLOR_LIGHT_GREY,
-										this.font, "lines", this.game.getLineCount());
-		
-		// next piece box under level box
-		infoBoxY += infoBoxHeight;
-		this.nextPieceBox = new NextPieceBox(this.infoPanelX, infoBoxY, this.infoPanelWidth, (infoBoxHeight * 3) / 2,
-											 TetrisConstants.COLOR_BLACK, TetrisConstants.COLOR_LIGHT_GREY, this.font);
-
-		// longest string in the title box is possibly the hi score line
-		// so we ensure that it's wide enough to accomodate an impossibly high score
-		int titleBoxWidth = this.font.stringWidth("hi score: 1000000000000");
-		
-		// title box half the viewable height, or the height of four lines, whichever is more
-		int titleBoxHeight = (this.viewableHeight / 2);
-		titleBoxHeight = Math.max(titleBoxHeight, this.font.getHeight() * 4);
-		
-		// center the title box int he available space
-		int titleBoxX = this.boardX + ((boardWidth - titleBoxWidth) / 2);
-		titleBoxX = Math.max(titleBoxX, 0);
-		int titleBoxY = this.boardY + ((boardHeight - titleBoxHeight) / 2);
-		titleBoxY = Math.max(titleBoxY, 0);
-
-		this.titleBox = new TitleBox(titleBoxX, titleBoxY, titleBoxWidth, titleBoxHeight,
-									 TetrisConstants.COLOR_BLACK, TetrisConstants.COLOR_LIGHT_GREY,
-									 this.font);
+		this.screenWidth = layout.screenWidth;
+		this.screenHeight = layout.screenHeight;
+		this.boardX = layout.boardX;
+		this.boardY = layout.boardY;
+		this.boardWidth = layout.boardWidth;
+		this.boardHeight = layout.boardHeight;
+		this.viewableWidth = layout.viewableWidth;
+		this.viewableHeight = layout.viewableHeight;
+		this.blockSize = layout.blockSize;
+		this.infoPanelX = layout.infoPanelX;
+		this.infoPanelWidth = layout.infoPanelWidth;
+		
+		this.scoreBox = layout.scoreBox;
+		this.lineCountBox = layout.lineCountBox;
+		this.levelBox = layout.levelBox;
+		this.nextPieceBox = layout.nextPieceBox;
+		this.titleBox = layout.titleBox;
+		
+		// a kept layout's boxes may be showing old values
+		this.scoreBox.updateValue(this.game.getScore());
+		this.lineCountBox.updateValue(this.game.getLineCount());
+		this.levelBox.updateValue(this.game.getLevel());
+		for(int i = 0; i < this.nextPieceBox.getSlotCount(); i++) {
+			this.nextPieceBox.setPieceType(i, this.game.getNextPieceType(i));
+		}
+		
+		// overlay sizes itself from the font, tucked into the upper left of the board
+		this.perfOverlay.setPosition(this.boardX, this.boardY);
+		
+		if(!this.isDoubleBuffered()) {
+			// use a double buffer if Canvas doesn't automatically support
+			// can use a null check on this.doubleBuffer to see if double buffering
+			// only ever grows, a bigger buffer than the screen is just clipped
+			if(null == this.doubleBuffer || this.doubleBuffer.getWidth() < width || this.doubleBuffer.getHeight() < height) {
+				int bufferWidth = width;
+				int bufferHeight = height;
+				if(null != this.doubleBuffer) {
+					bufferWidth = Math.max(bufferWidth, this.doubleBuffer.getWidth());
+					bufferHeight = Math.max(bufferHeight, this.doubleBuffer.getHeight());
+				}
+				
+				this.doubleBuffer = null;	// let the old buffer go before allocating the new one
+				this.doubleBuffer = Image.createImage(bufferWidth, bufferHeight);
+			}
+		}
+	}
+	
+	/**
+	 * Get the layout for a screen size, from those kept or worked out and kept.
+	 * 
+	 * @param width the screen width (pixels)
+	 * @param height the screen height (pixels)
+	 * @return the layout
+	 */
+	private CanvasLayout getLayout(int width, int height) {
+		for(int i = 0; i < this.layoutCount; i++) {
+			if(this.layouts[i].isFor(width, height)) {
+				return this.layouts[i];
+			}
+		}
+		
+		CanvasLayout layout = new CanvasLayout(width, height, this.font, this.game);
+		if(this.layoutCount < this.layouts.length) {
+			this.layouts[this.layoutCount++] = layout;
+		} else {
+			// full, replace the oldest
+			System.arraycopy(this.layouts, 1, this.layouts, 0, this.layouts.length - 1);
+			this.layouts[this.layouts.length - 1] = layout;
+		}
+		
+		return layout;
 	}
 }
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.ai;
+
+import tetris.TetrisConstants;
+import tetris.model.GameEngine;
+import tetris.model.PieceRandom;
+import tetris.model.PieceShapes;
+import tetris.model.TetrisBoard;
+import tetris.model.TetrisPiece;
+
+/**
+ * Differential fuzzer for the optimised board code.
+ * 
+ * Plays random action sequences on the straightforward game, GameEngine on TetrisBoard and TetrisPiece,
+ * which is kept as the reference, and on the optimised BitBoard code, as a single game VectorEnv, in lockstep.
+ * After every action the whole state is compared: the locked blocks, the active piece's type, rotation and position,
+ * the next piece, score, lines, level, piece count, and whether the game is over.
+ * 
+ * When a sequence diverges it's shrunk, by repeatedly cutting out runs of actions while it still diverges,
+ * down to a short sequence that reproduces the difference, available from getFailureActions.
+ * Nothing is allocated while fuzzing, only while shrinking.  Not synchronized.
+ * 
+ * A desktop tool, run it with main (or the fuzz ant target).
+ */
+public class BoardFuzzer {
+	
+	// random actions are drawn from this, weighted towards moves so pieces get around the board before they lock
+	private static final byte[] ACTION_MIX = {
+		TetrisConstants.ACTION_LEFT, TetrisConstants.ACTION_LEFT, TetrisConstants.ACTION_LEFT,
+		TetrisConstants.ACTION_RIGHT, TetrisConstants.ACTION_RIGHT, TetrisConstants.ACTION_RIGHT,
+		TetrisConstants.ACTION_ROTATE, TetrisConstants.ACTION_ROTATE, TetrisConstants.ACTION_ROTATE,
+		TetrisConstants.ACTION_DOWN, TetrisConstants.ACTION_TICK, TetrisConstants.ACTION_TICK,
+		TetrisConstants.ACTION_DROP
+	};
+	
+	private PieceRandom rand;						// chooses seeds and actions
+	private GameEngine engine = new GameEngine();	// the reference
+	private VectorEnv env = new VectorEnv(1);		// the optimised code
+	
+	private byte[] actions;			// the sequence being played
+	private int[] rows = new int[TetrisConstants.HEIGHT];		// the optimised board, observed
+	private int[] piece = new int[VectorEnv.PIECE_FIELDS];		// the optimised active piece, observed
+	private byte[] stepAction = new byte[1];		// the action for the optimised game's step
+	private int[] reward = new int[1];				// the optimised game's reward, not compared
+	private boolean[] done = new boolean[1];		// whether the optimised game is over
+	
+	private long stepCount;			// the number of actions compared
+	
+	private long failureSeed;		// the seed of the shrunk failing sequence
+	private int failureStartLevel;	// its start level
+	private byte[] failureActions;	// its actions, null if nothing has failed
+	
+	/**
+	 * @param seed the seed for the random sequences, the same seed fuzzes the same sequences
+	 * @param maxLength the longest sequence played
+	 */
+	public BoardFuzzer(long seed, int maxLength) {
+		this.rand = new PieceRandom(seed);
+		this.actions = new byte[maxLength];
+	}
+	
+	/**
+	 * Play random sequences until one diverges or the count runs out.
+	 * 
+	 * @param sequences the number of sequences to play
+	 * @return true if every sequence matched, false if one diverged, shrunk and available from getFailureActions
+	 */
+	public boolean run(int sequences) {
+		PieceRandom rand = this.rand;
+		byte[] actions = this.actions;
+		
+		for(int n = 0; n < sequences; n++) {
+			long seed = ((long)rand.nextInt(Integer.MAX_VALUE) << 16) ^ rand.nextInt(Integer.MAX_VALUE);
+			int startLevel = rand.nextInt(TetrisConstants.GRAVITY_LEVELS + 1);	// every level of gravity, and past the table
+			
+			int length = 1 + rand.nextInt(actions.length);
+			for(int i = 0; i < length; i++) {
+				actions[i] = ACTION_MIX[rand.nextInt(ACTION_MIX.length)];
+			}
+			
+			if(this.check(seed, startLevel, actions, length) >= 0) {
+				this.shrink(seed, startLevel, actions, length);
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Play a sequence on both, comparing after every action.
+	 * 
+	 * @param seed the seed for the pieces
+	 * @param startLevel the level to start at
+	 * @param actions the actions
+	 * @param length the number of actions
+	 * @return the index of the first action after which they differ, -1 if they never do, length if they differ from the start
+	 */
+	public int check(long seed, int startLevel, byte[] actions, int length) {
+		GameEngine engine = this.engine;
+		engine.getRandom().setSeed(seed);
+		engine.newGame(startLevel);
+		this.env.reset(0, seed, startLevel);
+		
+		if(!this.matches()) {
+			return length;
+		}
+		
+		for(int i = 0; i < length && !engine.isGameOver(); i++) {
+			engine.performAction(actions[i]);
+			
+			this.stepAction[0] = actions[i];
+			this.env.step(this.stepAction, this.reward, this.done);
+			this.stepCount++;
+			
+			if(!this.matches()) {
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * @return true if the reference and the optimised game are in the same state
+	 */
+	private boolean matches() {
+		GameEngine engine = this.engine;
+		VectorEnv env = this.env;
+		
+		if(engine.isGameOver() != env.isDone(0)) {
+			return false;
+		} else if(engine.getScore() != env.getScore(0) || engine.getLineCount() != env.getLineCount(0)
+				  || engine.getLevel() != env.getLevel(0) || engine.getPieceCount() != env.getPieceCount(0)) {
+			return false;
+		}
+		
+		env.observe(this.rows, this.piece);
+		
+		TetrisBoard board = engine.getBoard();
+		for(int y = 0; y < TetrisConstants.HEIGHT; y++) {
+			int row = 0;
+			for(int x = 0; x < TetrisConstants.WIDTH; x++) {
+				int blockType = board.getBlockType(x, y);
+				if(TetrisConstants.BLOCK_EMPTY != blockType && TetrisConstants.BLOCK_ACTIVE != blockType) {
+					row |= 1 << x;
+				}
+			}
+			
+			if(row != this.rows[y]) {
+				return false;
+			}
+		}
+		
+		if(engine.isGameOver()) {
+			// the piece that didn't fit isn't on either board
+			return true;
+		}
+		
+		TetrisPiece piece = engine.getActivePiece();
+		return piece.getPieceType() == this.piece[0]
+			&& PieceShapes.getRotation(piece) == this.piece[1]
+			&& piece.getBlockX(TetrisConstants.PIVOT_INDEX) == this.piece[2]
+			&& piece.getBlockY(TetrisConstants.PIVOT_INDEX) == this.piece[3]
+			&& engine.getNextPieceType() == this.piece[4];
+	}
+	
+	/**
+	 * Shrink a failing sequence.  Everything after the divergence is dropped,
+	 * then runs of actions, from half the sequence down to single actions, are cut out wherever it still fails.
+	 * 
+	 * @param seed the seed for the pieces
+	 * @param startLevel the level to start at
+	 * @param actions the failing actions, overwritten
+	 * @param length the number of actions
+	 */
+	private void shrink(long seed, int startLevel, byte[] actions, int length) {
+		int failedAt = this.check(seed, startLevel, actions, length);
+		length = Math.min(length, failedAt + 1);
+		
+		byte[] trial = new byte[length];
+		for(int chunk = length / 2; chunk >= 1; chunk /= 2) {
+			int start = 0;
+			while(start + chunk <= length) {
+				// try without actions [start, start + chunk)
+				System.arraycopy(actions, 0, trial, 0, start);
+				System.arraycopy(actions, start + chunk, trial, start, length - start - chunk);
+				
+				int trialLength = length - chunk;
+				failedAt = this.check(seed, startLevel, trial, trialLength);
+				if(failedAt >= 0) {
+					// still fails without them, keep it that way
+					length = Math.min(trialLength, failedAt + 1);
+					System.arraycopy(trial, 0, actions, 0, length);
+				} else {
+					start += chunk;
+				}
+			}
+		}
+		
+		this.failureSeed = seed;
+		this.failureStartLevel = startLevel;
+		this.failureActions = new byte[length];
+		System.arraycopy(actions, 0, this.failureActions, 0, length);
+	}
+	
+	////////////////////
+	
+	/**
+	 * @return the number of actions compared so far
+	 */
+	public long getStepCount() {
+		return this.stepCount;
+	}
+	
+	/**
+	 * @return the actions of the shrunk failing sequence, null if nothing has failed
+	 */
+	public byte[] getFailureActions() {
+		return this.failureActions;
+	}
+	
+	/**
+	 * @return the seed of the shrunk failing sequence
+	 */
+	public long getFailureSeed() {
+		return this.failureSeed;
+	}
+	
+	/**
+	 * @return the start level of the shrunk failing sequence
+	 */
+	public int getFailureStartLevel() {
+		return this.failureStartLevel;
+	}
+	
+	////////////////////
+	
+	/**
+	 * Fuzz from the command line.  Exits with status 1, after printing the shrunk sequence, if a sequence diverges.
+	 * 
+	 * args: [seed sequences maxLength], by default 123 5000 300
+	 * 
+	 * @param args the arguments
+	 */
+	public static void main(String[] args) {
+		long seed = args.length > 0 ? Long.parseLong(args[0]) : 123;
+		int sequences = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+		int maxLength = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+		
+		BoardFuzzer fuzzer = new BoardFuzzer(seed, maxLength);
+		long start = System.currentTimeMillis();
+		boolean passed = fuzzer.run(sequences);
+		long time = System.currentTimeMillis() - start;
+		
+		if(passed) {
+			System.out.println(sequences + " sequences, " + fuzzer.getStepCount() + " steps matched in " + time + "ms");
+			return;
+		}
+		
+		byte[] actions = fuzzer.getFailureActions();
+		StringBuffer buffer = new StringBuffer();
+		for(int i = 0; i < actions.length; i++) {
+			if(i > 0) {
+				buffer.append(' ');
+			}
+			
+			buffer.append(actions[i]);
+		}
+		
+		System.out.println("diverged after " + fuzzer.getStepCount() + " steps");
+		System.out.println("seed " + fuzzer.getFailureSeed() + " start level " + fuzzer.getFailureStartLevel()
+						   + " actions (" + actions.length + "): " + buffer);
+		System.exit(1);
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.ai;
+
+import tetris.TetrisConstants;
+import tetris.model.GameEngine;
+import tetris.model.PieceShapes;
+import tetris.model.TetrisPiece;
+
+/**
+ * One of the threads of a WeightTuner.  Plays games headless on its own engine, game after game with nothing allocated.
+ */
+class TunerWorker extends Thread {
+	
+	private WeightTuner tuner;					// the tuner this works for
+	private GameEngine engine = new GameEngine();	// the game being played
+	private Evaluator evaluator = new Evaluator();	// set to the weights of the individual playing
+	private PlacementSearch search = new PlacementSearch(this.evaluator);	// chooses the placements
+	private BitBoard board = new BitBoard();	// copy of the engine's board to search on
+	private Placement target = new Placement();	// where the active piece is headed
+	private int[] weights = new int[Evaluator.NUM_FEATURES];	// the weights being played
+	
+	/**
+	 * @param tuner the tuner this works for
+	 */
+	TunerWorker(WeightTuner tuner) {
+		this.tuner = tuner;
+	}
+	
+	/**
+	 * The worker loop.
+	 */
+	public void run() {
+		int generation = 0;
+		
+		while(true) {
+			generation = this.tuner.awaitGeneration(generation);
+			if(generation < 0) {
+				return;
+			}
+			
+			int job;
+			while((job = this.tuner.takeJob()) >= 0) {
+				this.tuner.playJob(job, this);
+			}
+			
+			this.tuner.workerDone();
+		}
+	}
+	
+	/**
+	 * Play a game to the end or the piece limit.
+	 * 
+	 * @param population the population's weights
+	 * @param offset the offset of the individual's weights in the population
+	 * @param seed the seed for the pieces
+	 * @param maxPieces the game is cut off after this many pieces
+	 * @return the final score
+	 */
+	int playGame(int[] population, int offset, long seed, int maxPieces) {
+		System.arraycopy(population, offset, this.weights, 0, Evaluator.NUM_FEATURES);
+		this.evaluator.setWeights(this.weights);
+		
+		GameEngine engine = this.engine;
+		engine.getRandom().setSeed(seed);
+		engine.newGame(0);
+		
+		while(!engine.isGameOver() && engine.getPieceCount() < maxPieces) {
+			TetrisPiece piece = engine.getActivePiece();
+			
+			this.board.copyFrom(engine.getBoard());
+			if(this.search.findBest(this.board, piece.getPieceType(), this.target)) {
+				this.moveToTarget(piece);
+			}
+			
+			engine.quickDrop();
+		}
+		
+		return engine.getScore();
+	}
+	
+	/**
+	 * Rotate then slide the active piece to the target, as far as the board lets it.
+	 * 
+	 * @param piece the active piece
+	 */
+	private void moveToTarget(TetrisPiece piece) {
+		GameEngine engine = this.engine;
+		
+		for(int i = 0; i < PieceShapes.MAX_ROTATIONS && PieceShapes.getRotation(piece) != this.target.getRotation(); i++) {
+			if(!engine.tryRotateLeft()) {
+				return;
+			}
+		}
+		
+		int x = piece.getBlockX(TetrisConstants.PIVOT_INDEX);
+		while(x < this.target.getX() && engine.tryMoveRight()) {
+			x++;
+		}
+		
+		while(x > this.target.getX() && engine.tryMoveLeft()) {
+			x--;
+		}
+	}
+}
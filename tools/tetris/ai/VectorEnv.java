@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.ai;
+
+import tetris.TetrisConstants;
+import tetris.model.GravityTable;
+import tetris.model.PieceRandom;
+import tetris.model.PieceShapes;
+
+/**
+ * Many independent games stepped together, for training learning agents.
+ * 
+ * Instead of an engine object per game, every game's state is held in flat primitive arrays indexed by game:
+ * the boards as BitBoard style row masks one after another, the active piece as type, rotation and pivot,
+ * scores, and random generator states.  A step applies one action to every game in a single pass over the arrays,
+ * and observations are copied out into buffers the caller owns, so stepping allocates nothing.
+ * 
+ * The rules are the game's: the same moves as TetrisBoard (via BitBoard), the same piece sequence for a seed as
+ * GameEngine (via PieceRandom), and the same scoring as GameEngine, drop points included.
+ * Games that end stay ended, ignoring their actions, until they're reset.
+ * 
+ * A desktop tool, kept out of the MIDlet jar.
+ */
+public class VectorEnv {
+	
+	public static final int PIECE_FIELDS = 5;	// values per game in a piece observation: type, rotation, pivot x, pivot y, next type
+	
+	private static final int[] ROW_SCORES = { 0, TetrisConstants.ONE_ROW_SCORE, TetrisConstants.TWO_ROW_SCORE,
+											  TetrisConstants.THREE_ROW_SCORE, TetrisConstants.FOUR_ROW_SCORE };
+	
+	private int numEnvs;			// number of games
+	private int gravityPeriod;		// steps between the active piece dropping a row on its own, 0 for no gravity
+	
+	private int[] rows;				// every game's board, HEIGHT row masks per game, top row first
+	private int[] pieceType;		// each game's active piece
+	private int[] rotation;			// its rotation
+	private int[] pivotX;			// its pivot x
+	private int[] pivotY;			// its pivot y
+	private int[] nextPieceType;	// each game's next piece
+	private int[] score;			// each game's score
+	private int[] lineCount;		// each game's line count
+	private int[] level;			// each game's level
+	private int[] pieceCount;		// number of pieces added in each game
+	private int[] gravitySteps;		// steps since each game's piece last dropped by gravity
+	private int[] gravityFraction;	// the part of a row tick actions have pulled each game's piece that it hasn't fallen yet
+	private long[] randomState;		// each game's random generator state
+	private boolean[] done;			// whether each game is over
+	
+	private PieceRandom rand = new PieceRandom(0);	// steps a game's random state, loaded from and saved to randomState
+	
+	/**
+	 * Make a set of games.  They all start over, reset them before stepping.
+	 * 
+	 * @param numEnvs the number of games
+	 */
+	public VectorEnv(int numEnvs) {
+		this.numEnvs = numEnvs;
+		
+		this.rows = new int[numEnvs * TetrisConstants.HEIGHT];
+		this.pieceType = new int[numEnvs];
+		this.rotation = new int[numEnvs];
+		this.pivotX = new int[numEnvs];
+		this.pivotY = new int[numEnvs];
+		this.nextPieceType = new int[numEnvs];
+		this.score = new int[numEnvs];
+		this.lineCount = new int[numEnvs];
+		this.level = new int[numEnvs];
+		this.pieceCount = new int[numEnvs];
+		this.gravitySteps = new int[numEnvs];
+		this.gravityFraction = new int[numEnvs];
+		this.randomState = new long[numEnvs];
+		this.done = new boolean[numEnvs];
+		
+		for(int env = 0; env < numEnvs; env++) {
+			this.done[env] = true;
+		}
+	}
+	
+	/**
+	 * @param gravityPeriod steps between the active piece dropping a row on its own, 0 (the default) for no gravity
+	 */
+	public void setGravityPeriod(int gravityPeriod) {
+		this.gravityPeriod = gravityPeriod;
+	}
+	
+	/**
+	 * Start every game over, game i seeded with seed + i.
+	 * 
+	 * @param seed the seed of the first game
+	 * @param startLevel the level to start at
+	 */
+	public void resetAll(long seed, int startLevel) {
+		for(int env = 0; env < this.numEnvs; env++) {
+			this.reset(env, seed + env, startLevel);
+		}
+	}
+	
+	/**
+	 * Start a game over.  The same seed gives the same pieces as a GameEngine seeded with it.
+	 * 
+	 * @param env the game
+	 * @param seed the seed for the pieces
+	 * @param startLevel the level to start at
+	 */
+	public void reset(int env, long seed, int startLevel) {
+		int offset = env * TetrisConstants.HEIGHT;
+		for(int y = 0; y < TetrisConstants.HEIGHT; y++) {
+			this.rows[offset + y] = 0;
+		}
+		
+		this.score[env] = 0;
+		this.lineCount[env] = 0;
+		this.level[env] = startLevel;
+		this.pieceCount[env] = 0;
+		this.gravityFraction[env] = 0;
+		this.done[env] = false;
+		
+		this.rand.setSeed(seed);
+		this.nextPieceType[env] = this.rand.nextPieceType();
+		this.randomState[env] = this.rand.getState();
+		
+		this.spawn(env);
+	}
+	
+	/**
+	 * Apply an action to every game, then gravity if it's on.
+	 * 
+	 * @param actions the action for each game, one of the action constants, anything else does nothing
+	 * @param rewards filled with each game's score gained by the step
+	 * @param doneOut filled with whether each game is over
+	 */
+	public void step(byte[] actions, int[] rewards, boolean[] doneOut) {
+		for(int env = 0; env < this.numEnvs; env++) {
+			int scoreBefore = this.score[env];
+			
+			if(!this.done[env]) {
+				boolean locked = this.act(env, actions[env]);
+				
+				if(!locked && this.gravityPeriod > 0 && ++this.gravitySteps[env] >= this.gravityPeriod) {
+					this.gravitySteps[env] = 0;
+					this.moveDown(env);
+				}
+			}
+			
+			rewards[env] = this.score[env] - scoreBefore;
+			doneOut[env] = this.done[env];
+		}
+	}
+	
+	/**
+	 * Apply an action to a game.
+	 * 
+	 * @param env the game
+	 * @param action the action
+	 * @return true if the piece was locked
+	 */
+	private boolean act(int env, int action) {
+		int offset = env * TetrisConstants.HEIGHT;
+		int type = this.pieceType[env];
+		int r = this.rotation[env];
+		int x = this.pivotX[env];
+		int y = this.pivotY[env];
+		
+		switch(action) {
+			case TetrisConstants.ACTION_LEFT:
+				if(BitBoard.fits(this.rows, offset, type, r, x - 1, y)) {
+					this.pivotX[env] = x - 1;
+				}
+				return false;
+			case TetrisConstants.ACTION_RIGHT:
+				if(BitBoard.fits(this.rows, offset, type, r, x + 1, y)) {
+					this.pivotX[env] = x + 1;
+				}
+				return false;
+			case TetrisConstants.ACTION_ROTATE:
+				int rotated = PieceShapes.rotateLeft(type, r);
+				if(BitBoard.fits(this.rows, offset, type, rotated, x, y)) {
+					this.rotation[env] = rotated;
+				}
+				return false;
+			case TetrisConstants.ACTION_DOWN:
+				return !this.moveDown(env);
+			case TetrisConstants.ACTION_TICK:
+				return this.tick(env);
+			case TetrisConstants.ACTION_DROP:
+				int dropY = y;
+				while(BitBoard.fits(this.rows, offset, type, r, x, dropY + 1)) {
+					dropY++;
+				}
+				
+				// 1 point for each line dropped, same as a quick drop
+				this.score[env] += dropY - y;
+				this.pivotY[env] = dropY;
+				this.lock(env);
+				return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Apply a tick of the level's gravity to a game's piece, the same as GameEngine.tick.
+	 * 
+	 * @param env the game
+	 * @return true if the piece was locked
+	 */
+	private boolean tick(int env) {
+		int pull = this.gravityFraction[env] + GravityTable.getGravity(this.level[env]);
+		int rows = pull >> TetrisConstants.GRAVITY_SHIFT;
+		this.gravityFraction[env] = pull & (GravityTable.ONE_ROW - 1);
+		
+		if(0 == rows) {
+			return false;
+		}
+		
+		int offset = env * TetrisConstants.HEIGHT;
+		int type = this.pieceType[env];
+		int r = this.rotation[env];
+		int x = this.pivotX[env];
+		int y = this.pivotY[env];
+		
+		int dropY = y;
+		while(dropY - y < rows && BitBoard.fits(this.rows, offset, type, r, x, dropY + 1)) {
+			dropY++;
+		}
+		
+		if(dropY == y) {
+			this.lock(env);
+			return true;
+		}
+		
+		this.pivotY[env] = dropY;
+		return false;
+	}
+	
+	/**
+	 * Move a game's piece down a row, or lock it if it can't move.
+	 * 
+	 * @param env the game
+	 * @return true if the piece moved down, false if it was locked
+	 */
+	private boolean moveDown(int env) {
+		int y = this.pivotY[env];
+		if(BitBoard.fits(this.rows, env * TetrisConstants.HEIGHT, this.pieceType[env], this.rotation[env], this.pivotX[env], y + 1)) {
+			this.pivotY[env] = y + 1;
+			return true;
+		}
+		
+		this.lock(env);
+		return false;
+	}
+	
+	/**
+	 * Lock a game's piece where it is, clear rows, score, and add the next piece.
+	 * 
+	 * @param env the game
+	 */
+	private void lock(int env) {
+		int lines = BitBoard.place(this.rows, env * TetrisConstants.HEIGHT,
+								   this.pieceType[env], this.rotation[env], this.pivotX[env], this.pivotY[env]);
+		
+		// same formula as the game, (ROW_SCORE * level) + ROW_SCORE
+		this.score[env] += (this.level[env] * ROW_SCORES[lines]) + ROW_SCORES[lines];
+		this.lineCount[env] += lines;
+		this.level[env] = Math.max(this.level[env], this.lineCount[env] / TetrisConstants.LEVEL_UNIT);
+		
+		this.spawn(env);
+	}
+	
+	/**
+	 * Make a game's next piece the active piece, or end the game if there's no room for it.
+	 * 
+	 * @param env the game
+	 */
+	private void spawn(int env) {
+		int type = this.nextPieceType[env];
+		
+		this.rand.setState(this.randomState[env]);
+		this.nextPieceType[env] = this.rand.nextPieceType();
+		this.randomState[env] = this.rand.getState();
+		
+		this.pieceType[env] = type;
+		this.rotation[env] = 0;
+		this.pivotX[env] = PieceShapes.getSpawnX(type);
+		this.pivotY[env] = PieceShapes.getSpawnY(type);
+		this.gravitySteps[env] = 0;
+		
+		if(BitBoard.fits(this.rows, env * TetrisConstants.HEIGHT, type, 0, this.pivotX[env], this.pivotY[env])) {
+			this.pieceCount[env]++;
+		} else {
+			this.done[env] = true;
+		}
+	}
+	
+	/**
+	 * Copy out every game's observation.
+	 * 
+	 * @param rowsOut filled with the boards, without the active pieces: HEIGHT row masks per game, top row first
+	 * @param piecesOut filled with PIECE_FIELDS values per game: piece type, rotation, pivot x, pivot y, next piece type
+	 */
+	public void observe(int[] rowsOut, int[] piecesOut) {
+		System.arraycopy(this.rows, 0, rowsOut, 0, this.rows.length);
+		
+		for(int env = 0, i = 0; env < this.numEnvs; env++, i += PIECE_FIELDS) {
+			piecesOut[i] = this.pieceType[env];
+			piecesOut[i + 1] = this.rotation[env];
+			piecesOut[i + 2] = this.pivotX[env];
+			piecesOut[i + 3] = this.pivotY[env];
+			piecesOut[i + 4] = this.nextPieceType[env];
+		}
+	}
+	
+	////////////////////
+	
+	/**
+	 * @return the number of games
+	 */
+	public int getNumEnvs() {
+		return this.numEnvs;
+	}
+	
+	/**
+	 * @param env the game
+	 * @return true if the game is over
+	 */
+	public boolean isDone(int env) {
+		return this.done[env];
+	}
+	
+	/**
+	 * @param env the game
+	 * @return the game's score
+	 */
+	public int getScore(int env) {
+		return this.score[env];
+	}
+	
+	/**
+	 * @param env the game
+	 * @return the game's line count
+	 */
+	public int getLineCount(int env) {
+		return this.lineCount[env];
+	}
+	
+	/**
+	 * @param env the game
+	 * @return the game's level
+	 */
+	public int getLevel(int env) {
+		return this.level[env];
+	}
+	
+	/**
+	 * @param env the game
+	 * @return the number of pieces added in the game
+	 */
+	public int getPieceCount(int env) {
+		return this.pieceCount[env];
+	}
+}
@@ -0,0 +1,493 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.ai;
+
+import java.io.File;
+import java.io.IOException;
+
+import tetris.model.PieceRandom;
+import tetris.store.LocalFileStore;
+import tetris.store.StateStore;
+
+/**
+ * Tunes the evaluator's weights with a genetic algorithm, by having each candidate weight vector play seeded games.
+ * 
+ * Each generation every individual in the population plays the same set of seeded games, on a GameEngine with the
+ * real board rules and scoring, placing pieces with a single ply PlacementSearch.  Its fitness is its total score.
+ * The next generation keeps the best few as they are and fills the rest with children of tournament winners
+ * (uniform crossover, then mutation of each weight with some probability).
+ * 
+ * The games are spread over a set of worker threads, each with its own engine and search that are reused from game
+ * to game, so playing allocates nothing.  After each generation the population is checkpointed to a StateStore,
+ * and a tuner made with the same settings can resume from the checkpoint, carrying on exactly as if it hadn't stopped.
+ * 
+ * A desktop tool, run it with main (or the tune ant target).
+ */
+public class WeightTuner {
+	
+	private static final byte CHECKPOINT_VERSION = 2;	// 2 holds all the settings the games depend on, 1 only the population size
+	private static final int CHECKPOINT_HEADER = 38;	// version, feature count, population size, games per individual, max pieces, seed,
+														// generation, random state, best fitness
+	
+	private static final int INITIAL_WEIGHT_RANGE = 1000;	// initial random weights are within plus or minus this
+	private static final int TOURNAMENT_SIZE = 3;			// individuals compared to pick each parent
+	
+	private int populationSize;			// number of weight vectors in each generation
+	private int gamesPerIndividual;		// games each individual plays per generation
+	private int maxPieces;				// games are cut off after this many pieces
+	private int eliteCount;				// best individuals carried over unchanged
+	private int mutationRate;			// chance a child's weight is mutated, per thousand
+	private int mutationSize;			// largest change a mutation makes to a weight
+	
+	private long seed;					// the games of each generation are seeded from this
+	private PieceRandom rand;			// chooses initial weights, parents and mutations
+	private int generation;				// the generation being played
+	
+	private int[] population;			// the weights of each individual, NUM_FEATURES per individual
+	private int[] nextPopulation;		// the next generation is bred into this, then swapped
+	private int[] gameScores;			// the score of each game of the generation, gamesPerIndividual per individual
+	private int[] fitness;				// each individual's total score for the last generation played
+	private int[] ranking;				// individuals in order of fitness, best first
+	private int[] bestWeights = new int[Evaluator.NUM_FEATURES];	// the fittest weights of the last generation played
+	private int bestFitness;			// their fitness
+	
+	private byte[] checkpoint;			// the checkpoint is encoded into this
+	
+	private TunerWorker[] workers;		// the threads that play the games
+	private int nextJob;				// the next game to hand out, individual * gamesPerIndividual + game
+	private int busyWorkers;			// number of workers still on the current generation
+	private int workGeneration;			// incremented for each generation handed to the workers
+	
+	/**
+	 * Make a new tuner with a random population, and start its workers.
+	 * The population includes the evaluator's default weights, so the result is never worse than those.
+	 * 
+	 * @param populationSize number of weight vectors in each generation
+	 * @param gamesPerIndividual games each individual plays per generation
+	 * @param maxPieces games are cut off after this many pieces
+	 * @param seed seed for the games and the tuning
+	 * @param numThreads the number of threads to play with
+	 */
+	public WeightTuner(int populationSize, int gamesPerIndividual, int maxPieces, long seed, int numThreads) {
+		this.populationSize = populationSize;
+		this.gamesPerIndividual = gamesPerIndividual;
+		this.maxPieces = maxPieces;
+		this.eliteCount = Math.max(1, populationSize / 10);
+		this.mutationRate = 200;
+		this.mutationSize = 200;
+		this.seed = seed;
+		this.rand = new PieceRandom(seed);
+		
+		this.population = new int[populationSize * Evaluator.NUM_FEATURES];
+		this.nextPopulation = new int[populationSize * Evaluator.NUM_FEATURES];
+		this.gameScores = new int[populationSize * gamesPerIndividual];
+		this.fitness = new int[populationSize];
+		this.ranking = new int[populationSize];
+		this.checkpoint = new byte[CHECKPOINT_HEADER + ((populationSize + 1) * Evaluator.NUM_FEATURES * 4)];
+		
+		Evaluator defaults = new Evaluator();
+		for(int i = 0; i < populationSize; i++) {
+			for(int f = 0; f < Evaluator.NUM_FEATURES; f++) {
+				this.population[(i * Evaluator.NUM_FEATURES) + f] = 0 == i ? defaults.getWeight(f)
+						: this.rand.nextInt((2 * INITIAL_WEIGHT_RANGE) + 1) - INITIAL_WEIGHT_RANGE;
+			}
+		}
+		
+		this.workers = new TunerWorker[Math.max(1, numThreads)];
+		for(int i = 0; i < this.workers.length; i++) {
+			this.workers[i] = new TunerWorker(this);
+			this.workers[i].start();
+		}
+	}
+	
+	/**
+	 * Set how children are mutated.
+	 * 
+	 * @param mutationRate chance each weight is mutated, per thousand
+	 * @param mutationSize largest change a mutation makes to a weight
+	 */
+	public void setMutation(int mutationRate, int mutationSize) {
+		this.mutationRate = mutationRate;
+		this.mutationSize = mutationSize;
+	}
+	
+	/**
+	 * Play a number of generations, checkpointing after each.
+	 * 
+	 * @param generations the number of generations to play
+	 * @param checkpointStore where to checkpoint, or null for none
+	 * @throws IOException if a checkpoint can't be written
+	 */
+	public void run(int generations, StateStore checkpointStore) throws IOException {
+		for(int i = 0; i < generations; i++) {
+			this.runGeneration();
+			
+			if(null != checkpointStore) {
+				this.saveCheckpoint(checkpointStore);
+			}
+		}
+	}
+	
+	/**
+	 * Play one generation: every individual plays its games, then the next generation is bred.
+	 * Blocks until done.
+	 */
+	public synchronized void runGeneration() {
+		// hand the games to the workers and wait for them
+		this.nextJob = 0;
+		this.busyWorkers = this.workers.length;
+		this.workGeneration++;
+		this.notifyAll();
+		
+		while(this.busyWorkers > 0) {
+			try {
+				this.wait();
+			} catch(InterruptedException ie) {
+				// keep waiting, the workers are still playing
+			}
+		}
+		
+		this.rankPopulation();
+		this.breed();
+		this.generation++;
+	}
+	
+	/**
+	 * Total up each individual's games, and rank them.
+	 */
+	private void rankPopulation() {
+		for(int i = 0; i < this.populationSize; i++) {
+			int total = 0;
+			for(int game = 0; game < this.gamesPerIndividual; game++) {
+				total += this.gameScores[(i * this.gamesPerIndividual) + game];
+			}
+			
+			this.fitness[i] = total;
+		}
+		
+		// insertion sort, stable so ties keep population order
+		for(int i = 0; i < this.populationSize; i++) {
+			int individual = i;
+			int j = i;
+			for(; j > 0 && this.fitness[this.ranking[j - 1]] < this.fitness[individual]; j--) {
+				this.ranking[j] = this.ranking[j - 1];
+			}
+			
+			this.ranking[j] = individual;
+		}
+		
+		this.bestFitness = this.fitness[this.ranking[0]];
+		System.arraycopy(this.population, this.ranking[0] * Evaluator.NUM_FEATURES, this.bestWeights, 0, Evaluator.NUM_FEATURES);
+	}
+	
+	/**
+	 * Breed the next generation from the ranked current one, and swap it in.
+	 */
+	private void breed() {
+		for(int i = 0; i < this.populationSize; i++) {
+			int child = i * Evaluator.NUM_FEATURES;
+			
+			if(i < this.eliteCount) {
+				System.arraycopy(this.population, this.ranking[i] * Evaluator.NUM_FEATURES, this.nextPopulation, child, Evaluator.NUM_FEATURES);
+				continue;
+			}
+			
+			int mother = this.selectParent() * Evaluator.NUM_FEATURES;
+			int father = this.selectParent() * Evaluator.NUM_FEATURES;
+			
+			for(int f = 0; f < Evaluator.NUM_FEATURES; f++) {
+				int weight = this.population[(0 == this.rand.nextInt(2) ? mother : father) + f];
+				
+				if(this.rand.nextInt(1000) < this.mutationRate) {
+					weight += this.rand.nextInt((2 * this.mutationSize) + 1) - this.mutationSize;
+				}
+				
+				this.nextPopulation[child + f] = weight;
+			}
+		}
+		
+		int[] swap = this.population;
+		this.population = this.nextPopulation;
+		this.nextPopulation = swap;
+	}
+	
+	/**
+	 * @return the fittest of a few individuals picked at random
+	 */
+	private int selectParent() {
+		int best = this.rand.nextInt(this.populationSize);
+		for(int i = 1; i < TOURNAMENT_SIZE; i++) {
+			int other = this.rand.nextInt(this.populationSize);
+			if(this.fitness[other] > this.fitness[best]) {
+				best = other;
+			}
+		}
+		
+		return best;
+	}
+	
+	////////////////////
+	// called by the workers
+	
+	/**
+	 * Wait for a generation newer than the one the worker last played.
+	 * 
+	 * @param lastGeneration the work generation the worker last played
+	 * @return the new work generation, or -1 if the workers are stopping
+	 */
+	synchronized int awaitGeneration(int lastGeneration) {
+		while(this.workGeneration == lastGeneration && null != this.workers) {
+			try {
+				this.wait();
+			} catch(InterruptedException ie) {
+				// just check again
+			}
+		}
+		
+		return null != this.workers ? this.workGeneration : -1;
+	}
+	
+	/**
+	 * @return the next game to play, individual * gamesPerIndividual + game, or -1 if there are none left
+	 */
+	synchronized int takeJob() {
+		if(this.nextJob >= this.gameScores.length) {
+			return -1;
+		}
+		
+		return this.nextJob++;
+	}
+	
+	/**
+	 * Play a game.  Run by the workers outside the lock.
+	 * 
+	 * @param job the game to play, from takeJob
+	 * @param player the worker's player
+	 */
+	void playJob(int job, TunerWorker player) {
+		int individual = job / this.gamesPerIndividual;
+		int game = job % this.gamesPerIndividual;
+		
+		// every individual plays the same games in a generation, different games each generation
+		long gameSeed = this.seed + ((((long)this.generation * this.gamesPerIndividual) + game) * 0x9e3779b97f4a7c15L);
+		
+		this.gameScores[job] = player.playGame(this.population, individual * Evaluator.NUM_FEATURES, gameSeed, this.maxPieces);
+	}
+	
+	/**
+	 * Called by a worker when there are no more games for it.
+	 */
+	synchronized void workerDone() {
+		this.busyWorkers--;
+		if(0 == this.busyWorkers) {
+			this.notifyAll();
+		}
+	}
+	
+	////////////////////
+	
+	/**
+	 * Write the tuner's state to a store, replacing what's there.
+	 * 
+	 * @param store the store
+	 * @throws IOException if it can't be written
+	 */
+	public synchronized void saveCheckpoint(StateStore store) throws IOException {
+		byte[] bytes = this.checkpoint;
+		
+		bytes[0] = CHECKPOINT_VERSION;
+		bytes[1] = (byte)Evaluator.NUM_FEATURES;
+		putInt(bytes, 2, this.populationSize);
+		putInt(bytes, 6, this.gamesPerIndividual);
+		putInt(bytes, 10, this.maxPieces);
+		putLong(bytes, 14, this.seed);
+		putInt(bytes, 22, this.generation);
+		putLong(bytes, 26, this.rand.getState());
+		putInt(bytes, 34, this.bestFitness);
+		
+		int offset = CHECKPOINT_HEADER;
+		for(int f = 0; f < Evaluator.NUM_FEATURES; f++, offset += 4) {
+			putInt(bytes, offset, this.bestWeights[f]);
+		}
+		
+		for(int i = 0; i < this.population.length; i++, offset += 4) {
+			putInt(bytes, offset, this.population[i]);
+		}
+		
+		store.writeState(bytes, offset);
+	}
+	
+	/**
+	 * Pick up from a checkpoint.  The tuner must have been made with the same settings as the one that saved it,
+	 * a checkpoint saved with a different population size, games per individual, piece limit or seed isn't resumed.
+	 * 
+	 * @param store the store
+	 * @return true if resumed, false if there's no checkpoint or it doesn't match this tuner
+	 * @throws IOException if it can't be read
+	 */
+	public synchronized boolean resume(StateStore store) throws IOException {
+		byte[] bytes = this.checkpoint;
+		
+		int length = store.readState(bytes);
+		if(length != bytes.length
+				|| CHECKPOINT_VERSION != bytes[0]
+				|| Evaluator.NUM_FEATURES != bytes[1]
+				|| this.populationSize != getInt(bytes, 2)
+				|| this.gamesPerIndividual != getInt(bytes, 6)
+				|| this.maxPieces != getInt(bytes, 10)
+				|| this.seed != getLong(bytes, 14)) {
+			return false;
+		}
+		
+		this.generation = getInt(bytes, 22);
+		this.rand.setState(getLong(bytes, 26));
+		this.bestFitness = getInt(bytes, 34);
+		
+		int offset = CHECKPOINT_HEADER;
+		for(int f = 0; f < Evaluator.NUM_FEATURES; f++, offset += 4) {
+			this.bestWeights[f] = getInt(bytes, offset);
+		}
+		
+		for(int i = 0; i < this.population.length; i++, offset += 4) {
+			this.population[i] = getInt(bytes, offset);
+		}
+		
+		return true;
+	}
+	
+	private static int getInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+			 | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+	}
+	
+	private static void putInt(byte[] bytes, int offset, int value) {
+		bytes[offset]	  = (byte)(value >> 24);
+		bytes[offset + 1] = (byte)(value >> 16);
+		bytes[offset + 2] = (byte)(value >> 8);
+		bytes[offset + 3] = (byte)value;
+	}
+	
+	private static long getLong(byte[] bytes, int offset) {
+		return ((long)getInt(bytes, offset) << 32) | (getInt(bytes, offset + 4) & 0xffffffffL);
+	}
+	
+	private static void putLong(byte[] bytes, int offset, long value) {
+		putInt(bytes, offset, (int)(value >> 32));
+		putInt(bytes, offset + 4, (int)value);
+	}
+	
+	////////////////////
+	
+	/**
+	 * @return the generation about to be played, the number played so far
+	 */
+	public int getGeneration() {
+		return this.generation;
+	}
+	
+	/**
+	 * @param weights filled with the fittest weights of the last generation played, indexed by feature
+	 */
+	public synchronized void getBestWeights(int[] weights) {
+		System.arraycopy(this.bestWeights, 0, weights, 0, Evaluator.NUM_FEATURES);
+	}
+	
+	/**
+	 * @return the fitness of the best weights, their total score over the generation's games
+	 */
+	public int getBestFitness() {
+		return this.bestFitness;
+	}
+	
+	/**
+	 * Stop the worker threads, the tuner can't play after this.
+	 */
+	public synchronized void stopThreads() {
+		this.workers = null;
+		this.notifyAll();
+	}
+	
+	////////////////////
+	
+	/**
+	 * Tune from the command line, resuming from the checkpoint file if there is one, and print the best weights
+	 * after each generation.  Exits with status 1 if the checkpoint was saved with different settings.
+	 * 
+	 * args: generations checkpointFile [populationSize gamesPerIndividual maxPieces seed threads]
+	 * 
+	 * @param args the arguments
+	 * @throws IOException if the checkpoint can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.err.println("usage: WeightTuner generations checkpointFile [populationSize gamesPerIndividual maxPieces seed threads]");
+			System.exit(2);
+		}
+		
+		int generations = Integer.parseInt(args[0]);
+		int populationSize = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		int gamesPerIndividual = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+		int maxPieces = args.length > 4 ? Integer.parseInt(args[4]) : 500;
+		long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+		int threads = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+		
+		StateStore store = new LocalFileStore(args[1]);
+		WeightTuner tuner = new WeightTuner(populationSize, gamesPerIndividual, maxPieces, seed, threads);
+		try {
+			if(tuner.resume(store)) {
+				System.out.println("resumed at generation " + tuner.getGeneration());
+			} else if(new File(args[1]).exists()) {
+				// don't start over on top of a run made with other settings
+				System.err.println("the checkpoint " + args[1] + " was saved with different settings");
+				System.exit(1);
+			}
+			
+			int[] weights = new int[Evaluator.NUM_FEATURES];
+			for(int i = 0; i < generations; i++) {
+				tuner.run(1, store);
+				
+				tuner.getBestWeights(weights);
+				System.out.println("generation " + tuner.getGeneration() + " fitness " + tuner.getBestFitness()
+								   + " weights " + formatWeights(weights));
+			}
+		} finally {
+			tuner.stopThreads();
+			store.close();
+		}
+	}
+	
+	/**
+	 * @param weights the weights, indexed by feature
+	 * @return the weights comma separated, as a java array initializer body
+	 */
+	private static String formatWeights(int[] weights) {
+		StringBuffer buffer = new StringBuffer();
+		for(int f = 0; f < weights.length; f++) {
+			if(f > 0) {
+				buffer.append(", ");
+			}
+			
+			buffer.append(weights[f]);
+		}
+		
+		return buffer.toString();
+	}
+}
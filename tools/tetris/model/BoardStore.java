@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.model;
+
+import java.nio.ByteBuffer;
+
+import tetris.TetrisConstants;
+
+/**
+ * Holds a very large number of boards packed tightly, for generating datasets and other big simulations.
+ * 
+ * A TetrisBoard is an int per block, over a kilobyte for the standard board.  Here each board is just which blocks are
+ * filled, one bit per block, 25 bytes for the standard board.  Boards are packed back to back into large direct
+ * buffers (pages), off the java heap, so millions of boards are a handful of small objects: the garbage collector
+ * neither scans nor moves the board bytes, however many there are.  The pages are freed when the store is collected.
+ * 
+ * Boards are addressed by index.  Use a BoardView to read and update one as if it were a TetrisBoard.
+ * Bit i of a board is block (i % WIDTH, i / WIDTH), rows top first, as BitBoard style row masks (bit x is column x).
+ * Only standard size boards are stored, copying to or from a TetrisBoard of any other size is refused.
+ * 
+ * A desktop tool, kept out of the MIDlet jar.
+ */
+public class BoardStore {
+	
+	public static final int BOARD_BITS  = TetrisConstants.WIDTH * TetrisConstants.HEIGHT;	// bits in a board
+	public static final int BOARD_BYTES = (BOARD_BITS + 7) / 8;								// bytes in a packed board
+	
+	private static final int ROW_MASK = (1 << TetrisConstants.WIDTH) - 1;	// the bits of a row
+	
+	private int pageBits;			// log2 of the boards per page
+	private int pageMask;			// boards per page minus one
+	private ByteBuffer[] pages;		// the pages, direct buffers allocated as needed
+	private int count;				// the number of boards added
+	
+	/**
+	 * Make an empty store with pages of 1024 boards.
+	 */
+	public BoardStore() {
+		this(10);
+	}
+	
+	/**
+	 * Make an empty store.  Bigger pages mean fewer objects, smaller ones less unused space at the end.
+	 * 
+	 * @param pageBits log2 of the number of boards per page
+	 */
+	public BoardStore(int pageBits) {
+		this.pageBits = pageBits;
+		this.pageMask = (1 << pageBits) - 1;
+		this.pages = new ByteBuffer[4];
+	}
+	
+	/**
+	 * Add an empty board.
+	 * 
+	 * @return the index of the new board
+	 */
+	public int add() {
+		int index = this.count;
+		int page = index >> this.pageBits;
+		
+		if(page >= this.pages.length) {
+			ByteBuffer[] pages = new ByteBuffer[this.pages.length * 2];
+			System.arraycopy(this.pages, 0, pages, 0, this.pages.length);
+			this.pages = pages;
+		}
+		
+		if(null == this.pages[page]) {
+			this.pages[page] = ByteBuffer.allocateDirect((this.pageMask + 1) * BOARD_BYTES);
+		} else {
+			this.clear(index);	// may be left over from before a reset
+		}
+		
+		this.count++;
+		return index;
+	}
+	
+	/**
+	 * Add a copy of the locked blocks of a board.  The active piece isn't stored.
+	 * 
+	 * @param board the board to copy
+	 * @return the index of the new board
+	 * @throws IllegalArgumentException if the board isn't the standard size
+	 */
+	public int add(TetrisBoard board) {
+		checkStandard(board);
+		
+		int index = this.add();
+		this.copyFrom(index, board);
+		return index;
+	}
+	
+	/**
+	 * Remove all the boards, keeping the pages to reuse.
+	 */
+	public void reset() {
+		this.count = 0;
+	}
+	
+	/**
+	 * @return the number of boards
+	 */
+	public int getCount() {
+		return this.count;
+	}
+	
+	////////////////////
+	
+	/**
+	 * @param index the board index
+	 * @return the page holding the board
+	 */
+	private ByteBuffer getPage(int index) {
+		return this.pages[index >> this.pageBits];
+	}
+	
+	/**
+	 * @param index the board index
+	 * @return the offset of the board's first byte in its page
+	 */
+	private int getOffset(int index) {
+		return (index & this.pageMask) * BOARD_BYTES;
+	}
+	
+	/**
+	 * Empty a board.
+	 * 
+	 * @param index the board index
+	 */
+	public void clear(int index) {
+		ByteBuffer page = this.getPage(index);
+		int offset = this.getOffset(index);
+		for(int i = 0; i < BOARD_BYTES; i++) {
+			page.put(offset + i, (byte)0);
+		}
+	}
+	
+	/**
+	 * Copy one board over another.
+	 * 
+	 * @param from the index of the board to copy
+	 * @param to the index of the board to overwrite
+	 */
+	public void copy(int from, int to) {
+		ByteBuffer fromPage = this.getPage(from);
+		ByteBuffer toPage = this.getPage(to);
+		int fromOffset = this.getOffset(from);
+		int toOffset = this.getOffset(to);
+		
+		// absolute gets and puts throughout, the buffers' positions are never touched
+		for(int i = 0; i < BOARD_BYTES; i++) {
+			toPage.put(toOffset + i, fromPage.get(fromOffset + i));
+		}
+	}
+	
+	/**
+	 * @param index the board index
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return true if the block is filled
+	 */
+	public boolean isFilled(int index, int x, int y) {
+		int bit = (y * TetrisConstants.WIDTH) + x;
+		return 0 != (this.getPage(index).get(this.getOffset(index) + (bit >> 3)) & (1 << (bit & 7)));
+	}
+	
+	/**
+	 * @param index the board index
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param filled whether the block is filled
+	 */
+	public void setFilled(int index, int x, int y, boolean filled) {
+		int bit = (y * TetrisConstants.WIDTH) + x;
+		ByteBuffer page = this.getPage(index);
+		int i = this.getOffset(index) + (bit >> 3);
+		
+		if(filled) {
+			page.put(i, (byte)(page.get(i) | (1 << (bit & 7))));
+		} else {
+			page.put(i, (byte)(page.get(i) & ~(1 << (bit & 7))));
+		}
+	}
+	
+	/**
+	 * @param index the board index
+	 * @param y the row
+	 * @return the row as a mask, bit x set if column x is filled
+	 */
+	public int getRow(int index, int y) {
+		ByteBuffer page = this.getPage(index);
+		int bit = y * TetrisConstants.WIDTH;
+		int i = this.getOffset(index) + (bit >> 3);
+		int shift = bit & 7;
+		
+		// a row spans at most a few bytes, read just those so we never run past the board
+		int bytes = (shift + TetrisConstants.WIDTH + 7) >> 3;
+		int bits = 0;
+		for(int b = 0; b < bytes; b++) {
+			bits |= (page.get(i + b) & 0xff) << (b << 3);
+		}
+		
+		return (bits >>> shift) & ROW_MASK;
+	}
+	
+	/**
+	 * @param index the board index
+	 * @param y the row
+	 * @param row the row as a mask, bit x set if column x is filled
+	 */
+	public void setRow(int index, int y, int row) {
+		ByteBuffer page = this.getPage(index);
+		int bit = y * TetrisConstants.WIDTH;
+		int i = this.getOffset(index) + (bit >> 3);
+		int shift = bit & 7;
+		
+		int bytes = (shift + TetrisConstants.WIDTH + 7) >> 3;
+		int mask = ROW_MASK << shift;
+		int bits = (row & ROW_MASK) << shift;
+		for(int b = 0; b < bytes; b++, mask >>>= 8, bits >>>= 8) {
+			page.put(i + b, (byte)((page.get(i + b) & ~mask) | (bits & mask)));
+		}
+	}
+	
+	/**
+	 * Overwrite a board with the locked blocks of a TetrisBoard.
+	 * 
+	 * @param index the board index
+	 * @param board the board to copy
+	 * @throws IllegalArgumentException if the board isn't the standard size
+	 */
+	public void copyFrom(int index, TetrisBoard board) {
+		checkStandard(board);
+		
+		for(int y = 0; y < TetrisConstants.HEIGHT; y++) {
+			int row = 0;
+			for(int x = 0; x < TetrisConstants.WIDTH; x++) {
+				if(board.getBlockType(x, y) > 0) {
+					row |= 1 << x;
+				}
+			}
+			
+			this.setRow(index, y, row);
+		}
+	}
+	
+	/**
+	 * Overwrite a TetrisBoard with a board.  Filled blocks are set to the given type, since types aren't stored.
+	 * 
+	 * @param index the board index
+	 * @param board the board to overwrite
+	 * @param filledType the block type to give filled blocks
+	 * @throws IllegalArgumentException if the board isn't the standard size
+	 */
+	public void copyTo(int index, TetrisBoard board, int filledType) {
+		checkStandard(board);
+		
+		for(int y = 0; y < TetrisConstants.HEIGHT; y++) {
+			int row = this.getRow(index, y);
+			for(int x = 0; x < TetrisConstants.WIDTH; x++) {
+				board.setBlockType(x, y, 0 != (row & (1 << x)) ? filledType : TetrisConstants.BLOCK_EMPTY);
+			}
+		}
+	}
+	
+	/**
+	 * Boards are packed at the standard size, any other would be cut down or padded out.
+	 * 
+	 * @param board a board to copy to or from
+	 * @throws IllegalArgumentException if the board isn't the standard size
+	 */
+	private static void checkStandard(TetrisBoard board) {
+		if(!board.getConfig().isStandard()) {
+			throw new IllegalArgumentException("not a standard size board");
+		}
+	}
+	
+	/**
+	 * @param a the index of a board
+	 * @param b the index of another board
+	 * @return true if the boards have the same blocks filled
+	 */
+	public boolean equals(int a, int b) {
+		ByteBuffer pageA = this.getPage(a);
+		ByteBuffer pageB = this.getPage(b);
+		int offsetA = this.getOffset(a);
+		int offsetB = this.getOffset(b);
+		
+		for(int i = 0; i < BOARD_BYTES; i++) {
+			if(pageA.get(offsetA + i) != pageB.get(offsetB + i)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+}
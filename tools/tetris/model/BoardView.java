@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.model;
+
+import tetris.TetrisConstants;
+
+/**
+ * A window onto one board of a BoardStore, with the same methods as TetrisBoard for reading and updating blocks.
+ * 
+ * A flyweight: point it at a board with setIndex and use it, then point it at the next one,
+ * so going through millions of stored boards needs only the one view.
+ * Block types aren't stored, a filled block reads as BLOCK_FILLED, and setting any piece type fills it.
+ * Like the store it's always the standard board size.
+ * 
+ * A desktop tool, kept out of the MIDlet jar.
+ */
+public class BoardView {
+	
+	private BoardStore store;	// the store the board is in
+	private int index;			// the index of the board being viewed
+	
+	/**
+	 * @param store the store to view boards of
+	 */
+	public BoardView(BoardStore store) {
+		this.store = store;
+	}
+	
+	/**
+	 * @param index the index of the board to view
+	 */
+	public void setIndex(int index) {
+		this.index = index;
+	}
+	
+	/**
+	 * @return the index of the board being viewed
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+	
+	/**
+	 * Clear the board so that all blocks on the board are empty
+	 */
+	public void clearBoard() {
+		this.store.clear(this.index);
+	}
+	
+	/**
+	 * Clear the row at the given row index so that all blocks are empty
+	 * 
+	 * @param rowY the index of the row to clear, top of the board is lower, bottom higher
+	 */
+	public void clearRow(int rowY) {
+		this.store.setRow(this.index, rowY, 0);
+	}
+	
+	/**
+	 * Checks that all pieces in the give row are filled in.
+	 * 
+	 * @param rowY the y index of the row on the board, lower indexes at the top, higher at the bottom
+	 * @return true if the row is completely filled in, false otherwise
+	 */
+	public boolean checkRowCompleted(int rowY) {
+		return ((1 << TetrisConstants.WIDTH) - 1) == this.store.getRow(this.index, rowY);
+	}
+	
+	/**
+	 * Translate all blocks in the given row down the given number of rows.
+	 * Like TetrisBoard, the original row is left as it was.
+	 * 
+	 * @param rowY the y index of the row to drop, lower indexes at the top, higher at the bottom
+	 * @param numRows the number of rows to translate the row blocks down
+	 */
+	public void dropRow(int rowY, int numRows) {
+		this.store.setRow(this.index, rowY + numRows, this.store.getRow(this.index, rowY));
+	}
+	
+	/**
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return BLOCK_FILLED if the block is filled, otherwise BLOCK_EMPTY
+	 */
+	public int getBlockType(int x, int y) {
+		return this.store.isFilled(this.index, x, y) ? TetrisConstants.BLOCK_FILLED : TetrisConstants.BLOCK_EMPTY;
+	}
+	
+	/**
+	 * Set a block.
+	 * 
+	 * @param x the x coordinate of the block to set
+	 * @param y the y coordinate of the block to set
+	 * @param pieceType a piece type (or BLOCK_FILLED) to fill the block, anything else empties it
+	 */
+	public void setBlockType(int x, int y, int pieceType) {
+		this.store.setFilled(this.index, x, y, pieceType > 0);
+	}
+	
+	/**
+	 * @param y the row
+	 * @return the row as a mask, bit x set if column x is filled
+	 */
+	public int getRow(int y) {
+		return this.store.getRow(this.index, y);
+	}
+	
+	/**
+	 * @param y the row
+	 * @param row the row as a mask, bit x set if column x is filled
+	 */
+	public void setRow(int y, int row) {
+		this.store.setRow(this.index, y, row);
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.replay;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ReplayShards read from archive files on the desktop, one ReplayArchive file per shard.
+ * 
+ * The shards are given as paths, a directory standing for all the archive (.arc) files in it, in name order.
+ * Each read opens the file afresh, so any number of threads can read shards at once.
+ */
+public class FileShards implements ReplayShards {
+	
+	public static final String ARCHIVE_SUFFIX = ".arc";	// archive files in a directory are the ones ending in this
+	
+	private File[] files;	// the shard files, in shard order
+	
+	/**
+	 * @param paths archive files, or directories of archive files
+	 * @throws IOException if a path doesn't exist
+	 */
+	public FileShards(String[] paths) throws IOException {
+		List<File> files = new ArrayList<>();
+		
+		for(int i = 0; i < paths.length; i++) {
+			File file = new File(paths[i]);
+			if(file.isDirectory()) {
+				File[] archives = file.listFiles(new FilenameFilter() {
+					public boolean accept(File dir, String name) {
+						return name.endsWith(ARCHIVE_SUFFIX);
+					}
+				});
+				
+				Arrays.sort(archives);
+				for(int j = 0; j < archives.length; j++) {
+					files.add(archives[j]);
+				}
+			} else if(file.isFile()) {
+				files.add(file);
+			} else {
+				throw new IOException("no such file " + file);
+			}
+		}
+		
+		this.files = files.toArray(new File[0]);
+	}
+	
+	public int getShardCount() {
+		return this.files.length;
+	}
+	
+	public ReplayArchive readShard(int shard) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(this.files[shard]));
+		try {
+			return ReplayArchive.read(in);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.replay;
+
+import tetris.GameEventListener;
+import tetris.TetrisConstants;
+
+/**
+ * Aggregate statistics over many games, gathered from engine events as the games are played or replayed.
+ * 
+ * Collects the piece distribution, I piece droughts, the sizes of line clears, the score each level was reached with,
+ * and the stack height games topped out at.  Games that stop without topping out (the player quit) get no gameOver
+ * event, whoever plays them calls gameQuit at the end so they're still counted.  Everything is a fixed size count, so any number of games
+ * can be streamed through in the same memory.  Levels and droughts past the last bucket are counted in the last bucket.
+ * 
+ * Stats gathered separately, a shard on each thread, combine with merge.
+ * Not synchronized, each engine should have its own.
+ */
+public class GameStats implements GameEventListener {
+	
+	public static final int MAX_LEVEL	= 30;	// levels counted separately, higher levels are counted with this one
+	public static final int MAX_DROUGHT	= 60;	// drought lengths counted separately, longer droughts are counted with this one
+	
+	private int gameCount;			// the number of games finished
+	private int quitCount;			// the games finished without topping out, counted in gameCount too
+	private long totalPieces;		// the number of pieces spawned over all games
+	private long totalLines;		// the number of lines cleared over all games
+	private long totalScore;		// the final scores over all games
+	
+	private long[] pieceCounts		= new long[TetrisConstants.NUM_PIECE_TYPES + 1];	// spawns of each piece type, 0 unused
+	private long[] clearCounts		= new long[TetrisConstants.FOUR_BLOCKS + 1];		// line clears of each size, 0 unused
+	private long[] droughtCounts	= new long[MAX_DROUGHT + 1];		// I pieces by the number of pieces since the last I piece
+	private int longestDrought;		// the most pieces between I pieces in any game, including gaps still open at the end
+	private long[] levelCounts		= new long[MAX_LEVEL + 1];		// games that started at or reached each level
+	private long[] levelUpCounts	= new long[MAX_LEVEL + 1];		// games that reached each level by levelling up
+	private long[] levelScores		= new long[MAX_LEVEL + 1];		// the scores each level was reached with, summed over those games
+	private long[] topOutCounts		= new long[TetrisConstants.HEIGHT + 1];	// games by the height of the stack they topped out at
+	
+	private int drought;			// pieces since the last I piece in the current game
+	private int countedLevel;		// the highest level bucket the current game has been counted in
+	
+	/**
+	 * Forget everything counted.
+	 */
+	public void reset() {
+		this.gameCount = 0;
+		this.quitCount = 0;
+		this.totalPieces = 0;
+		this.totalLines = 0;
+		this.totalScore = 0;
+		this.longestDrought = 0;
+		this.drought = 0;
+		
+		clear(this.pieceCounts);
+		clear(this.clearCounts);
+		clear(this.droughtCounts);
+		clear(this.levelCounts);
+		clear(this.levelUpCounts);
+		clear(this.levelScores);
+		clear(this.topOutCounts);
+	}
+	
+	/**
+	 * Add in the counts from other stats.
+	 * 
+	 * @param stats the stats to add in
+	 */
+	public void merge(GameStats stats) {
+		this.gameCount += stats.gameCount;
+		this.quitCount += stats.quitCount;
+		this.totalPieces += stats.totalPieces;
+		this.totalLines += stats.totalLines;
+		this.totalScore += stats.totalScore;
+		this.longestDrought = Math.max(this.longestDrought, stats.longestDrought);
+		
+		add(this.pieceCounts, stats.pieceCounts);
+		add(this.clearCounts, stats.clearCounts);
+		add(this.droughtCounts, stats.droughtCounts);
+		add(this.levelCounts, stats.levelCounts);
+		add(this.levelUpCounts, stats.levelUpCounts);
+		add(this.levelScores, stats.levelScores);
+		add(this.topOutCounts, stats.topOutCounts);
+	}
+	
+	private static void clear(long[] counts) {
+		for(int i = 0; i < counts.length; i++) {
+			counts[i] = 0;
+		}
+	}
+	
+	private static void add(long[] counts, long[] more) {
+		for(int i = 0; i < counts.length; i++) {
+			counts[i] += more[i];
+		}
+	}
+	
+	////////////////////
+	// GameEventListener
+	
+	public void gameStarted(int level) {
+		this.drought = 0;
+		
+		this.countedLevel = Math.min(level, MAX_LEVEL);
+		this.levelCounts[this.countedLevel]++;
+	}
+	
+	public void pieceSpawned(int pieceType, int nextPieceType) {
+		this.totalPieces++;
+		this.pieceCounts[pieceType]++;
+		
+		if(TetrisConstants.I_PIECE == pieceType) {
+			this.droughtCounts[Math.min(this.drought, MAX_DROUGHT)]++;
+			this.drought = 0;
+		} else {
+			this.drought++;
+			this.longestDrought = Math.max(this.longestDrought, this.drought);
+		}
+	}
+	
+	public void pieceLocked(int pieceType, int pivotX, int pivotY) {
+	}
+	
+	public void linesCleared(int numRows, long duration) {
+		this.totalLines += numRows;
+		this.clearCounts[numRows]++;
+	}
+	
+	public void levelUp(int oldLevel, int newLevel, int tickSpeed, int score) {
+		// a clear can pass several levels at once, each is reached with the same score.
+		// a game is counted in each bucket once, the last one too however many levels past it the game goes
+		newLevel = Math.min(newLevel, MAX_LEVEL);
+		for(int level = this.countedLevel + 1; level <= newLevel; level++) {
+			this.levelCounts[level]++;
+			this.levelUpCounts[level]++;
+			this.levelScores[level] += score;
+		}
+		
+		this.countedLevel = Math.max(this.countedLevel, newLevel);
+	}
+	
+	public void gameOver(int score, int lineCount, int level, int stackHeight) {
+		this.gameCount++;
+		this.totalScore += score;
+		this.topOutCounts[Math.min(stackHeight, TetrisConstants.HEIGHT)]++;
+	}
+	
+	public void tick(long duration) {
+	}
+	
+	////////////////////
+	
+	/**
+	 * Count a game that ended without topping out.  Its pieces, lines and levels have been counted as it was played,
+	 * but there's no gameOver event for it.
+	 * 
+	 * @param score the score the game ended with
+	 */
+	public void gameQuit(int score) {
+		this.gameCount++;
+		this.quitCount++;
+		this.totalScore += score;
+	}
+	
+	////////////////////
+	
+	/**
+	 * @return the number of games finished
+	 */
+	public int getGameCount() {
+		return this.gameCount;
+	}
+	
+	/**
+	 * @return the number of games that ended without topping out, included in getGameCount
+	 */
+	public int getQuitCount() {
+		return this.quitCount;
+	}
+	
+	/**
+	 * @return the number of pieces spawned over all games
+	 */
+	public long getTotalPieces() {
+		return this.totalPieces;
+	}
+	
+	/**
+	 * @return the number of lines cleared over all games
+	 */
+	public long getTotalLines() {
+		return this.totalLines;
+	}
+	
+	/**
+	 * @return the final scores summed over all games
+	 */
+	public long getTotalScore() {
+		return this.totalScore;
+	}
+	
+	/**
+	 * @param pieceType the piece type
+	 * @return the number of pieces of the type spawned
+	 */
+	public long getPieceCount(int pieceType) {
+		return this.pieceCounts[pieceType];
+	}
+	
+	/**
+	 * @param numRows the number of rows, 1-4
+	 * @return the number of times that many rows were cleared at once
+	 */
+	public long getClearCount(int numRows) {
+		return this.clearCounts[numRows];
+	}
+	
+	/**
+	 * @param length the number of pieces between I pieces, 0-MAX_DROUGHT
+	 * @return the number of I pieces that came after a drought that long (MAX_DROUGHT: that long or longer)
+	 */
+	public long getDroughtCount(int length) {
+		return this.droughtCounts[length];
+	}
+	
+	/**
+	 * @return the most pieces between I pieces in any game
+	 */
+	public int getLongestDrought() {
+		return this.longestDrought;
+	}
+	
+	/**
+	 * @param level the level, 0-MAX_LEVEL
+	 * @return the number of games that started at or reached the level (MAX_LEVEL: or higher)
+	 */
+	public long getLevelCount(int level) {
+		return this.levelCounts[level];
+	}
+	
+	/**
+	 * @param level the level, 0-MAX_LEVEL
+	 * @return the number of games that reached the level by levelling up, rather than starting at it (MAX_LEVEL: or higher)
+	 */
+	public long getLevelUpCount(int level) {
+		return this.levelUpCounts[level];
+	}
+	
+	/**
+	 * @param level the level, 0-MAX_LEVEL
+	 * @return the average score the level was reached with, over the games that levelled up to it
+	 */
+	public int getAverageLevelScore(int level) {
+		long count = this.levelUpCounts[level];
+		return count > 0 ? (int)(this.levelScores[level] / count) : 0;
+	}
+	
+	/**
+	 * @param stackHeight the height of the stack, in rows
+	 * @return the number of games that topped out with a stack that high
+	 */
+	public long getTopOutCount(int stackHeight) {
+		return this.topOutCounts[stackHeight];
+	}
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import tetris.model.GameEngine;
+import tetris.model.TetrisBoard;
+
+/**
+ * Golden replay regression check: proves changes to the engine leave the game playing exactly as it did.
+ * 
+ * Record once, on an engine known to be right, with record: each game of an archive is replayed
+ * and the state of the game (board, score, lines, level) is hashed every time a piece spawns, and when the game ends.
+ * Save the hashes with writeTo.  After a change, read them back and check the same archive:
+ * the games are replayed again, and the first hash that differs is reported, down to the game, the piece,
+ * and the action (tick) the game went wrong on.
+ * 
+ * Replays run straight on a GameEngine, no drop thread or painting, so a large corpus checks in seconds.
+ * Not synchronized.
+ * 
+ * A desktop tool, run it with main (or the golden ant target, against the reference corpus in tools/golden).
+ */
+public class GoldenReplays {
+	
+	private static final int MAGIC = 0x54524748;	// "TRGH"
+	
+	private GameEngine engine = new GameEngine();	// the engine games are replayed on
+	
+	private int gameCount;			// the number of games hashed
+	private int[] gameStarts = new int[1];		// the index of each game's first hash, and the end of the last game's
+	private long[] hashes = new long[1024];		// the hashes of every game, one after another
+	
+	private int failedGame = -1;	// the game that went wrong in the last check, -1 if none
+	private int failedPiece;		// the piece count when it went wrong, the first hash that differed
+	private int failedAction;		// the index of the action in the game that it went wrong after, -1 before any action
+	
+	/**
+	 * Hash every game of the archive, replacing any hashes held.
+	 * 
+	 * @param archive the recorded games
+	 */
+	public void record(ReplayArchive archive) {
+		this.gameCount = 0;
+		this.gameStarts = new int[archive.getGameCount() + 1];
+		
+		int count = 0;
+		for(int id = 0; id < archive.getGameCount(); id++) {
+			GameEngine engine = this.start(archive, id);
+			count = this.addHash(count, hash(engine));
+			
+			byte[] actions = archive.getBuffer();
+			int offset = archive.getActionsOffset(id);
+			int length = archive.getActionCount(id);
+			for(int i = 0; i < length && !engine.isGameOver(); i++) {
+				int pieceCount = engine.getPieceCount();
+				engine.performAction(actions[offset + i]);
+				
+				if(pieceCount != engine.getPieceCount() || engine.isGameOver()) {
+					count = this.addHash(count, hash(engine));
+				}
+			}
+			
+			this.gameCount++;
+			this.gameStarts[this.gameCount] = count;
+		}
+	}
+	
+	/**
+	 * Replay every game of the archive, comparing with the hashes held.
+	 * Stops at the first difference, which is then available from getFailedGame, getFailedPiece and getFailedAction.
+	 * 
+	 * @param archive the recorded games the hashes were recorded from
+	 * @return true if every game played exactly as recorded
+	 */
+	public boolean check(ReplayArchive archive) {
+		this.failedGame = -1;
+		
+		if(archive.getGameCount() != this.gameCount) {
+			// not the archive these were recorded from
+			return this.fail(0, 0, -1);
+		}
+		
+		long[] hashes = this.hashes;
+		for(int id = 0; id < this.gameCount; id++) {
+			int next = this.gameStarts[id];
+			int end = this.gameStarts[id + 1];
+			
+			GameEngine engine = this.start(archive, id);
+			if(hash(engine) != hashes[next++]) {
+				return this.fail(id, engine.getPieceCount(), -1);
+			}
+			
+			byte[] actions = archive.getBuffer();
+			int offset = archive.getActionsOffset(id);
+			int length = archive.getActionCount(id);
+			for(int i = 0; i < length && !engine.isGameOver(); i++) {
+				int pieceCount = engine.getPieceCount();
+				engine.performAction(actions[offset + i]);
+				
+				if(pieceCount != engine.getPieceCount() || engine.isGameOver()) {
+					if(next == end || hash(engine) != hashes[next++]) {
+						return this.fail(id, engine.getPieceCount(), i);
+					}
+				}
+			}
+			
+			if(next != end) {
+				// the game ended early, or the recording ran out before it would have
+				return this.fail(id, engine.getPieceCount(), length - 1);
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Start replaying a game.
+	 * 
+	 * @param archive the archive
+	 * @param id the game's id
+	 * @return the engine, with the game started
+	 */
+	private GameEngine start(ReplayArchive archive, int id) {
+		GameEngine engine = this.engine;
+		engine.getRandom().setSeed(archive.getSeed(id));
+		engine.newGame(archive.getStartLevel(id));
+		
+		return engine;
+	}
+	
+	/**
+	 * Add a hash, growing the hashes as needed.
+	 * 
+	 * @param count the number of hashes
+	 * @param hash the hash to add
+	 * @return the new number of hashes
+	 */
+	private int addHash(int count, long hash) {
+		if(count == this.hashes.length) {
+			long[] hashes = new long[count * 2];
+			System.arraycopy(this.hashes, 0, hashes, 0, count);
+			this.hashes = hashes;
+		}
+		
+		this.hashes[count] = hash;
+		return count + 1;
+	}
+	
+	/**
+	 * Note where a check failed.
+	 * 
+	 * @return false
+	 */
+	private boolean fail(int game, int piece, int action) {
+		this.failedGame = game;
+		this.failedPiece = piece;
+		this.failedAction = action;
+		
+		return false;
+	}
+	
+	/**
+	 * A 64 bit hash of the state of the game, the blocks of the board, including the active piece's, and the score, lines and level.
+	 * 
+	 * @param engine the engine
+	 * @return the hash
+	 */
+	private static long hash(GameEngine engine) {
+		long hash = 0xcbf29ce484222325L;
+		
+		TetrisBoard board = engine.getBoard();
+		for(int y = 0; y < board.getConfig().getHeight(); y++) {
+			for(int x = 0; x < board.getConfig().getWidth(); x++) {
+				hash ^= board.getBlockType(x, y);
+				hash *= 0x100000001b3L;
+			}
+		}
+		
+		hash ^= engine.getActivePiece().getPieceType();
+		hash *= 0x100000001b3L;
+		hash ^= engine.getScore();
+		hash *= 0x100000001b3L;
+		hash ^= engine.getLineCount();
+		hash *= 0x100000001b3L;
+		hash ^= engine.getLevel();
+		hash *= 0x100000001b3L;
+		
+		return hash;
+	}
+	
+	////////////////////
+	
+	/**
+	 * Write the hashes.
+	 * 
+	 * @param out the stream to write to
+	 * @throws IOException if they can't be written
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(this.gameCount);
+		
+		for(int id = 0; id <= this.gameCount; id++) {
+			data.writeInt(this.gameStarts[id]);
+		}
+		
+		for(int i = 0; i < this.gameStarts[this.gameCount]; i++) {
+			data.writeLong(this.hashes[i]);
+		}
+		
+		data.flush();
+	}
+	
+	/**
+	 * Read hashes written by writeTo, replacing any hashes held.
+	 * 
+	 * @param in the stream to read
+	 * @throws IOException if they can't be read
+	 */
+	public void readFrom(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if(MAGIC != data.readInt()) {
+			throw new IOException("not golden replay hashes");
+		}
+		
+		int gameCount = data.readInt();
+		int[] gameStarts = new int[gameCount + 1];
+		for(int id = 0; id <= gameCount; id++) {
+			gameStarts[id] = data.readInt();
+		}
+		
+		long[] hashes = new long[Math.max(1, gameStarts[gameCount])];
+		for(int i = 0; i < gameStarts[gameCount]; i++) {
+			hashes[i] = data.readLong();
+		}
+		
+		this.gameCount = gameCount;
+		this.gameStarts = gameStarts;
+		this.hashes = hashes;
+	}
+	
+	////////////////////
+	
+	/**
+	 * @return the number of games hashed
+	 */
+	public int getGameCount() {
+		return this.gameCount;
+	}
+	
+	/**
+	 * @return the game the last check failed on, -1 if it passed
+	 */
+	public int getFailedGame() {
+		return this.failedGame;
+	}
+	
+	/**
+	 * @return the number of pieces spawned in the failed game when it went wrong
+	 */
+	public int getFailedPiece() {
+		return this.failedPiece;
+	}
+	
+	/**
+	 * @return the index of the action in the failed game after which it went wrong, -1 if it was wrong from the start
+	 */
+	public int getFailedAction() {
+		return this.failedAction;
+	}
+	
+	////////////////////
+	
+	/**
+	 * Check or record from the command line.  A check exits with status 1 if a game doesn't play as recorded.
+	 * 
+	 * args: check|record archiveFile hashFile
+	 * 
+	 * @param args the arguments
+	 * @throws IOException if a file can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		boolean record = args.length == 3 && "record".equals(args[0]);
+		if(args.length != 3 || (!record && !"check".equals(args[0]))) {
+			System.err.println("usage: GoldenReplays check|record archiveFile hashFile");
+			System.exit(2);
+		}
+		
+		ReplayArchive archive;
+		InputStream in = new BufferedInputStream(new FileInputStream(args[1]));
+		try {
+			archive = ReplayArchive.read(in);
+		} finally {
+			in.close();
+		}
+		
+		GoldenReplays golden = new GoldenReplays();
+		if(record) {
+			golden.record(archive);
+			
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(args[2]));
+			try {
+				golden.writeTo(out);
+			} finally {
+				out.close();
+			}
+			
+			System.out.println("recorded " + golden.getGameCount() + " games");
+			return;
+		}
+		
+		in = new BufferedInputStream(new FileInputStream(args[2]));
+		try {
+			golden.readFrom(in);
+		} finally {
+			in.close();
+		}
+		
+		long start = System.currentTimeMillis();
+		if(golden.check(archive)) {
+			System.out.println(golden.getGameCount() + " games played as recorded in " + (System.currentTimeMillis() - start) + "ms");
+			return;
+		}
+		
+		System.out.println("game " + golden.getFailedGame() + " went wrong at piece " + golden.getFailedPiece()
+						   + ", after action " + golden.getFailedAction());
+		System.exit(1);
+	}
+}
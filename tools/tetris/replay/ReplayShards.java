@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.replay;
+
+import java.io.IOException;
+
+/**
+ * A corpus of recorded games split into shards, one archive each, read one at a time as they're needed.
+ * 
+ * Shards are read from several threads at once, implementations must allow that.
+ */
+public interface ReplayShards {
+	
+	/**
+	 * @return the number of shards
+	 */
+	public int getShardCount();
+	
+	/**
+	 * Read a shard.
+	 * 
+	 * @param shard the index of the shard
+	 * @return the shard's archive
+	 * @throws IOException if the shard can't be read
+	 */
+	public ReplayArchive readShard(int shard) throws IOException;
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.replay;
+
+import java.io.IOException;
+
+import tetris.TetrisConstants;
+
+/**
+ * Gathers GameStats over a sharded corpus of recorded games, replaying the shards in parallel.
+ * 
+ * Each thread takes the next unread shard, replays its games on its own engine into its own stats,
+ * and merges its stats in when there are no shards left.  Only one shard per thread is held in memory at a time.
+ * 
+ * A desktop tool, run it over archive files with main (or the stats ant target).
+ */
+public class StatsAggregator {
+	
+	private int numThreads;			// the number of threads to replay with
+	
+	private ReplayShards shards;	// the shards being aggregated
+	private int nextShard;			// the next shard to hand out
+	private int failedShards;		// the number of shards that couldn't be read or replayed
+	private GameStats stats = new GameStats();	// the merged stats
+	
+	/**
+	 * @param numThreads the number of threads to replay with
+	 */
+	public StatsAggregator(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+	
+	/**
+	 * Replay every game of every shard, and gather their stats.
+	 * Shards that can't be read or replayed are skipped, and counted in getFailedShards.
+	 * 
+	 * @param shards the shards to replay
+	 * @return the stats over all the games
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	public GameStats run(ReplayShards shards) throws InterruptedException {
+		synchronized(this) {
+			this.shards = shards;
+			this.nextShard = 0;
+			this.failedShards = 0;
+			this.stats = new GameStats();
+		}
+		
+		StatsWorker[] workers = new StatsWorker[this.numThreads];
+		for(int i = 0; i < workers.length; i++) {
+			workers[i] = new StatsWorker(this);
+			workers[i].start();
+		}
+		
+		for(int i = 0; i < workers.length; i++) {
+			workers[i].join();
+		}
+		
+		return this.getStats();
+	}
+	
+	/**
+	 * Hand out the next shard.
+	 * 
+	 * @return the next shard's archive, or null if there are none left
+	 */
+	ReplayArchive takeShard() {
+		while(true) {
+			int shard;
+			synchronized(this) {
+				if(this.nextShard >= this.shards.getShardCount()) {
+					return null;
+				}
+				
+				shard = this.nextShard++;
+			}
+			
+			// read outside the lock so the threads read in parallel
+			try {
+				return this.shards.readShard(shard);
+			} catch(IOException ioe) {
+				this.shardFailed();
+			}
+		}
+	}
+	
+	/**
+	 * Count a shard that couldn't be read or replayed.
+	 */
+	synchronized void shardFailed() {
+		this.failedShards++;
+	}
+	
+	/**
+	 * A worker merges in its stats when it's done.
+	 * 
+	 * @param workerStats the worker's stats
+	 */
+	synchronized void merge(GameStats workerStats) {
+		this.stats.merge(workerStats);
+	}
+	
+	/**
+	 * @return the stats from the last run
+	 */
+	public synchronized GameStats getStats() {
+		return this.stats;
+	}
+	
+	/**
+	 * @return the number of shards that couldn't be read or replayed in the last run
+	 */
+	public synchronized int getFailedShards() {
+		return this.failedShards;
+	}
+	
+	////////////////////
+	
+	/**
+	 * Gather and print the stats of archive files from the command line.
+	 * Exits with status 1 if any shard couldn't be read or replayed.
+	 * 
+	 * args: threads path..., each path an archive file or a directory of them
+	 * 
+	 * @param args the arguments
+	 * @throws IOException if a path doesn't exist
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if(args.length < 2) {
+			System.err.println("usage: StatsAggregator threads path...");
+			System.exit(2);
+		}
+		
+		String[] paths = new String[args.length - 1];
+		System.arraycopy(args, 1, paths, 0, paths.length);
+		FileShards shards = new FileShards(paths);
+		
+		StatsAggregator aggregator = new StatsAggregator(Integer.parseInt(args[0]));
+		long start = System.currentTimeMillis();
+		GameStats stats = aggregator.run(shards);
+		long time = System.currentTimeMillis() - start;
+		
+		System.out.println(shards.getShardCount() + " shards, " + aggregator.getFailedShards() + " failed, in " + time + "ms");
+		print(stats);
+		
+		if(aggregator.getFailedShards() > 0) {
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Print stats, skipping the empty buckets.
+	 * 
+	 * @param stats the stats
+	 */
+	private static void print(GameStats stats) {
+		int games = stats.getGameCount();
+		System.out.println("games " + games + " (" + stats.getQuitCount() + " quit)"
+						   + ", pieces " + stats.getTotalPieces() + ", lines " + stats.getTotalLines()
+						   + ", average score " + (games > 0 ? stats.getTotalScore() / games : 0));
+		
+		StringBuffer line = new StringBuffer("pieces:");
+		for(int type = 1; type <= TetrisConstants.NUM_PIECE_TYPES; type++) {
+			line.append(' ').append(type).append('=').append(stats.getPieceCount(type));
+		}
+		System.out.println(line);
+		
+		line = new StringBuffer("clears:");
+		for(int rows = 1; rows <= TetrisConstants.FOUR_BLOCKS; rows++) {
+			line.append(' ').append(rows).append('=').append(stats.getClearCount(rows));
+		}
+		System.out.println(line);
+		
+		line = new StringBuffer("droughts (longest " + stats.getLongestDrought() + "):");
+		for(int length = 0; length <= GameStats.MAX_DROUGHT; length++) {
+			if(stats.getDroughtCount(length) > 0) {
+				line.append(' ').append(length).append('=').append(stats.getDroughtCount(length));
+			}
+		}
+		System.out.println(line);
+		
+		line = new StringBuffer("levels (games, levelled up to, average score):");
+		for(int level = 0; level <= GameStats.MAX_LEVEL; level++) {
+			if(stats.getLevelCount(level) > 0) {
+				line.append(' ').append(level).append('=').append(stats.getLevelCount(level))
+					.append('/').append(stats.getLevelUpCount(level)).append('/').append(stats.getAverageLevelScore(level));
+			}
+		}
+		System.out.println(line);
+		
+		line = new StringBuffer("top out heights:");
+		for(int height = 0; height <= TetrisConstants.HEIGHT; height++) {
+			if(stats.getTopOutCount(height) > 0) {
+				line.append(' ').append(height).append('=').append(stats.getTopOutCount(height));
+			}
+		}
+		System.out.println(line);
+	}
+}
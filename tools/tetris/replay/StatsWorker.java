@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.replay;
+
+import tetris.model.GameEngine;
+
+/**
+ * One of the threads of a StatsAggregator.  Replays shard after shard on its own engine, into its own stats.
+ */
+class StatsWorker extends Thread {
+	
+	private StatsAggregator aggregator;			// the aggregator this works for
+	private GameEngine engine = new GameEngine();	// the game being replayed
+	private GameStats stats = new GameStats();	// this thread's share of the stats
+	private GameStats shardStats = new GameStats();	// the shard being replayed, added to the share once it's all replayed
+	
+	/**
+	 * @param aggregator the aggregator this works for
+	 */
+	StatsWorker(StatsAggregator aggregator) {
+		this.aggregator = aggregator;
+		
+		this.engine.setEventListener(this.shardStats);
+		this.engine.setClearEventThreshold(0);		// every clear is counted, not just slow ones
+	}
+	
+	/**
+	 * The worker loop.  A shard that can't be replayed is counted as failed and left out of the stats,
+	 * and whatever happens the share gathered so far is merged in.
+	 */
+	public void run() {
+		try {
+			ReplayArchive archive;
+			while(null != (archive = this.aggregator.takeShard())) {
+				this.shardStats.reset();
+				
+				try {
+					this.replayShard(archive);
+				} catch(RuntimeException re) {
+					// a corrupt shard, none of it is counted
+					this.aggregator.shardFailed();
+					continue;
+				}
+				
+				this.stats.merge(this.shardStats);
+			}
+		} finally {
+			this.aggregator.merge(this.stats);
+		}
+	}
+	
+	/**
+	 * Replay every game of a shard into the shard stats.
+	 * 
+	 * @param archive the shard's archive
+	 */
+	private void replayShard(ReplayArchive archive) {
+		byte[] actions = archive.getBuffer();
+		for(int id = 0; id < archive.getGameCount(); id++) {
+			// events go to the stats
+			ReplayVerifier.replay(this.engine, archive.getSeed(id), archive.getStartLevel(id),
+								  actions, archive.getActionsOffset(id), archive.getActionCount(id));
+			
+			if(!this.engine.isGameOver()) {
+				// the recording stopped before the game topped out, the player quit
+				this.shardStats.gameQuit(this.engine.getScore());
+			}
+		}
+	}
+}
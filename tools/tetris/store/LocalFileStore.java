@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2005 Jordan Kiang
+ * jordan-at-kiang.org
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package tetris.store;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A StateStore backed by a file on the desktop through plain java.io, so the tools can checkpoint off the device.
+ * 
+ * The bytes are the whole file.  A write goes to a temporary file next to it, which is synced to the disk and then
+ * atomically moved over the file, so a tool (or the machine) dying part way through a write leaves the last complete
+ * write behind rather than a torn one or none at all.
+ */
+public class LocalFileStore implements StateStore {
+	
+	private File file;		// the file
+	private File temp;		// written first, then renamed over the file
+	
+	/**
+	 * Make a new store.  Nothing is touched until first used.
+	 * 
+	 * @param path the path of the file, created if it doesn't exist
+	 */
+	public LocalFileStore(String path) {
+		this.file = new File(path);
+		this.temp = new File(path + ".tmp");
+	}
+	
+	/**
+	 * Read the file.
+	 * 
+	 * @param buffer the buffer to read into
+	 * @return the number of bytes read, 0 if there's no file or it doesn't fit the buffer
+	 * @throws IOException if the file can't be read
+	 */
+	private synchronized int read(byte[] buffer) throws IOException {
+		long length = this.file.length();
+		if(!this.file.isFile() || length > buffer.length) {
+			return 0;
+		}
+		
+		InputStream in = new FileInputStream(this.file);
+		try {
+			int read = 0;
+			while(read < length) {
+				int count = in.read(buffer, read, (int)length - read);
+				if(count < 0) {
+					throw new IOException("unexpected end of file");
+				}
+				
+				read += count;
+			}
+			
+			return read;
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Replace the file.
+	 * 
+	 * @param buffer the bytes to write
+	 * @param length the number of bytes to write
+	 * @throws IOException if the file can't be written
+	 */
+	private synchronized void write(byte[] buffer, int length) throws IOException {
+		File parent = this.file.getAbsoluteFile().getParentFile();
+		if(null != parent && !parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("can't create " + parent);
+		}
+		
+		FileOutputStream out = new FileOutputStream(this.temp);
+		try {
+			out.write(buffer, 0, length);
+			out.flush();
+			out.getFD().sync();		// on the disk before it replaces the file
+		} finally {
+			out.close();
+		}
+		
+		// replaces the old file in one step, there's never a moment with neither
+		Files.move(this.temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	public int readState(byte[] buffer) throws IOException {
+		return this.read(buffer);
+	}
+	
+	public void writeState(byte[] buffer, int length) throws IOException {
+		this.write(buffer, length);
+	}
+	
+	public synchronized void clearState() throws IOException {
+		if(this.file.exists() && !this.file.delete()) {
+			throw new IOException("can't delete " + this.file);
+		}
+	}
+	
+	public void close() {
+		// nothing held open between reads and writes
+	}
+}